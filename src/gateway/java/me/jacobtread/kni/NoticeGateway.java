@@ -0,0 +1,764 @@
+package me.jacobtread.kni;
+
+import org.xml.sax.SAXException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Polls a portal on an interval and serves the latest notices to any number of
+ * local clients over HTTP, so the portal is polled once however many clients there are
+ * <ul>
+ *     <li>GET /notices responds with the {@link NoticesCodec} encoding of the latest notices
+ *     and its ETag, requests with a matching If-None-Match are answered with 304 Not Modified</li>
+ *     <li>GET /events is a Server-Sent Events stream with a "notices" event whenever the notices
+ *     change, its data is the base64 encoded snapshot and its id is the ETag (reconnecting clients
+ *     that send an up-to-date Last-Event-ID are not sent the snapshot again)</li>
+ * </ul>
+ * Every connection is served by one non-blocking selector thread so an idle subscriber
+ * holds no thread or buffer. A subscriber that reads slower than the notices change
+ * skips straight to the latest snapshot instead of having the changes queued
+ */
+public class NoticeGateway implements Closeable {
+
+    public static final String CONTENT_TYPE = "application/x-kni-notices"; // The content type of the encoded notices
+    private static final int MAX_REQUEST_SIZE = 8 * 1024; // The largest accepted request line and headers
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60); // How long a connection can idle or stall before it is closed
+    private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+    private static final ByteBuffer HEARTBEAT = ascii(": heartbeat\n\n"); // Keeps idle streams open through proxies and finds dead subscribers
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+    private final KNI kni; // The KNI instance used to poll
+    private final Duration interval; // The time between polls
+    private final ScheduledExecutorService scheduler; // The scheduler the polls are run on
+    private final boolean ownsScheduler; // Whether or not the scheduler should be shutdown on close
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Object pollLock = new Object(); // Held while polling so polls never overlap
+    private ScheduledFuture<?> task; // The scheduled poll task (null if not started)
+    private Thread selectorThread; // The thread serving the connections (null if not started)
+    private volatile boolean isClosed = false;
+    private volatile Snapshot snapshot; // The latest notices (null until the first poll)
+    private volatile Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    // Only used by the selector thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024); // Shared by every connection
+    private final Set<Connection> subscribers = new HashSet<>();
+    private Snapshot broadcast; // The snapshot last sent to the subscribers
+
+    // Statistics
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private volatile Exception lastError; // The cause of the last failed poll (null if none)
+
+    /**
+     * Creates a gateway which polls on its own daemon thread
+     *
+     * @param kni      The KNI instance of the portal to poll
+     * @param interval The time between polls
+     * @param address  The address to listen on (port 0 for any free port)
+     * @throws IOException Thrown if the address could not be bound
+     */
+    public NoticeGateway(KNI kni, Duration interval, InetSocketAddress address) throws IOException {
+        this(kni, interval, address, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KNI-NoticeGateway-Poll");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param kni       The KNI instance of the portal to poll
+     * @param interval  The time between polls
+     * @param address   The address to listen on (port 0 for any free port)
+     * @param scheduler The scheduler to run the polls on (this is not shutdown on close)
+     * @throws IOException Thrown if the address could not be bound
+     */
+    public NoticeGateway(KNI kni, Duration interval, InetSocketAddress address, ScheduledExecutorService scheduler) throws IOException {
+        this(kni, interval, address, scheduler, false);
+    }
+
+    private NoticeGateway(KNI kni, Duration interval, InetSocketAddress address, ScheduledExecutorService scheduler, boolean ownsScheduler) throws IOException {
+        this.kni = kni;
+        this.interval = interval;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts serving clients and polling, the first poll happens immediately
+     * and clients are answered with 503 Service Unavailable until it completes
+     */
+    public synchronized void start() {
+        if (isClosed || task != null) {
+            return;
+        }
+        selectorThread = new Thread(this::serve, "KNI-NoticeGateway");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        task = scheduler.scheduleWithFixedDelay(this::pollQuietly, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops polling, closes every connection and shuts down the scheduler
+     * if it was created by this gateway
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+        if (selectorThread == null) {
+            closeAll();
+        } else {
+            selector.wakeup();
+            try {
+                selectorThread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Polls for the current date catching any exceptions so
+     * that the scheduled polling is never cancelled
+     */
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (IOException | SAXException | RuntimeException e) {
+            failures.increment();
+            lastError = e;
+        }
+    }
+
+    /**
+     * Polls the portal once for the current date and sends the notices
+     * to the subscribers if they changed since the previous poll
+     * <p>
+     * When KAMAR responds with an error the previous notices keep being
+     * served, the error is only served if no notices were retrieved yet.
+     * Polls skip the cache and archive of the KNI instance (the response
+     * is still stored in them) so cached notices never hide a change
+     *
+     * @return Whether or not the served notices changed
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    public boolean poll() throws IOException, SAXException {
+        synchronized (pollLock) {
+            Notices notices = KNI.await(kni.refreshAsync(KNI.DATE_FORMATTER.format(LocalDate.now())));
+            polls.increment();
+            Snapshot current = snapshot;
+            String errorMessage = notices.getErrorMessage();
+            if (errorMessage != null) {
+                failures.increment();
+                lastError = new KamarErrorException(notices.getDate(), errorMessage);
+                if (current != null) {
+                    return false;
+                }
+            }
+            byte[] body = NoticesCodec.encode(notices);
+            if (current != null && Arrays.equals(current.body, body)) {
+                return false;
+            }
+            snapshot = new Snapshot(notices, body);
+            // The selector thread sends the new snapshot to the subscribers
+            selector.wakeup();
+            return true;
+        }
+    }
+
+    /**
+     * Serves the connections until the gateway is closed, only this
+     * thread touches the connections and their state
+     */
+    private void serve() {
+        long heartbeatNanos = heartbeatInterval.toNanos();
+        long nextSweep = System.nanoTime() + heartbeatNanos;
+        try {
+            while (!isClosed) {
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(nextSweep - System.nanoTime());
+                selector.select(Math.max(1, waitMillis));
+                Set<SelectionKey> keys = selector.selectedKeys();
+                for (SelectionKey key : keys) {
+                    handle(key);
+                }
+                keys.clear();
+                Snapshot current = snapshot;
+                if (current != broadcast) {
+                    broadcast = current;
+                    for (Connection subscriber : new ArrayList<>(subscribers)) {
+                        subscriber.send(current);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    heartbeatNanos = heartbeatInterval.toNanos();
+                    nextSweep = now + heartbeatNanos;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The selector failed so the gateway can no longer serve anyone
+            lastError = e;
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * @param key The key of the channel that is ready
+     */
+    private void handle(SelectionKey key) {
+        if (key.channel() == serverChannel) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Accepts every pending connection
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                // Events are small and must not wait for delayed acknowledgements
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                // Usually out of file descriptors, the connection is dropped and the rest are served
+                closeQuietly(channel);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends heartbeats to the subscribers and closes connections that idled
+     * or made no progress writing for longer than the idle timeout
+     *
+     * @param now The current time in nanoseconds
+     */
+    private void sweep(long now) {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            Object attachment = key.attachment();
+            if (!(attachment instanceof Connection)) {
+                continue;
+            }
+            Connection connection = (Connection) attachment;
+            boolean isStalled = !connection.output.isEmpty() || !connection.isSubscriber;
+            if (isStalled && now - connection.lastActive > IDLE_TIMEOUT_NANOS) {
+                connection.close();
+            } else if (connection.isSubscriber && connection.output.isEmpty()) {
+                connection.output.add(HEARTBEAT.duplicate());
+                try {
+                    connection.write();
+                } catch (IOException | CancelledKeyException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes every connection and the server channel
+     */
+    private void closeAll() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            closeQuietly(key.channel());
+        }
+        subscribers.clear();
+        subscriberCount.set(0);
+        closeQuietly(serverChannel);
+        closeQuietly(selector);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static ByteBuffer ascii(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param ifNoneMatch The value of an If-None-Match header
+     * @param etag        The current ETag
+     * @return Whether or not the header matches the ETag
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String value : ifNoneMatch.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(etag) || value.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param bytes The bytes to hash
+     * @return The first 16 bytes of the SHA-256 hash of the bytes in hex
+     */
+    private static String hash(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("KNI: SHA-256 is not supported", e);
+        }
+        StringBuilder builder = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            builder.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                    .append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Sets the time between heartbeats sent to idle subscribers, which also
+     * sets how often idle connections are checked for
+     *
+     * @param heartbeatInterval The time between heartbeats
+     */
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+        selector.wakeup();
+    }
+
+    /**
+     * @return The address the gateway is listening on
+     * @throws IOException Thrown if the gateway is closed
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * @return The notices being served (null until the first poll completes)
+     */
+    public Notices getNotices() {
+        Snapshot current = snapshot;
+        return current == null ? null : current.notices;
+    }
+
+    /**
+     * @return The quoted ETag of the notices being served (null until the first poll completes)
+     */
+    public String getETag() {
+        Snapshot current = snapshot;
+        return current == null ? null : current.etag;
+    }
+
+    /**
+     * @return The number of connected event stream subscribers
+     */
+    public int getSubscribers() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * @return The number of responses received from the portal
+     */
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    /**
+     * @return The number of polls that failed or that KAMAR responded to with an error
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return The cause of the last failed poll, a {@link KamarErrorException} if KAMAR
+     * responded with an error (null if no poll has failed)
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return The number of times the notices were sent in full to a GET /notices request
+     */
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    /**
+     * @return The number of GET /notices requests answered with 304 Not Modified
+     */
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    /**
+     * The notices from a poll in the forms they are served in
+     */
+    private static class Snapshot {
+
+        private final Notices notices;
+        private final byte[] body; // The encoded notices
+        private final String etag; // The quoted ETag of the encoded notices
+        private final String id; // The id of the event (the unquoted ETag)
+        private final ByteBuffer event; // The event sent to subscribers, duplicated for each one
+
+        private Snapshot(Notices notices, byte[] body) {
+            this.notices = notices;
+            this.body = body;
+            this.id = hash(body);
+            this.etag = '"' + id + '"';
+            this.event = ascii("id: " + id + "\nevent: notices\ndata: " + Base64.getEncoder().encodeToString(body) + "\n\n");
+        }
+
+    }
+
+    /**
+     * A client connection, requests are read into a buffer allocated only
+     * while a partial request is waiting for the rest of its bytes
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>(2); // The buffers waiting to be written
+        private byte[] request; // The partially received request (null if none)
+        private int requestLength = 0;
+        private boolean isSubscriber = false; // Whether or not this is an event stream
+        private boolean isClosing = false; // Whether or not to close once the output is written
+        private Snapshot sent; // The snapshot last sent to this subscriber
+        private Snapshot pending; // The snapshot to send once the output is written (null if none)
+        private long lastActive = System.nanoTime(); // When the connection last read or wrote bytes
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            ByteBuffer buffer = readBuffer;
+            buffer.clear();
+            boolean isReadingRequest = !isSubscriber && !isClosing;
+            if (isReadingRequest) {
+                // Never read more than fits in the request buffer
+                buffer.limit(Math.min(buffer.capacity(), MAX_REQUEST_SIZE - requestLength));
+            }
+            int read = channel.read(buffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActive = System.nanoTime();
+            if (!isReadingRequest) {
+                // Anything sent by subscribers is ignored
+                return;
+            }
+            buffer.flip();
+            if (request == null) {
+                request = new byte[MAX_REQUEST_SIZE];
+            }
+            buffer.get(request, requestLength, read);
+            requestLength += read;
+            int end;
+            while (!isSubscriber && !isClosing && (end = indexOf(request, requestLength)) >= 0) {
+                String head = new String(request, 0, end, StandardCharsets.ISO_8859_1);
+                int next = end + HEAD_END.length;
+                requestLength -= next;
+                System.arraycopy(request, next, request, 0, requestLength);
+                handleRequest(head);
+            }
+            if (isSubscriber || isClosing) {
+                request = null;
+                requestLength = 0;
+            } else if (requestLength == 0) {
+                request = null;
+            } else if (requestLength == MAX_REQUEST_SIZE) {
+                respond(431, "Request Header Fields Too Large", "", "KNI: Request is too large", false);
+            }
+        }
+
+        /**
+         * @param head The request line and headers of a request
+         * @throws IOException Thrown if the response could not be written
+         */
+        private void handleRequest(String head) throws IOException {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                respond(400, "Bad Request", "", "KNI: Invalid request line", false);
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int separator = lines[i].indexOf(':');
+                if (separator <= 0) {
+                    respond(400, "Bad Request", "", "KNI: Invalid header", false);
+                    return;
+                }
+                headers.put(lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT), lines[i].substring(separator + 1).trim());
+            }
+            String contentLength = headers.get("content-length");
+            if (headers.containsKey("transfer-encoding") || (contentLength != null && !contentLength.equals("0"))) {
+                respond(400, "Bad Request", "", "KNI: Request bodies are not supported", false);
+                return;
+            }
+            String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            boolean keepAlive = requestLine[2].equals("HTTP/1.0") ? connection.equals("keep-alive") : !connection.equals("close");
+            String method = requestLine[0];
+            boolean isHead = method.equals("HEAD");
+            if (!isHead && !method.equals("GET")) {
+                respond(405, "Method Not Allowed", "Allow: GET, HEAD\r\n", "KNI: Only GET and HEAD are supported", keepAlive);
+                return;
+            }
+            String path = requestLine[1];
+            int query = path.indexOf('?');
+            if (query >= 0) {
+                path = path.substring(0, query);
+            }
+            switch (path) {
+                case "/notices":
+                    serveNotices(headers, isHead, keepAlive);
+                    break;
+                case "/events":
+                    if (isHead) {
+                        respond(200, "OK", "Content-Type: text/event-stream\r\n", null, false);
+                    } else {
+                        subscribe(headers);
+                    }
+                    break;
+                default:
+                    respond(404, "Not Found", "", isHead ? null : "KNI: Not found", keepAlive);
+                    break;
+            }
+        }
+
+        private void serveNotices(Map<String, String> headers, boolean isHead, boolean keepAlive) throws IOException {
+            Snapshot current = snapshot;
+            if (current == null) {
+                respond(503, "Service Unavailable", "Retry-After: 1\r\n", isHead ? null : "KNI: No notices have been retrieved yet", keepAlive);
+                return;
+            }
+            String cacheHeaders = "ETag: " + current.etag + "\r\nCache-Control: no-cache\r\n";
+            String ifNoneMatch = headers.get("if-none-match");
+            if (ifNoneMatch != null && matches(ifNoneMatch, current.etag)) {
+                notModified.increment();
+                output.add(ascii("HTTP/1.1 304 Not Modified\r\n" + cacheHeaders + (keepAlive ? "" : "Connection: close\r\n") + "\r\n"));
+                isClosing = !keepAlive;
+                write();
+                return;
+            }
+            responses.increment();
+            output.add(ascii("HTTP/1.1 200 OK\r\nContent-Type: " + CONTENT_TYPE + "\r\n" + cacheHeaders
+                    + "Content-Length: " + current.body.length + "\r\n" + (keepAlive ? "" : "Connection: close\r\n") + "\r\n"));
+            if (!isHead) {
+                // The encoded notices are shared by every response
+                output.add(ByteBuffer.wrap(current.body).asReadOnlyBuffer());
+            }
+            isClosing = !keepAlive;
+            write();
+        }
+
+        private void subscribe(Map<String, String> headers) throws IOException {
+            output.add(ascii("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n\r\n"));
+            isSubscriber = true;
+            subscribers.add(this);
+            subscriberCount.incrementAndGet();
+            Snapshot current = broadcast;
+            if (current != null) {
+                if (current.id.equals(headers.get("last-event-id"))) {
+                    sent = current;
+                } else {
+                    pending = current;
+                }
+            }
+            write();
+        }
+
+        /**
+         * Sends a snapshot to this subscriber, if the previous event is still being
+         * written it is sent after it replacing any other snapshot waiting to be sent
+         *
+         * @param snapshot The snapshot to send
+         */
+        private void send(Snapshot snapshot) {
+            if (snapshot == sent) {
+                pending = null;
+                return;
+            }
+            pending = snapshot;
+            try {
+                write();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * @param status    The status code
+         * @param reason    The reason phrase
+         * @param headers   Extra headers each ending with CRLF
+         * @param body      The plain text body (null for none)
+         * @param keepAlive Whether or not to keep the connection open for more requests
+         * @throws IOException Thrown if the response could not be written
+         */
+        private void respond(int status, String reason, String headers, String body, boolean keepAlive) throws IOException {
+            byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.US_ASCII);
+            StringBuilder builder = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n")
+                    .append(headers);
+            if (body != null) {
+                builder.append("Content-Type: text/plain; charset=us-ascii\r\n");
+            }
+            builder.append("Content-Length: ").append(bytes.length).append("\r\n");
+            if (!keepAlive) {
+                builder.append("Connection: close\r\n");
+            }
+            builder.append("\r\n");
+            output.add(ascii(builder.toString()));
+            output.add(ByteBuffer.wrap(bytes));
+            isClosing = !keepAlive;
+            write();
+        }
+
+        /**
+         * Writes as much of the output as the socket accepts without blocking
+         * and waits for the socket to be writable if any is left
+         *
+         * @throws IOException Thrown if the socket could not be written to
+         */
+        private void write() throws IOException {
+            while (true) {
+                if (!output.isEmpty()) {
+                    if (channel.write(output.toArray(NO_BUFFERS)) > 0) {
+                        lastActive = System.nanoTime();
+                    }
+                    while (!output.isEmpty() && !output.peek().hasRemaining()) {
+                        output.poll();
+                    }
+                    if (!output.isEmpty()) {
+                        key.interestOps(isClosing ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                if (pending == null) {
+                    break;
+                }
+                output.add(pending.event.duplicate());
+                sent = pending;
+                pending = null;
+            }
+            if (isClosing) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            key.cancel();
+            closeQuietly(channel);
+            output.clear();
+            pending = null;
+            if (isSubscriber && subscribers.remove(this)) {
+                subscriberCount.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * @param bytes  The bytes to search
+     * @param length The number of bytes to search
+     * @return The index of the blank line ending the request head (-1 if not found)
+     */
+    private static int indexOf(byte[] bytes, int length) {
+        outer:
+        for (int i = 0; i <= length - HEAD_END.length; i++) {
+            for (int j = 0; j < HEAD_END.length; j++) {
+                if (bytes[i + j] != HEAD_END[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
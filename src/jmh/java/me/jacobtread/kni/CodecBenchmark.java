@@ -0,0 +1,50 @@
+package me.jacobtread.kni;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding notices with {@link NoticesCodec}
+ * to compare with parsing the same notices from XML in {@link ParseBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int notices;
+
+    private Notices parsed;
+    private byte[] encoded;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        int meetings = notices / 4;
+        byte[] response = NoticeFixtures.createResponse(notices - meetings, meetings);
+        parsed = new KNI("localhost").parse(new ByteArrayInputStream(response), "01/01/2020");
+        encoded = NoticesCodec.encode(parsed);
+        buffer = ByteBuffer.allocate(encoded.length);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        NoticesCodec.encode(parsed, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public Notices decode() throws IOException {
+        return NoticesCodec.decode(encoded);
+    }
+
+}
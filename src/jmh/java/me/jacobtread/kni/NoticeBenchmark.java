@@ -0,0 +1,50 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing done by the notice data objects themselves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoticeBenchmark {
+
+    @Param({"All", "seniors", "Year 9"})
+    public String level;
+
+    private static final LocalDate REQUEST_DATE = LocalDate.of(2020, 2, 1);
+
+    private MeetingNotice meetingNotice;
+
+    @Setup
+    public void setup() {
+        meetingNotice = new MeetingNotice(1, Notice.Level.ALL, "Meeting", "", "SD", "Library", "Mon 3 Feb", "Lunch");
+    }
+
+    @Benchmark
+    public Notice.Level levelFromString() {
+        return Notice.Level.fromString(level);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Date getDateParsed() {
+        return meetingNotice.getDateParsed();
+    }
+
+    @Benchmark
+    public LocalDate getLocalDate() {
+        return meetingNotice.getLocalDate(REQUEST_DATE);
+    }
+
+}
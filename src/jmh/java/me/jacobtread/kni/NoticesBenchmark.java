@@ -0,0 +1,47 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the accessors of {@link Notices} which are called
+ * many times for each retrieved notices object
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoticesBenchmark {
+
+    @Param({"0", "10", "100", "1000", "5000"})
+    public int notices;
+
+    private Notices parsed;
+
+    @Setup
+    public void setup() throws IOException, SAXException {
+        int meetings = notices / 4;
+        byte[] response = NoticeFixtures.createResponse(notices - meetings, meetings);
+        parsed = new KNI("localhost").parse(new ByteArrayInputStream(response), "01/01/2020");
+    }
+
+    @Benchmark
+    public List<Notice> getNoticesFiltered() {
+        return parsed.getNotices(notice -> notice.getLevel() == Notice.Level.ALL);
+    }
+
+    @Benchmark
+    public List<MeetingNotice> getMeetings() {
+        return parsed.getMeetings();
+    }
+
+}
@@ -0,0 +1,61 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing KAMAR responses of different sizes, a quarter
+ * of the notices in each response are meeting notices
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"0", "1", "10", "100", "1000", "5000"})
+    public int notices;
+
+    private KNI kni;
+    private KNI lazyKni;
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        kni = new KNI("localhost");
+        lazyKni = new KNI("localhost");
+        lazyKni.setLazy(true);
+        int meetings = notices / 4;
+        response = NoticeFixtures.createResponse(notices - meetings, meetings);
+    }
+
+    @Benchmark
+    public Notices parse() throws IOException, SAXException {
+        return kni.parse(new ByteArrayInputStream(response), "01/01/2020");
+    }
+
+    @Benchmark
+    public Notices parseLazy() throws IOException, SAXException {
+        return lazyKni.parse(new ByteArrayInputStream(response), "01/01/2020");
+    }
+
+    /**
+     * Parses lazily and reads only the fields a list of notices shows
+     */
+    @Benchmark
+    public void parseLazyList(Blackhole blackhole) throws IOException, SAXException {
+        for (Notice notice : lazyKni.parse(new ByteArrayInputStream(response), "01/01/2020").getNotices()) {
+            blackhole.consume(notice.getSubject());
+            blackhole.consume(notice.getTeacher());
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package me.jacobtread.kni;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stops requests being sent to a portal that keeps failing so callers fail
+ * fast with a {@link CircuitOpenException} instead of waiting on it.
+ * The circuit of each host is tracked separately so one breaker can be
+ * shared by many KNI instances (see {@link MultiKNI#setCircuitBreaker(CircuitBreaker)})
+ * <p>
+ * After failureThreshold consecutive failures the circuit opens, once it has been
+ * open for the open duration a single trial request is allowed through which
+ * closes the circuit if it succeeds or opens it again if it fails.
+ * Responses containing a KAMAR error message are successful requests
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states the circuit of a host can be in
+     */
+    public enum State {
+        CLOSED, // Requests are sent
+        OPEN, // Requests fail fast
+        HALF_OPEN // A single trial request is being sent
+    }
+
+    private final int failureThreshold; // The number of consecutive failures that opens the circuit
+    private final long openNanos; // How long the circuit stays open before a trial request
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>(); // The circuit of each host
+
+    /**
+     * @param failureThreshold The number of consecutive failures that opens the circuit of a host
+     * @param openDuration     How long the circuit stays open before a trial request is allowed
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @param host The host of a portal
+     * @return The current state of the circuit for the host
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * Called before sending a request to a host
+     *
+     * @param host The host of the portal
+     * @throws CircuitOpenException Thrown if the circuit is open and the request must not be sent
+     */
+    void acquire(String host) throws CircuitOpenException {
+        if (!circuits.computeIfAbsent(host, key -> new Circuit()).tryAcquire()) {
+            throw new CircuitOpenException(host);
+        }
+    }
+
+    /**
+     * @param host The host a request succeeded for
+     */
+    void onSuccess(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            circuit.onSuccess();
+        }
+    }
+
+    /**
+     * @param host The host a request failed for
+     */
+    void onFailure(String host) {
+        circuits.computeIfAbsent(host, key -> new Circuit()).onFailure();
+    }
+
+    /**
+     * The circuit of a single host
+     */
+    private class Circuit {
+
+        private State state = State.CLOSED;
+        private int failures = 0; // The number of consecutive failures
+        private long openedAt; // When the circuit was opened (nano time)
+        private boolean isTrialSent = false; // Whether the trial request of the half open circuit was sent
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        private synchronized boolean tryAcquire() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    isTrialSent = true;
+                    return true;
+                default:
+                    // Only the trial request is allowed through
+                    if (isTrialSent) {
+                        return false;
+                    }
+                    isTrialSent = true;
+                    return true;
+            }
+        }
+
+        private synchronized void onSuccess() {
+            state = State.CLOSED;
+            failures = 0;
+            isTrialSent = false;
+        }
+
+        private synchronized void onFailure() {
+            failures++;
+            if (state == State.HALF_OPEN || failures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                isTrialSent = false;
+            }
+        }
+
+    }
+
+}
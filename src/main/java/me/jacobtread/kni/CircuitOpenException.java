@@ -0,0 +1,30 @@
+package me.jacobtread.kni;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker}
+ * for the host of a portal is open because the portal is failing
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String host; // The host of the portal
+
+    /**
+     * @param host The host of the portal
+     */
+    public CircuitOpenException(String host) {
+        super("KNI: Circuit open for " + host + " after repeated failures");
+        this.host = host;
+    }
+
+    /**
+     * @return The host of the portal
+     */
+    public String getHost() {
+        return host;
+    }
+
+}
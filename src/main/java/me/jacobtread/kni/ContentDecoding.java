@@ -0,0 +1,136 @@
+package me.jacobtread.kni;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes compressed response bodies (see {@link KNI#setCompression(boolean)})
+ * as they are read so the parser is given the decoded bytes without
+ * the whole body ever being buffered
+ */
+class ContentDecoding {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate"; // The encodings requested from KAMAR
+    private static final int BUFFER_SIZE = 8192; // The size of the buffer for compressed bytes
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * Wraps a response body with a decoder for its content encoding, the size
+     * of the decoded body and the encoding are recorded into the trace
+     *
+     * @param inputStream     The response body as it was received
+     * @param contentEncoding The Content-Encoding header of the response (null if there was none)
+     * @param trace           The trace of the request
+     * @return The decoded response body (the same stream if it was not encoded)
+     * @throws IOException Thrown if the encoding is not supported or the body could not be read
+     */
+    static InputStream decode(InputStream inputStream, String contentEncoding, RequestTrace trace) throws IOException {
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        InputStream decoded;
+        switch (encoding) {
+            case "":
+            case "identity":
+                // Portals that ignore Accept-Encoding send the body as it is
+                return inputStream;
+            case "gzip":
+            case "x-gzip":
+                decoded = new GZIPInputStream(inputStream, BUFFER_SIZE);
+                break;
+            case "deflate":
+                decoded = inflate(inputStream);
+                break;
+            default:
+                throw new IOException("KNI: Unsupported content encoding " + contentEncoding);
+        }
+        trace.setContentEncoding(encoding);
+        return new DecodedInputStream(decoded, trace);
+    }
+
+    /**
+     * Creates the decoder for a deflate body, which should be zlib wrapped
+     * but some servers send raw deflate data so the header is checked
+     *
+     * @param inputStream The response body
+     * @return The decoded response body
+     * @throws IOException Thrown if the start of the body could not be read
+     */
+    private static InputStream inflate(InputStream inputStream) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(inputStream, 2);
+        int first = pushback.read();
+        int second = first < 0 ? -1 : pushback.read();
+        if (second >= 0) {
+            pushback.unread(second);
+        }
+        if (first >= 0) {
+            pushback.unread(first);
+        }
+        // A zlib header uses the deflate method and is a multiple of 31
+        boolean isZlib = second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        Inflater inflater = new Inflater(!isZlib);
+        return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+            private boolean isClosed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (isClosed) {
+                    return;
+                }
+                isClosed = true;
+                try {
+                    super.close();
+                } finally {
+                    // Provided inflaters are not ended by the stream
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * An input stream which records the number of decoded bytes read
+     */
+    private static class DecodedInputStream extends FilterInputStream {
+
+        private final RequestTrace trace;
+
+        private DecodedInputStream(InputStream in, RequestTrace trace) {
+            super(in);
+            this.trace = trace;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                trace.addDecodedBytes(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                trace.addDecodedBytes(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            trace.addDecodedBytes(skipped);
+            return skipped;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+package me.jacobtread.kni;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overall deadline of a retrieval (see {@link KNI#setRequestTimeout(Duration)})
+ * which spans every attempt. Blocking requests register an abort action
+ * that is run once the deadline passes, so a portal trickling its
+ * response can't hold the thread past the deadline
+ * <p>
+ * A deadline is used by one request at a time, concurrent requests
+ * use their own copy (see {@link Deadline#fork()})
+ */
+class Deadline {
+
+    // The timer the abort actions and timeouts are run on
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KNI-Deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Duration timeout; // The timeout the deadline was created from (null if there is no deadline)
+    private final long deadlineNanos; // The nano time of the deadline
+    private ScheduledFuture<?> abort; // The pending abort action of the current request (null if there is none)
+
+    private Deadline(Duration timeout, long deadlineNanos) {
+        this.timeout = timeout;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeout The overall timeout (null for no deadline)
+     * @return The deadline the timeout from now
+     */
+    static Deadline after(Duration timeout) {
+        return new Deadline(timeout, timeout != null ? System.nanoTime() + timeout.toNanos() : 0);
+    }
+
+    /**
+     * @return A copy of this deadline for a concurrent request
+     */
+    Deadline fork() {
+        return new Deadline(timeout, deadlineNanos);
+    }
+
+    /**
+     * @return The nanoseconds remaining until the deadline (or {@link Long#MAX_VALUE} if there is none)
+     */
+    long remainingNanos() {
+        return timeout != null ? Math.max(deadlineNanos - System.nanoTime(), 0) : Long.MAX_VALUE;
+    }
+
+    boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    /**
+     * @param timeout A timeout of a single phase of a request (null for none)
+     * @return The timeout shortened to the time remaining until the deadline or null if there is neither
+     */
+    Duration limit(Duration timeout) {
+        if (this.timeout == null) {
+            return timeout;
+        }
+        Duration remaining = Duration.ofNanos(Math.max(remainingNanos(), TimeUnit.MILLISECONDS.toNanos(1)));
+        return timeout == null || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * @param timeout A timeout of a single phase of a request (null for none)
+     * @return The timeout in milliseconds as used by {@link java.net.URLConnection} (0 for none)
+     */
+    int limitMillis(Duration timeout) {
+        Duration limited = limit(timeout);
+        return limited == null ? 0 : (int) Math.max(1, Math.min(limited.toMillis(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Sets the action that aborts the current request once the deadline passes
+     *
+     * @param action The abort action
+     */
+    void setAbort(Runnable action) {
+        clearAbort();
+        if (timeout != null) {
+            abort = TIMER.schedule(action, remainingNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Cancels the abort action once the current request has finished
+     */
+    void clearAbort() {
+        if (abort != null) {
+            abort.cancel(false);
+            abort = null;
+        }
+    }
+
+    /**
+     * Completes a future with a timeout if it hasn't completed by the deadline
+     *
+     * @param future The future to complete
+     */
+    void bound(CompletableFuture<?> future) {
+        if (timeout == null) {
+            return;
+        }
+        ScheduledFuture<?> task = TIMER.schedule(() -> future.completeExceptionally(timeout(null)),
+                remainingNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, error) -> task.cancel(false));
+    }
+
+    /**
+     * @param cause The failure caused by the deadline passing (can be null)
+     * @return The exception for a request that passed the deadline
+     */
+    HttpTimeoutException timeout(Throwable cause) {
+        HttpTimeoutException exception = new HttpTimeoutException("KNI: Request exceeded the timeout of " + timeout);
+        if (cause != null) {
+            exception.initCause(cause);
+        }
+        return exception;
+    }
+
+}
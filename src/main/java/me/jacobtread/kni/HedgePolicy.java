@@ -0,0 +1,67 @@
+package me.jacobtread.kni;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * When to send a hedged request (see {@link KNI#setHedgePolicy(HedgePolicy)}), if a
+ * request hasn't completed by a percentile of the latencies of previous requests
+ * a second request is sent and whichever completes first is used
+ * <p>
+ * Until enough requests have completed to know the percentile the maximum
+ * delay is used. A policy learns the latencies of the portal it is used
+ * for so each KNI instance should be given its own policy
+ */
+public class HedgePolicy {
+
+    private static final int MIN_SAMPLES = 20; // The number of latencies needed before the percentile is used
+
+    private final double percentile; // The percentile of latencies to hedge after (0 to 1)
+    private final long minDelayNanos; // The shortest delay before hedging
+    private final long maxDelayNanos; // The longest delay before hedging
+    private final RequestMetrics.Histogram latencies = new RequestMetrics.Histogram(); // The latencies of completed requests
+    private final LongAdder hedges = new LongAdder(); // The number of hedged requests sent
+
+    /**
+     * @param percentile The percentile of latencies to hedge after (0 to 1, e.g 0.95)
+     * @param minDelay   The shortest delay before hedging
+     * @param maxDelay   The longest delay before hedging (used until the percentile is known)
+     */
+    public HedgePolicy(double percentile, Duration minDelay, Duration maxDelay) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1");
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = Math.max(maxDelay.toNanos(), minDelayNanos);
+    }
+
+    /**
+     * @return The time to wait for a request before sending a hedged request in nanoseconds
+     */
+    public long getDelayNanos() {
+        if (latencies.getCount() < MIN_SAMPLES) {
+            return maxDelayNanos;
+        }
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, latencies.getPercentile(percentile)));
+    }
+
+    /**
+     * @return The number of hedged requests that have been sent
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @param nanos The latency of a successful request
+     */
+    void record(long nanos) {
+        latencies.record(nanos);
+    }
+
+    void onHedge() {
+        hedges.increment();
+    }
+
+}
@@ -0,0 +1,464 @@
+package me.jacobtread.kni;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limits the requests sent to each portal host, shared by any number of {@link KNI}
+ * instances (see {@link KNI#setHostLimiter(HostLimiter)}) so a burst of retrievals
+ * never becomes a burst of requests to a single school server
+ * <p>
+ * Each host has a maximum number of requests in flight, which also bounds the
+ * number of connections open to it as connections are kept alive and reused
+ * between requests, and a token bucket limiting the rate requests are sent at.
+ * Requests over the limits wait in a queue for their host and hosts with waiting
+ * requests are served in turn, so a host with a long queue never delays the
+ * requests of other hosts beyond its fair share of the total in flight limit
+ */
+public class HostLimiter {
+
+    // The timer that wakes the queue once tokens are available
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KNI-HostLimiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private final int maxInFlight; // The maximum requests in flight across every host
+    private final Limits defaultLimits; // The limits of hosts without their own
+    private final Map<String, Limits> hostLimits = new HashMap<>(); // The limits of specific hosts
+    private final Map<String, Host> hosts = new HashMap<>(); // The state of each host that has sent requests
+    private final ArrayDeque<Host> ready = new ArrayDeque<>(); // The hosts with waiting requests in the order they are served
+    private final RequestMetrics.Histogram waitHistogram = new RequestMetrics.Histogram(); // The time requests waited
+    private int inFlight = 0; // The requests in flight across every host
+    private int queued = 0; // The requests waiting across every host
+    private ScheduledFuture<?> wakeup; // The pending wake up for the next token (null if none)
+    private long wakeupNanos; // The nano time of the pending wake up
+
+    /**
+     * @param defaultLimits The limits of every host without its own limits
+     */
+    public HostLimiter(Limits defaultLimits) {
+        this(Integer.MAX_VALUE, defaultLimits);
+    }
+
+    /**
+     * @param maxInFlight   The maximum number of requests in flight across every host
+     * @param defaultLimits The limits of every host without its own limits
+     */
+    public HostLimiter(int maxInFlight, Limits defaultLimits) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.defaultLimits = defaultLimits;
+    }
+
+    /**
+     * Set the limits of a single host, requests already in flight
+     * or waiting are not affected until the next request
+     *
+     * @param host   The host of the portal (see {@link CircuitBreaker#getState(String)})
+     * @param limits The limits of the host or null to use the default limits
+     */
+    public void setLimits(String host, Limits limits) {
+        synchronized (lock) {
+            if (limits == null) {
+                hostLimits.remove(host);
+            } else {
+                hostLimits.put(host, limits);
+            }
+            Host state = hosts.get(host);
+            if (state != null) {
+                state.setLimits(limits != null ? limits : defaultLimits, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * @return The number of requests waiting across every host
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    /**
+     * @param host The host of the portal
+     * @return The number of requests waiting for the host
+     */
+    public int getQueueDepth(String host) {
+        synchronized (lock) {
+            Host state = hosts.get(host);
+            return state == null ? 0 : state.queue.size();
+        }
+    }
+
+    /**
+     * @return The number of requests in flight across every host
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @param host The host of the portal
+     * @return The number of requests in flight to the host
+     */
+    public int getInFlight(String host) {
+        synchronized (lock) {
+            Host state = hosts.get(host);
+            return state == null ? 0 : state.inFlight;
+        }
+    }
+
+    /**
+     * @return The time every request waited before being sent in nanoseconds
+     */
+    public RequestMetrics.Histogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    /**
+     * @param host The host of the portal
+     * @return The time requests to the host waited before being sent in nanoseconds
+     */
+    public RequestMetrics.Histogram getWaitHistogram(String host) {
+        synchronized (lock) {
+            return getHost(host).waitHistogram;
+        }
+    }
+
+    /**
+     * Waits for a request to a host to be allowed
+     *
+     * @param host     The host of the portal
+     * @param deadline The deadline of the retrieval
+     * @return The permit of the request which must be released once it has finished
+     * @throws IOException Thrown if the deadline passed or the thread was interrupted while waiting
+     */
+    Permit acquire(String host, Deadline deadline) throws IOException {
+        CompletableFuture<Permit> future = acquireAsync(host);
+        try {
+            long remaining = deadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            abandon(future);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("KNI: Interrupted while waiting to send a request to " + host);
+        } catch (TimeoutException e) {
+            abandon(future);
+            throw deadline.timeout(null);
+        } catch (ExecutionException e) {
+            throw new IOException("KNI: Failed waiting to send a request to " + host, e.getCause());
+        }
+    }
+
+    /**
+     * Cancels waiting for a permit releasing it if it was granted anyway
+     *
+     * @param future The future of the permit
+     */
+    private static void abandon(CompletableFuture<Permit> future) {
+        if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+            future.join().release();
+        }
+    }
+
+    /**
+     * Queues a request to a host, cancelling the returned future removes it from the queue
+     *
+     * @param host The host of the portal
+     * @return A future completed with the permit of the request once it is allowed,
+     * which must be released once the request has finished
+     */
+    CompletableFuture<Permit> acquireAsync(String host) {
+        Waiter waiter = new Waiter(System.nanoTime());
+        List<Waiter> granted;
+        synchronized (lock) {
+            Host state = getHost(host);
+            waiter.host = state;
+            state.queue.add(waiter);
+            queued++;
+            if (!state.isReady) {
+                state.isReady = true;
+                ready.add(state);
+            }
+            granted = dispatch();
+        }
+        complete(granted);
+        waiter.future.whenComplete((permit, error) -> {
+            if (waiter.future.isCancelled()) {
+                synchronized (lock) {
+                    if (waiter.host.queue.remove(waiter)) {
+                        queued--;
+                    }
+                }
+            }
+        });
+        return waiter.future;
+    }
+
+    /**
+     * Releases the slot of a finished request letting the next waiting request go
+     *
+     * @param host The host of the request
+     */
+    private void release(Host host) {
+        List<Waiter> granted;
+        synchronized (lock) {
+            host.inFlight--;
+            inFlight--;
+            granted = dispatch();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Grants the waiting requests that are within the limits, serving the
+     * hosts in turn one request at a time. Must be called holding the lock
+     *
+     * @return The waiters that were granted
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        long now = System.nanoTime();
+        long nextToken = Long.MAX_VALUE; // The nano time a waiting host next gets a token
+        int blocked = 0; // The number of hosts in a row that couldn't send
+        while (!ready.isEmpty() && inFlight < maxInFlight && blocked < ready.size()) {
+            Host host = ready.poll();
+            if (host.queue.isEmpty()) {
+                // Its waiting requests were cancelled
+                host.isReady = false;
+                continue;
+            }
+            long tokenWait = host.inFlight < host.limits.getMaxInFlight() ? host.takeToken(now) : -1;
+            if (tokenWait != 0) {
+                if (tokenWait > 0) {
+                    nextToken = Math.min(nextToken, now + tokenWait);
+                }
+                ready.add(host);
+                blocked++;
+                continue;
+            }
+            blocked = 0;
+            Waiter waiter = host.queue.poll();
+            queued--;
+            host.inFlight++;
+            inFlight++;
+            waiter.waitNanos = now - waiter.queuedNanos;
+            host.waitHistogram.record(waiter.waitNanos);
+            waitHistogram.record(waiter.waitNanos);
+            granted.add(waiter);
+            if (host.queue.isEmpty()) {
+                host.isReady = false;
+            } else {
+                ready.add(host);
+            }
+        }
+        if (nextToken != Long.MAX_VALUE) {
+            scheduleWakeup(nextToken, now);
+        }
+        return granted;
+    }
+
+    /**
+     * Schedules dispatching once a token is available, must be called holding the lock
+     *
+     * @param wakeupNanos The nano time to wake at
+     * @param now         The current nano time
+     */
+    private void scheduleWakeup(long wakeupNanos, long now) {
+        if (wakeup != null && !wakeup.isDone() && this.wakeupNanos <= wakeupNanos) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        this.wakeupNanos = wakeupNanos;
+        wakeup = TIMER.schedule(() -> {
+            List<Waiter> granted;
+            synchronized (lock) {
+                wakeup = null;
+                granted = dispatch();
+            }
+            complete(granted);
+        }, wakeupNanos - now, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Completes the futures of granted waiters outside the lock so
+     * their requests don't start while holding it
+     *
+     * @param granted The granted waiters
+     */
+    private void complete(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            Permit permit = new Permit(waiter.host, waiter.waitNanos);
+            if (!waiter.future.complete(permit)) {
+                // Cancelled after it was granted
+                permit.release();
+            }
+        }
+    }
+
+    private Host getHost(String host) {
+        return hosts.computeIfAbsent(host, key -> new Host(hostLimits.getOrDefault(key, defaultLimits), System.nanoTime()));
+    }
+
+    /**
+     * The limits of requests to a host
+     */
+    public static class Limits {
+
+        private final int maxInFlight; // The maximum requests in flight to the host
+        private final double requestsPerSecond; // The rate tokens are added to the bucket (0 for no rate limit)
+        private final int burst; // The most tokens the bucket holds
+
+        /**
+         * @param maxInFlight       The maximum number of requests in flight to the host
+         * @param requestsPerSecond The sustained rate of requests to the host (0 for no rate limit)
+         * @param burst             The number of requests that can be sent at once after the host was idle
+         */
+        public Limits(int maxInFlight, double requestsPerSecond, int burst) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("Max in flight must be at least 1");
+            }
+            if (requestsPerSecond < 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate must not be negative and burst must be at least 1");
+            }
+            this.maxInFlight = maxInFlight;
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+    }
+
+    /**
+     * The permit of a request that was allowed, released once the request has finished
+     */
+    class Permit {
+
+        private final Host host;
+        private final long waitNanos; // The time the request waited for the permit
+        private boolean isReleased = false;
+
+        private Permit(Host host, long waitNanos) {
+            this.host = host;
+            this.waitNanos = waitNanos;
+        }
+
+        long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Releases the permit, releasing more than once has no effect
+         */
+        void release() {
+            synchronized (this) {
+                if (isReleased) {
+                    return;
+                }
+                isReleased = true;
+            }
+            HostLimiter.this.release(host);
+        }
+
+    }
+
+    /**
+     * The queue, requests in flight and token bucket of a host, guarded by the lock
+     */
+    private static class Host {
+
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>(); // The requests waiting in the order they arrived
+        private final RequestMetrics.Histogram waitHistogram = new RequestMetrics.Histogram();
+        private Limits limits;
+        private int inFlight = 0;
+        private boolean isReady = false; // Whether the host is in the ready queue
+        private double tokens; // The tokens in the bucket
+        private long refillNanos; // The nano time the tokens were last refilled
+
+        private Host(Limits limits, long now) {
+            this.limits = limits;
+            this.tokens = limits.getBurst();
+            this.refillNanos = now;
+        }
+
+        private void setLimits(Limits limits, long now) {
+            refill(now);
+            this.limits = limits;
+            tokens = Math.min(tokens, limits.getBurst());
+        }
+
+        private void refill(long now) {
+            double rate = limits.getRequestsPerSecond() / TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(limits.getBurst(), tokens + (now - refillNanos) * rate);
+            refillNanos = now;
+        }
+
+        /**
+         * @param now The current nano time
+         * @return 0 if a token was taken otherwise the nanoseconds until one is available
+         */
+        private long takeToken(long now) {
+            if (limits.getRequestsPerSecond() <= 0) {
+                return 0;
+            }
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            double rate = limits.getRequestsPerSecond() / TimeUnit.SECONDS.toNanos(1);
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+        }
+
+    }
+
+    /**
+     * A request waiting for its host
+     */
+    private static class Waiter {
+
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final long queuedNanos; // The nano time the request was queued
+        private Host host;
+        private long waitNanos; // The time waited once granted
+
+        private Waiter(long queuedNanos) {
+            this.queuedNanos = queuedNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+
+/**
+ * A notice found by a {@link NoticeIndex} search along with
+ * the portal and date it was retrieved for
+ */
+public class IndexedNotice {
+
+    private final long id; // The order this notice was added to the index
+    private final String portal;
+    private final String date;
+    private final Notice notice;
+    private final String[] terms; // The sorted distinct terms of the notice
+
+    IndexedNotice(long id, String portal, String date, Notice notice, String[] terms) {
+        this.id = id;
+        this.portal = portal;
+        this.date = date;
+        this.notice = notice;
+        this.terms = terms;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String[] getTerms() {
+        return terms;
+    }
+
+    /**
+     * @return The portal the notice was retrieved from
+     */
+    public String getPortal() {
+        return portal;
+    }
+
+    /**
+     * @return The raw date string the notice was retrieved for
+     */
+    public String getDate() {
+        return date;
+    }
+
+    public Notice getNotice() {
+        return notice;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedNotice{" +
+                "portal='" + portal + '\'' +
+                ", date='" + date + '\'' +
+                ", notice=" + notice +
+                '}';
+    }
+}
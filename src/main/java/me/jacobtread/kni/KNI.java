@@ -1,43 +1,97 @@
 package me.jacobtread.kni;
 
-import me.jacobtread.kni.data.MeetingNotice;
 import me.jacobtread.kni.data.Notice;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class KNI {
 
+    /**
+     * @deprecated {@link SimpleDateFormat} is not thread-safe use {@link KNI#DATE_FORMATTER} instead
+     */
+    @Deprecated
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy"); // The date format used for requests
-    private static final DocumentBuilder DOCUMENT_BUILDER; // The XML document builder
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy"); // The thread-safe date format used for requests
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newDefaultInstance(); // The factory for creating XML parsers
+    private static final ThreadLocal<SAXParser> SAX_PARSER = ThreadLocal.withInitial(KNI::createParser); // The streaming XML parser for each thread
+    public static final int RANGE_CONCURRENCY = 4; // The default number of requests in flight when retrieving a range
     private static final String DEFAULT_KEY = "vtku"; // The authentication key for KAMAR
     private static final String USER_AGENT = "KAMAR/ Linux/ Android/"; // The User-Agent for KAMAR
-    private static boolean isDebug = false; // Whether or not to do debug logging
+    private static volatile boolean isDebug = false; // Whether or not to do debug logging
 
-    static {
+    /**
+     * Creates a new streaming XML parser, parsers are not thread-safe
+     * so each thread is given its own through {@link KNI#SAX_PARSER}
+     *
+     * @return The created parser
+     */
+    private static SAXParser createParser() {
         try {
-            // Create a default XML document builder
-            DOCUMENT_BUILDER = DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new IllegalStateException("KNI: Unable to create XML Document Parser", e);
+            // The factory itself is not thread-safe either
+            synchronized (SAX_PARSER_FACTORY) {
+                return SAX_PARSER_FACTORY.newSAXParser();
+            }
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("KNI: Unable to create XML Parser", e);
         }
     }
 
     private final URL noticeUrl; // The url used to request notices
-    private Proxy proxy = Proxy.NO_PROXY; // The proxy to use on requests defaults to NO_PROXY
+    private volatile Proxy proxy = Proxy.NO_PROXY; // The proxy to use on requests defaults to NO_PROXY
+    private volatile Executor executor; // The executor for asynchronous requests (null for the default)
+    private volatile NoticesCache cache; // The cache of retrieved notices (null if caching is disabled)
+    private volatile NoticeArchive archive; // The on-disk archive of retrieved notices (null if disabled)
+    private volatile Duration archiveMaxAge; // The maximum age of archived notices to use instead of requesting
+    private volatile InstanceHttpClient httpClient; // The http client when this instance needs its own (created lazily)
+    private volatile RequestListener requestListener; // The listener for the timings of requests (null if disabled)
+    private volatile Transport transport; // The transport to send requests with (null to send them over HTTP)
+    private volatile ResponseRecorder recorder; // The recorder for raw responses (null if recording is disabled)
+    private volatile NoticePool noticePool; // The pool parsed notices are deduplicated with (null if disabled)
+    private volatile Duration connectTimeout; // The timeout for connecting to KAMAR (null for none)
+    private volatile Duration readTimeout; // The timeout for each read of the response (null for none)
+    private volatile Duration requestTimeout; // The overall timeout of a retrieval including retries (null for none)
+    private volatile RetryPolicy retryPolicy; // How failed requests are retried (null to not retry)
+    private volatile HedgePolicy hedgePolicy; // When to send hedged requests (null to not hedge)
+    private volatile CircuitBreaker circuitBreaker; // The circuit breaker for the host (null if disabled)
+    private volatile HostLimiter hostLimiter; // Limits the requests to the host (null for no limits)
+    private volatile boolean isCompression = false; // Whether to ask KAMAR to compress responses
+    private volatile boolean isLazy = false; // Whether notices decode their fields from the response when used
+    // The requests currently in flight by date, concurrent retrievals of the same date share these
+    private final Map<String, CompletableFuture<Notices>> inFlight = new ConcurrentHashMap<>();
 
     public KNI(String host) {
         this(host, true);
@@ -82,12 +136,12 @@ public class KNI {
      * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
      */
     public Notices retrieve() throws IOException, SAXException {
-        return retrieve(new Date());
+        return retrieve(LocalDate.now());
     }
 
     /**
      * Retrieve the notices from KAMAR using a {@link Date} object
-     * This is automatically formatted to the {@link KNI#DATE_FORMAT} format
+     * This is automatically formatted to the {@link KNI#DATE_FORMATTER} format
      *
      * @param date The date object of which to fetch notices for
      * @return The notices object which contains the notices or an error (Checked via {@link Notices#isSuccess()})
@@ -95,12 +149,25 @@ public class KNI {
      * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
      */
     public Notices retrieve(Date date) throws IOException, SAXException {
-        return retrieve(DATE_FORMAT.format(date));
+        return retrieve(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    }
+
+    /**
+     * Retrieve the notices from KAMAR using a {@link LocalDate} object
+     * This is automatically formatted to the {@link KNI#DATE_FORMATTER} format
+     *
+     * @param date The date of which to fetch notices for
+     * @return The notices object which contains the notices or an error (Checked via {@link Notices#isSuccess()})
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    public Notices retrieve(LocalDate date) throws IOException, SAXException {
+        return retrieve(DATE_FORMATTER.format(date));
     }
 
     /**
      * Retrieve the notices from KAMAR using a date string
-     * MUST FOLLOW THE FORMAT USED BY {@link KNI#DATE_FORMAT}
+     * MUST FOLLOW THE FORMAT USED BY {@link KNI#DATE_FORMATTER}
      *
      * @param date The date to retrieve notices for
      * @return The notices object which contains the notices or an error (Checked via {@link Notices#isSuccess()})
@@ -108,209 +175,1133 @@ public class KNI {
      * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
      */
     public Notices retrieve(String date) throws IOException, SAXException {
-        Notices notices = new Notices(date);
+        Notices notices = lookup(date);
+        if (notices == null) {
+            notices = requestShared(date);
+        }
+        return notices;
+    }
+
+    /**
+     * Requests and stores the notices for a date unless they are already being
+     * requested, in which case this waits for the request in flight and returns
+     * the same notices (or throws the same exception) instead of sending another
+     *
+     * @param date The date to retrieve notices for
+     * @return The notices object which contains the notices or an error
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    private Notices requestShared(String date) throws IOException, SAXException {
+        CompletableFuture<Notices> flight = new CompletableFuture<>();
+        CompletableFuture<Notices> existing = inFlight.putIfAbsent(date, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        Notices notices;
+        try {
+            notices = send(date, null);
+            store(date, notices);
+        } catch (IOException | SAXException | RuntimeException | Error e) {
+            inFlight.remove(date, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        // Removed first so retrievals after this one completes send a new request
+        inFlight.remove(date, flight);
+        flight.complete(notices);
+        return notices;
+    }
+
+    /**
+     * Waits for a request that is in flight
+     *
+     * @param flight The future of the request
+     * @return The notices from the request
+     * @throws IOException  Thrown if the request failed with an {@link IOException} or the thread was interrupted
+     * @throws SAXException Thrown if the request failed with a {@link SAXException}
+     */
+    static Notices await(CompletableFuture<Notices> flight) throws IOException, SAXException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("KNI: Interrupted while waiting for notices");
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof SAXException) throw (SAXException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException("KNI: Unable to retrieve notices", cause);
+        }
+    }
+
+    /**
+     * @param error An error from a future
+     * @return The cause of the error if it is a {@link CompletionException} otherwise the error
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Looks for notices that were previously retrieved, first in the
+     * cache and then in the archive (only if the archived notices are fresh).
+     * The archive is only an optional layer so failing to read it is treated
+     * as a miss and the notices are requested from KAMAR instead
+     *
+     * @param date The date to retrieve notices for
+     * @return The previously retrieved notices or null if there are none
+     */
+    private Notices lookup(String date) {
+        NoticesCache cache = this.cache;
+        NoticeArchive archive = this.archive;
+        if (cache == null && archive == null) {
+            return null;
+        }
+        String url = noticeUrl.toString();
+        if (cache != null) {
+            Notices notices = cache.get(url, date);
+            if (notices != null) {
+                return notices;
+            }
+        }
+        Duration archiveMaxAge = this.archiveMaxAge;
+        if (archive != null && archiveMaxAge != null) {
+            Notices notices;
+            try {
+                notices = archive.get(url, date, archiveMaxAge);
+            } catch (IOException | RuntimeException e) {
+                if (isDebug) e.printStackTrace();
+                notices = null;
+            }
+            if (notices != null) {
+                if (cache != null) {
+                    cache.put(url, date, notices);
+                }
+                return notices;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores newly retrieved notices in the cache and archive, failing to
+     * write to the archive never fails the retrieval of the notices
+     *
+     * @param date    The date the notices were retrieved for
+     * @param notices The retrieved notices
+     */
+    private void store(String date, Notices notices) {
+        NoticesCache cache = this.cache;
+        NoticeArchive archive = this.archive;
+        if (cache == null && archive == null) {
+            return;
+        }
+        String url = noticeUrl.toString();
+        if (cache != null) {
+            cache.put(url, date, notices);
+        }
+        if (archive != null) {
+            try {
+                archive.put(url, date, notices);
+            } catch (IOException | RuntimeException e) {
+                if (isDebug) e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Requests the notices for a date applying the retry policy, circuit breaker and
+     * overall timeout. When hedging the requests are sent through {@link KNI#sendAsync(String)}
+     * <p>
+     * When notices are given to a sink they aren't hedged and a failed attempt is only
+     * retried if none of its notices were given to the sink
+     *
+     * @param date The date to retrieve notices for
+     * @param sink Given each notice as soon as it is parsed instead of collecting them (null to collect them)
+     * @return The notices object which contains the notices or an error
+     * @throws IOException  Thrown if every attempt failed when making the request or reading the response
+     *                      or the circuit for the host is open ({@link CircuitOpenException})
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    private Notices send(String date, Consumer<Notice> sink) throws IOException, SAXException {
+        if (hedgePolicy != null && sink == null) {
+            // Hedging needs a second request in flight which the async requests provide
+            return await(sendAsync(date));
+        }
+        Deadline deadline = Deadline.after(requestTimeout);
+        RetryPolicy retryPolicy = this.retryPolicy;
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        String host = noticeUrl.getAuthority();
+        boolean[] isEmitted = {false}; // Whether any notices were given to the sink
+        Consumer<Notice> attemptSink = sink == null ? null : notice -> {
+            isEmitted[0] = true;
+            sink.accept(notice);
+        };
+        for (int attempt = 1; ; attempt++) {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquire(host);
+            }
+            try {
+                Notices notices = request(date, deadline, attemptSink);
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(host);
+                }
+                return notices;
+            } catch (CancellationException e) {
+                // The sink stopped the request, the portal itself didn't fail
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(host);
+                }
+                throw e;
+            } catch (IOException | SAXException | RuntimeException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onFailure(host);
+                }
+                long backoff = getBackoffNanos(retryPolicy, attempt, e, deadline);
+                // Notices that were already given to the sink can't be taken back
+                if (backoff < 0 || isEmitted[0]) {
+                    throw e;
+                }
+                waitToRetry(backoff);
+            }
+        }
+    }
+
+    /**
+     * Waits for the backoff before the next attempt of a retrieval
+     *
+     * @param backoff The time to wait in nanoseconds
+     * @throws InterruptedIOException Thrown if the thread is interrupted while waiting
+     */
+    private static void waitToRetry(long backoff) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("KNI: Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Requests the notices for a date asynchronously applying the retry policy,
+     * hedge policy, circuit breaker and overall timeout
+     *
+     * @param date The date to retrieve notices for
+     * @return A future completed with the notices object which contains the notices or an error
+     */
+    private CompletableFuture<Notices> sendAsync(String date) {
+        Deadline deadline = Deadline.after(requestTimeout);
+        CompletableFuture<Notices> result = new CompletableFuture<>();
+        deadline.bound(result);
+        sendAttemptAsync(date, deadline, 1, result);
+        return result;
+    }
+
+    /**
+     * Sends an attempt of an asynchronous retrieval scheduling the
+     * next attempt if it fails and can be retried
+     *
+     * @param date     The date to retrieve notices for
+     * @param deadline The deadline of the retrieval
+     * @param attempt  The number of the attempt (starting at 1)
+     * @param result   The future to complete with the result of the retrieval
+     */
+    private void sendAttemptAsync(String date, Deadline deadline, int attempt, CompletableFuture<Notices> result) {
+        if (result.isDone()) {
+            // The deadline passed while waiting to retry
+            return;
+        }
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        String host = noticeUrl.getAuthority();
+        if (circuitBreaker != null) {
+            try {
+                circuitBreaker.acquire(host);
+            } catch (CircuitOpenException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+        }
+        HedgePolicy hedgePolicy = this.hedgePolicy;
+        CompletableFuture<Notices> request = hedgePolicy != null
+                ? requestHedged(date, deadline, hedgePolicy)
+                : requestAsync(date, deadline);
+        // Stop the attempt if the retrieval times out
+        result.whenComplete((notices, error) -> request.cancel(true));
+        request.whenComplete((notices, error) -> {
+            if (error == null) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(host);
+                }
+                result.complete(notices);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure(host);
+            }
+            long backoff = getBackoffNanos(retryPolicy, attempt, cause, deadline);
+            if (backoff < 0) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            Executor executor = this.executor;
+            Executor delayed = executor != null
+                    ? CompletableFuture.delayedExecutor(backoff, TimeUnit.NANOSECONDS, executor)
+                    : CompletableFuture.delayedExecutor(backoff, TimeUnit.NANOSECONDS);
+            delayed.execute(() -> sendAttemptAsync(date, deadline, attempt + 1, result));
+        });
+    }
+
+    /**
+     * Requests the notices asynchronously sending a second (hedged) request if the
+     * first hasn't completed after the delay of the hedge policy, the first request
+     * to succeed is used and the other is cancelled
+     *
+     * @param date        The date to retrieve notices for
+     * @param deadline    The deadline of the retrieval
+     * @param hedgePolicy The policy deciding when to hedge
+     * @return A future completed with the first successful result or the failure of the last request
+     */
+    private CompletableFuture<Notices> requestHedged(String date, Deadline deadline, HedgePolicy hedgePolicy) {
+        CompletableFuture<Notices> result = new CompletableFuture<>();
+        int[] pending = {1}; // The number of requests that haven't failed (guarded by itself)
+        requestHedgedPart(date, deadline, hedgePolicy, result, pending);
+        CompletableFuture.delayedExecutor(hedgePolicy.getDelayNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (pending) {
+                if (result.isDone()) {
+                    return;
+                }
+                pending[0]++;
+            }
+            hedgePolicy.onHedge();
+            requestHedgedPart(date, deadline, hedgePolicy, result, pending);
+        });
+        return result;
+    }
+
+    /**
+     * Sends one of the requests of {@link KNI#requestHedged(String, Deadline, HedgePolicy)}
+     *
+     * @param date        The date to retrieve notices for
+     * @param deadline    The deadline of the retrieval
+     * @param hedgePolicy The policy to record the latency of the request into
+     * @param result      The future to complete with the first successful result
+     * @param pending     The number of requests that haven't failed
+     */
+    private void requestHedgedPart(String date, Deadline deadline, HedgePolicy hedgePolicy,
+                                   CompletableFuture<Notices> result, int[] pending) {
+        long start = System.nanoTime();
+        CompletableFuture<Notices> request = requestAsync(date, deadline);
+        // The slower request is cancelled once the result is known
+        result.whenComplete((notices, error) -> request.cancel(true));
+        request.whenComplete((notices, error) -> {
+            if (error == null) {
+                if (result.complete(notices)) {
+                    hedgePolicy.record(System.nanoTime() - start);
+                }
+                return;
+            }
+            synchronized (pending) {
+                if (--pending[0] > 0) {
+                    // The other request may still succeed
+                    return;
+                }
+            }
+            result.completeExceptionally(unwrap(error));
+        });
+    }
+
+    /**
+     * @param retryPolicy The retry policy (null to never retry)
+     * @param attempt     The attempt that failed (starting at 1)
+     * @param error       The error the attempt failed with
+     * @param deadline    The deadline of the retrieval
+     * @return The time to wait before retrying in nanoseconds or -1 to not retry
+     */
+    private static long getBackoffNanos(RetryPolicy retryPolicy, int attempt, Throwable error, Deadline deadline) {
+        if (retryPolicy == null || !retryPolicy.shouldRetry(attempt, error)) {
+            return -1;
+        }
+        long backoff = retryPolicy.getBackoffNanos(attempt);
+        // There is no point retrying if the deadline passes before the retry is sent
+        return backoff < deadline.remainingNanos() ? backoff : -1;
+    }
+
+    /**
+     * Requests the notices from KAMAR using a date string
+     *
+     * @param date     The date to retrieve notices for
+     * @param deadline The deadline of the retrieval
+     * @param sink     Given each notice as soon as it is parsed instead of collecting them (null to collect them)
+     * @return The notices object which contains the notices or an error
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    private Notices request(String date, Deadline deadline, Consumer<Notice> sink) throws IOException, SAXException {
+        RequestTrace trace = createTrace(date);
+        boolean isDebugging = isDebug;
+        // Store the input stream so we can close it later
+        InputStream inputStream = null;
+        HostLimiter.Permit permit = null;
+        try {
+            permit = acquirePermit(trace, deadline);
+            // The response input stream
+            inputStream = openResponse(date, trace, deadline);
+            // Copy the raw response to the recorder as it is parsed
+            ResponseRecorder recorder = this.recorder;
+            if (recorder != null) {
+                inputStream = recorder.record(noticeUrl.toString(), date, inputStream);
+            }
+            // Debug logging prints the raw response to the console as it is parsed
+            if (isDebugging) {
+                System.out.println(" === START KAMAR RESPONSE ==== ");
+                inputStream = new TeeInputStream(inputStream, System.out, false);
+            }
+            // Parse the notices straight from the response stream
+            return parse(inputStream, date, trace, sink);
+        } catch (IOException | SAXException | RuntimeException e) {
+            // Aborting the request at the deadline fails it with whatever the interrupted read throws
+            if (deadline.isExpired()) {
+                IOException timeout = deadline.timeout(e);
+                trace.setException(timeout);
+                throw timeout;
+            }
+            trace.setException(e);
+            throw e;
+        } finally {
+            // Closed before the abort is cleared so a close stuck on the connection is still aborted
+            closeQuietly(inputStream);
+            deadline.clearAbort();
+            if (permit != null) {
+                permit.release();
+            }
+            if (isDebugging) {
+                System.out.println();
+                System.out.println(" ===  END KAMAR RESPONSE  ==== ");
+            }
+            report(trace);
+        }
+    }
+
+    /**
+     * Requests the raw response bytes from KAMAR using a date string
+     * without parsing them (they can be parsed later with {@link KNI#parse(InputStream, String, RequestTrace)})
+     * applying the retry policy, circuit breaker and overall timeout like {@link KNI#retrieve(String)}
+     *
+     * @param date  The date to retrieve notices for
+     * @param trace The trace to record the timings of the request into
+     * @return The bytes of the response body
+     * @throws IOException Thrown if every attempt failed when making the request or reading the response
+     *                     or the circuit for the host is open ({@link CircuitOpenException})
+     */
+    byte[] requestRaw(String date, RequestTrace trace) throws IOException {
+        Deadline deadline = Deadline.after(requestTimeout);
+        RetryPolicy retryPolicy = this.retryPolicy;
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        String host = noticeUrl.getAuthority();
+        for (int attempt = 1; ; attempt++) {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquire(host);
+            }
+            try {
+                byte[] response = requestRaw(date, trace, deadline);
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(host);
+                }
+                return response;
+            } catch (IOException | RuntimeException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onFailure(host);
+                }
+                long backoff = getBackoffNanos(retryPolicy, attempt, e, deadline);
+                if (backoff < 0) {
+                    throw e;
+                }
+                waitToRetry(backoff);
+            }
+        }
+    }
+
+    /**
+     * Sends a single attempt of {@link KNI#requestRaw(String, RequestTrace)}
+     *
+     * @param date     The date to retrieve notices for
+     * @param trace    The trace to record the timings of the request into
+     * @param deadline The deadline of the retrieval
+     * @return The bytes of the response body
+     * @throws IOException Thrown if an error occurs when making the request or reading the response
+     */
+    private byte[] requestRaw(String date, RequestTrace trace, Deadline deadline) throws IOException {
+        HostLimiter.Permit permit = null;
+        try {
+            permit = acquirePermit(trace, deadline);
+            InputStream response = openResponse(date, trace, deadline);
+            ResponseRecorder recorder = this.recorder;
+            try (InputStream inputStream = recorder != null ? recorder.record(noticeUrl.toString(), date, response) : response) {
+                return inputStream.readAllBytes();
+            }
+        } catch (IOException e) {
+            throw deadline.isExpired() ? deadline.timeout(e) : e;
+        } finally {
+            deadline.clearAbort();
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Waits for the host limiter (if there is one) to allow a request
+     * to the portal recording the time waited into the trace
+     *
+     * @param trace    The trace of the request
+     * @param deadline The deadline of the retrieval
+     * @return The permit to release once the response has been read or null if there is no limiter
+     * @throws IOException Thrown if the deadline passed or the thread was interrupted while waiting
+     */
+    private HostLimiter.Permit acquirePermit(RequestTrace trace, Deadline deadline) throws IOException {
+        HostLimiter hostLimiter = this.hostLimiter;
+        if (hostLimiter == null) {
+            trace.setNanos(RequestTrace.Phase.QUEUE, 0);
+            return null;
+        }
+        HostLimiter.Permit permit = hostLimiter.acquire(noticeUrl.getAuthority(), deadline);
+        trace.setNanos(RequestTrace.Phase.QUEUE, permit.getWaitNanos());
+        return permit;
+    }
+
+    /**
+     * Opens a connection to KAMAR and sends the GetNotices request
+     *
+     * @param date     The date to retrieve notices for
+     * @param trace    The trace to record the timings of the request into
+     * @param deadline The deadline of the retrieval, the connection is aborted once it passes
+     * @return The input stream of the response body (reads from it are recorded in the trace)
+     * @throws IOException Thrown if an error occurs when making the request
+     */
+    private InputStream openResponse(String date, RequestTrace trace, Deadline deadline) throws IOException {
+        if (deadline.isExpired()) {
+            throw deadline.timeout(null);
+        }
+        Transport transport = this.transport;
+        if (transport != null) {
+            // Only the time until the transport provides the response can be measured
+            long start = System.nanoTime();
+            InputStream inputStream = transport.open(noticeUrl, date);
+            trace.setNanos(RequestTrace.Phase.FIRST_BYTE, System.nanoTime() - start);
+            return new TimedInputStream(inputStream, trace);
+        }
+        byte[] body = createRequestBody(date);
         HttpURLConnection connection = (HttpURLConnection) noticeUrl.openConnection(proxy);
         // Change the User-Agent header so KAMAR will allow this request
         connection.addRequestProperty("User-Agent", USER_AGENT);
         // Specify the type of content we are sending
         connection.addRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        if (isCompression) {
+            // Ask for a compressed response, setting this ourselves means the connection won't decode it
+            connection.addRequestProperty("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING);
+        }
         // Tell the connection to provide us an InputStream for reading the response
         connection.setDoInput(true);
         // Tell the connection to provide us an OutputStream for writing our content
         connection.setDoOutput(true);
-        // Store the output stream so we can close it later
-        OutputStream outputStream = null;
-        // Store the input stream so we can close it later
-        InputStream inputStream = null;
-        try {
-
-            // The output stream to send data
-            outputStream = connection.getOutputStream();
-            // Create the request request
-            String request = String.format(
-                    "Key=%s&Command=GetNotices&ShowAll=YES&Date=%s",
-                    URLEncoder.encode(DEFAULT_KEY, StandardCharsets.UTF_8),
-                    URLEncoder.encode(date, StandardCharsets.UTF_8)
-            );
-            // Convert the request into bytes so it can be written to the output stream
-            byte[] requestBytes = request.getBytes(StandardCharsets.UTF_8);
+        // Send the body as it is written rather than buffering it until the response is read
+        connection.setFixedLengthStreamingMode(body.length);
+        // The connect and read timeouts are shortened to the time left before the deadline
+        connection.setConnectTimeout(deadline.limitMillis(connectTimeout));
+        connection.setReadTimeout(deadline.limitMillis(readTimeout));
+        // Disconnecting aborts whichever phase the request is in once the deadline passes
+        deadline.setAbort(connection::disconnect);
+        long start = System.nanoTime();
+        connection.connect();
+        trace.setNanos(RequestTrace.Phase.CONNECT, System.nanoTime() - start);
+        start = System.nanoTime();
+        // The output stream to send data
+        try (OutputStream outputStream = connection.getOutputStream()) {
             // Write the request bytes
-            outputStream.write(requestBytes);
+            outputStream.write(body);
             // Flush the output stream
             outputStream.flush();
+        }
+        trace.setNanos(RequestTrace.Phase.WRITE, System.nanoTime() - start);
+        trace.setRequestBytes(body.length);
+        start = System.nanoTime();
+        // The response input stream (this waits for the response headers)
+        InputStream inputStream = connection.getInputStream();
+        trace.setNanos(RequestTrace.Phase.FIRST_BYTE, System.nanoTime() - start);
+        // Compressed bytes are timed and counted as they arrive and then decoded as they are parsed
+        return ContentDecoding.decode(new TimedInputStream(inputStream, trace), connection.getContentEncoding(), trace);
+    }
 
-            // The response input stream
-            inputStream = connection.getInputStream();
-            // Debug logging takes a copy of the response and prints it to the console;
-            if (isDebug) {
-                // A StringBuilder for storing the content
-                StringBuilder content = new StringBuilder();
-                // Read all the lines
-                try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream))) {
-                    // Stores the current line
-                    String line;
-                    while ((line = bufferedReader.readLine()) != null) {
-                        // Remove any leading/trailing whitespace from the line
-                        line = line.trim();
-                        // Ignore empty lines
-                        if (line.isEmpty()) {
-                            continue;
-                        }
-                        // Append the line and a new line to the content StringBuilder
-                        content.append(line).append('\n');
-                    }
+    /**
+     * Retrieve the notices from KAMAR asynchronously using the current date
+     *
+     * @return A future completed with the notices object (see {@link KNI#retrieveAsync(String)})
+     */
+    public CompletableFuture<Notices> retrieveAsync() {
+        return retrieveAsync(LocalDate.now());
+    }
+
+    /**
+     * Retrieve the notices from KAMAR asynchronously using a {@link LocalDate} object
+     *
+     * @param date The date of which to fetch notices for
+     * @return A future completed with the notices object (see {@link KNI#retrieveAsync(String)})
+     */
+    public CompletableFuture<Notices> retrieveAsync(LocalDate date) {
+        return retrieveAsync(DATE_FORMATTER.format(date));
+    }
+
+    /**
+     * Retrieve the notices from KAMAR asynchronously using a date string
+     * MUST FOLLOW THE FORMAT USED BY {@link KNI#DATE_FORMATTER}
+     * <p>
+     * The request is sent through a shared {@link HttpClient} which reuses
+     * connections (and uses HTTP/2 where the portal supports it) so no thread
+     * is held while waiting on the portal. The response is parsed on the
+     * executor provided through {@link KNI#setExecutor(Executor)}
+     * <p>
+     * Like {@link KNI#retrieve(String)} a request that is already in flight
+     * for the same date is shared rather than sending another
+     *
+     * @param date The date to retrieve notices for
+     * @return A future completed with the notices object which contains the notices or an error
+     * (Checked via {@link Notices#isSuccess()}) or completed exceptionally with an {@link IOException}
+     * or {@link SAXException} just like {@link KNI#retrieve(String)}
+     */
+    public CompletableFuture<Notices> retrieveAsync(String date) {
+        Notices notices = lookup(date);
+        if (notices != null) {
+            return CompletableFuture.completedFuture(notices);
+        }
+        return refreshAsync(date);
+    }
+
+    /**
+     * Retrieves the notices from KAMAR asynchronously without looking in the cache
+     * or archive, the response is still stored in them. Used by pollers which must see
+     * the current notices rather than a snapshot cached by an earlier retrieval
+     *
+     * @param date The date to retrieve notices for
+     * @return A future completed like {@link KNI#retrieveAsync(String)}
+     */
+    CompletableFuture<Notices> refreshAsync(String date) {
+        CompletableFuture<Notices> flight = new CompletableFuture<>();
+        CompletableFuture<Notices> existing = inFlight.putIfAbsent(date, flight);
+        if (existing != null) {
+            // Copied so callers completing or cancelling their future don't affect the others
+            return existing.copy();
+        }
+        sendAsync(date).whenComplete((result, error) -> {
+            Throwable failure = error;
+            try {
+                if (failure == null) {
+                    store(date, result);
                 }
-                // Get rid of the last \n for formatting reasons
-                content.deleteCharAt(content.length() - 1);
-                // Convert the string builder into a string
-                String contentRaw = content.toString();
-                // Fancy printing and the response message
-                System.out.println(" === START KAMAR RESPONSE ==== ");
-                System.out.println(contentRaw);
-                System.out.println(" ===  END KAMAR RESPONSE  ==== ");
-                // Replace the empty input stream with a new stream from our content
-                inputStream = new ByteArrayInputStream(contentRaw.getBytes(StandardCharsets.UTF_8));
-            }
-            // Create an XML document builder;
-            Document document = DOCUMENT_BUILDER.parse(inputStream);
-
-            // Find any nodes named "Error" (They will only appear if an error occurred)
-            NodeList errorNodeList = document.getElementsByTagName("Error");
-            // Check if any nodes are in the list
-            if (errorNodeList.getLength() > 0) {
-                // Get the first node (There should only be one)
-                Node errorNode = errorNodeList.item(0);
-                // Print the error if debug is enabled
-                if (isDebug) System.out.println("ERR: Error retrieving notices: " + errorNode.getTextContent());
-                // Set the error message in the notices object
-                notices.setErrorMessage(errorNode.getTextContent());
-            } else {
-                List<Notice> noticesList = new ArrayList<>();
-                // Get all nodes named "General"
-                NodeList generalNodeList = document.getElementsByTagName("General");
-                // Get all nodes named "Meeting"
-                NodeList meetingNodeList = document.getElementsByTagName("Meeting");
-                // Get the total number of nodes
-                int total = generalNodeList.getLength() + meetingNodeList.getLength();
-                if (total > 0) {
-                    // Loop through all the indexes
-                    for (int i = 0; i < total; i++) {
-                        // Determine which node list to use
-                        NodeList nodeList = i >= generalNodeList.getLength() ? meetingNodeList : generalNodeList;
-                        int index = nodeList == meetingNodeList ? i - generalNodeList.getLength() : i;
-                        // Parse the notice from the node
-                        Notice notice = parseNotice(nodeList.item(index));
-                        // Ignore invalid / null notices
-                        if (notice != null) {
-                            // Add the notice to the list
-                            noticesList.add(notice);
-                        }
-                    }
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            } finally {
+                // Removed first so retrievals after this one completes send a new request
+                inFlight.remove(date, flight);
+                if (failure != null) {
+                    flight.completeExceptionally(unwrap(failure));
+                } else {
+                    flight.complete(result);
                 }
-                // Store the list of notices
-                notices.setNotices(noticesList);
             }
-        } finally {
-            // Close the input & output streams
-            closeQuietly(inputStream);
-            closeQuietly(outputStream);
+        });
+        return flight.copy();
+    }
+
+    /**
+     * Creates a publisher of the notices for a date (see {@link KNI#publish(String)})
+     *
+     * @param date The date to retrieve notices for
+     * @return The publisher of the notices
+     */
+    public Flow.Publisher<Notice> publish(LocalDate date) {
+        return publish(DATE_FORMATTER.format(date));
+    }
+
+    /**
+     * Creates a publisher of the notices for a date using a date string
+     * MUST FOLLOW THE FORMAT USED BY {@link KNI#DATE_FORMATTER}
+     * <p>
+     * Each subscriber starts its own retrieval and is sent every notice as soon as
+     * it is parsed while the rest of the response is still being read, the notices
+     * are never collected so memory use stays flat however many there are. Reading
+     * the response waits while the subscriber has no outstanding demand
+     * <p>
+     * The publisher completes normally once every notice is sent, or signals a
+     * {@link KamarErrorException} if KAMAR responded with an error, or the
+     * {@link IOException} or {@link SAXException} the retrieval failed with.
+     * Cached notices are sent from the cache but published notices aren't cached,
+     * requests aren't shared or hedged and are only retried until the first notice
+     * is sent. The response is read on the executor provided through
+     * {@link KNI#setExecutor(Executor)} or on a new daemon thread if there is none
+     *
+     * @param date The date to retrieve notices for
+     * @return The publisher of the notices
+     */
+    public Flow.Publisher<Notice> publish(String date) {
+        Executor executor = this.executor;
+        return new NoticePublisher(this, date, executor != null ? executor : runnable -> {
+            // Reading waits on the subscriber so it isn't done on a shared pool
+            Thread thread = new Thread(runnable, "KNI-Publisher");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Retrieves the notices for a date giving each notice to a sink as
+     * soon as it is parsed instead of collecting them
+     *
+     * @param date The date to retrieve notices for
+     * @param sink Given each notice in the order they appear in the response
+     * @return The notices object which contains the error if there was one (the notices are given to the sink)
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    Notices stream(String date, Consumer<Notice> sink) throws IOException, SAXException {
+        Notices notices = lookup(date);
+        if (notices == null) {
+            return send(date, sink);
+        }
+        if (notices.getErrorMessage() == null && notices.getNotices() != null) {
+            for (Notice notice : notices.getNotices()) {
+                sink.accept(notice);
+            }
         }
         return notices;
     }
 
     /**
-     * Parses a notice object from a XML node will return null on failure
+     * Requests the notices from KAMAR asynchronously using a date string
      *
-     * @param node The XML node to read
-     * @return Null if the xml was invalid or the notice object
+     * @param date     The date to retrieve notices for
+     * @param deadline The deadline of the retrieval
+     * @return A future completed with the notices object which contains the notices or an error,
+     * cancelling it cancels the request
      */
-    private Notice parseNotice(Node node) {
-        if (node == null) {
-            return null;
+    private CompletableFuture<Notices> requestAsync(String date, Deadline deadline) {
+        Proxy proxy = this.proxy;
+        Executor executor = this.executor;
+        if (proxy.type() == Proxy.Type.SOCKS || transport != null) {
+            // The HttpClient has no support for SOCKS proxies or other
+            // transports so fallback to the blocking request
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    // Concurrent (hedged) requests each need their own deadline to abort
+                    return request(date, deadline.fork(), null);
+                } catch (IOException | SAXException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor != null ? executor : ForkJoinPool.commonPool());
         }
-        String nodeName = node.getNodeName();
-        if(nodeName == null) {
-            return null;
+        RequestTrace trace = createTrace(date);
+        byte[] body = createRequestBody(date);
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(noticeUrl.toURI())
+                    // Change the User-Agent header so KAMAR will allow this request
+                    .header("User-Agent", USER_AGENT)
+                    // Specify the type of content we are sending
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+            if (isCompression) {
+                builder.header("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING);
+            }
+            // The request timeout covers waiting for the response headers, the
+            // overall deadline is applied to the returned future by the caller
+            Duration timeout = deadline.limit(readTimeout);
+            if (timeout != null) {
+                builder.timeout(timeout);
+            }
+            request = builder.build();
+        } catch (URISyntaxException e) {
+            return CompletableFuture.failedFuture(new IOException("Invalid URL for KAMAR", e));
         }
-        boolean isMeeting = nodeName.equals("Meeting");
-        int index = -1;
-        NamedNodeMap attributes = node.getAttributes();
-        if (attributes != null && attributes.getLength() > 0) {
-            Node indexNode = attributes.getNamedItem("index");
-            if (indexNode != null) {
+        trace.setRequestBytes(body.length);
+        long[] sent = new long[1]; // The nano time the request was sent once the host limiter allowed it
+        // The handler is called once the headers arrive, after that the rest of the body is read
+        HttpResponse.BodyHandler<byte[]> bodyHandler = responseInfo -> {
+            long firstByte = System.nanoTime();
+            trace.setNanos(RequestTrace.Phase.FIRST_BYTE, firstByte - sent[0]);
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                trace.setNanos(RequestTrace.Phase.READ, System.nanoTime() - firstByte);
+                trace.setResponseBytes(bytes.length);
+                return bytes;
+            });
+        };
+        HttpClient httpClient = getHttpClient(proxy, executor, connectTimeout);
+        HostLimiter hostLimiter = this.hostLimiter;
+        CompletableFuture<HostLimiter.Permit> permit = hostLimiter != null
+                ? hostLimiter.acquireAsync(noticeUrl.getAuthority())
+                : CompletableFuture.completedFuture(null);
+        AtomicBoolean isCancelled = new AtomicBoolean(false);
+        AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>(); // The exchange once it was sent
+        // The whole body is collected before parsing so no thread is blocked reading it
+        CompletableFuture<HttpResponse<byte[]>> response = permit.thenCompose(granted -> {
+            trace.setNanos(RequestTrace.Phase.QUEUE, granted != null ? granted.getWaitNanos() : 0);
+            sent[0] = System.nanoTime();
+            CompletableFuture<HttpResponse<byte[]>> sending;
+            try {
+                sending = httpClient.sendAsync(request, bodyHandler);
+            } catch (RuntimeException e) {
+                if (granted != null) {
+                    granted.release();
+                }
+                throw e;
+            }
+            if (granted != null) {
+                // The host is free for the next request once the body has been received
+                sending.whenComplete((result, error) -> granted.release());
+            }
+            exchange.set(sending);
+            if (isCancelled.get()) {
+                sending.cancel(true);
+            }
+            return sending;
+        });
+        Function<HttpResponse<byte[]>, Notices> parser = httpResponse -> {
+            try {
+                if (httpResponse.statusCode() >= 400) {
+                    throw new IOException("Server returned HTTP response code: " + httpResponse.statusCode() + " for URL: " + noticeUrl);
+                }
+                // Only the compressed body is held in memory, it is decoded as it is parsed
+                InputStream inputStream = ContentDecoding.decode(new ByteArrayInputStream(httpResponse.body()),
+                        httpResponse.headers().firstValue("Content-Encoding").orElse(null), trace);
+                ResponseRecorder recorder = this.recorder;
+                if (recorder != null) {
+                    inputStream = recorder.record(noticeUrl.toString(), date, inputStream);
+                }
+                boolean isDebugging = isDebug;
+                if (isDebugging) {
+                    System.out.println(" === START KAMAR RESPONSE ==== ");
+                    inputStream = new TeeInputStream(inputStream, System.out, false);
+                }
                 try {
-                    index = Integer.parseInt(indexNode.getTextContent());
-                } catch (NumberFormatException ignored) {
+                    return parse(inputStream, date, trace);
+                } finally {
+                    closeQuietly(inputStream);
+                    if (isDebugging) {
+                        System.out.println();
+                        System.out.println(" ===  END KAMAR RESPONSE  ==== ");
+                    }
+                }
+            } catch (IOException | SAXException e) {
+                throw new CompletionException(e);
+            }
+        };
+        CompletableFuture<Notices> notices = executor != null
+                ? response.thenApplyAsync(parser, executor)
+                : response.thenApplyAsync(parser);
+        CompletableFuture<Notices> reported = notices.whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                trace.setException(cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+            }
+            report(trace);
+        });
+        // Cancelling the returned future cancels waiting for the host limiter or the exchange with the portal
+        reported.whenComplete((result, error) -> {
+            if (reported.isCancelled()) {
+                isCancelled.set(true);
+                permit.cancel(true);
+                CompletableFuture<?> sending = exchange.get();
+                if (sending != null) {
+                    sending.cancel(true);
                 }
             }
+        });
+        return reported;
+    }
+
+    /**
+     * Retrieve the notices from KAMAR for every day in a range of dates
+     * (see {@link KNI#retrieveRangeAsync(LocalDate, LocalDate, int)})
+     *
+     * @param from The first date of the range
+     * @param to   The last date of the range (inclusive)
+     * @return The merged notices of the range along with any days that failed
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the results
+     */
+    public NoticesRange retrieveRange(LocalDate from, LocalDate to) throws InterruptedException {
+        try {
+            return retrieveRangeAsync(from, to).get();
+        } catch (ExecutionException e) {
+            // Failed days are stored within the range so only unexpected errors end up here
+            throw new IllegalStateException("KNI: Unable to retrieve range", e.getCause());
         }
+    }
 
-        // General Notices
-        Notice.Level level = null;
-        String subject = null;
-        String body = null;
-        String teacher = null;
-
-        // Meeting Notices
-        String place = null;
-        String date = null;
-        String time = null;
-
-        // Get the XML node children
-        NodeList children = node.getChildNodes();
-        // Store the current index
-        int nodeIndex = 0;
-        // Loop through all the children
-        while (nodeIndex < children.getLength()) {
-            // The child XML node
-            Node childNode = children.item(nodeIndex);
-            // The XML node name
-            String name = childNode.getNodeName();
-            // The text content within the node
-            String content = childNode.getTextContent();
-            // Decide what to do based on the element name
-            switch (name) {
-                case "Level":
-                    // Parse the notice level
-                    level = Notice.Level.fromString(content);
-                    break;
-                case "Subject":
-                    subject = content;
-                    break;
-                case "Body":
-                    body = content;
-                    break;
-                case "Teacher":
-                    teacher = content;
-                    break;
-                case "PlaceMeet":
-                    place = content;
-                    break;
-                case "DateMeet":
-                    date = content;
-                    break;
-                case "TimeMeet":
-                    time = content;
-                    break;
-            }
-            // Increase the index
-            nodeIndex++;
-        }
-
-        // Ignore invalid notices (bad server response?) This shouldn't happen but just in case
-        if (level == null || subject == null || body == null || teacher == null) {
-            return null;
+    /**
+     * Retrieve the notices from KAMAR asynchronously for every day in a range of dates
+     * with at most {@link KNI#RANGE_CONCURRENCY} requests in flight at once
+     *
+     * @param from The first date of the range
+     * @param to   The last date of the range (inclusive)
+     * @return A future completed with the merged notices of the range along with any days that failed
+     */
+    public CompletableFuture<NoticesRange> retrieveRangeAsync(LocalDate from, LocalDate to) {
+        return retrieveRangeAsync(from, to, RANGE_CONCURRENCY);
+    }
+
+    /**
+     * Retrieve the notices from KAMAR asynchronously for every day in a range of dates.
+     * The requests for each day are sent through {@link KNI#retrieveAsync(LocalDate)} so
+     * they share connections, a new request is sent as soon as one completes so there
+     * are always up to maxConcurrency requests in flight
+     * <p>
+     * Days that fail are reported through {@link NoticesRange#getFailures()}, the
+     * returned future only completes exceptionally if an unexpected error occurs
+     *
+     * @param from           The first date of the range
+     * @param to             The last date of the range (inclusive)
+     * @param maxConcurrency The maximum number of requests in flight at once
+     * @return A future completed with the merged notices of the range along with any days that failed
+     */
+    public CompletableFuture<NoticesRange> retrieveRangeAsync(LocalDate from, LocalDate to, int maxConcurrency) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The end of the range must not be before the start");
         }
-        // Not actually a meeting notice?
-        if (isMeeting && (place == null || date == null || time == null)) {
-            return null;
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1");
+        }
+        List<LocalDate> dates = from.datesUntil(to.plusDays(1)).collect(Collectors.toList());
+        NoticesRange range = new NoticesRange(from, to);
+        CompletableFuture<NoticesRange> result = new CompletableFuture<>();
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(dates.size());
+        AtomicInteger toSend = new AtomicInteger(); // The number of requests waiting to be sent
+        Runnable sendNext = new Runnable() {
+            @Override
+            public void run() {
+                // Days that complete straight away (e.g. from the cache) ask for the next day
+                // while it is being sent, those are sent by this loop instead of recursing
+                if (toSend.getAndIncrement() != 0) {
+                    return;
+                }
+                do {
+                    int index = nextIndex.getAndIncrement();
+                    if (index < dates.size() && !result.isDone()) {
+                        send(dates.get(index));
+                    }
+                } while (toSend.decrementAndGet() != 0);
+            }
+
+            private void send(LocalDate date) {
+                try {
+                    retrieveAsync(date).whenComplete((notices, error) -> {
+                        try {
+                            range.add(date, notices, error);
+                            if (remaining.decrementAndGet() == 0) {
+                                range.complete();
+                                result.complete(range);
+                            } else {
+                                // Replace the completed request with the next day
+                                run();
+                            }
+                        } catch (RuntimeException | Error e) {
+                            result.completeExceptionally(e);
+                        }
+                    });
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        for (int i = 0; i < Math.min(maxConcurrency, dates.size()); i++) {
+            sendNext.run();
         }
+        return result;
+    }
+
+    /**
+     * Parses the notices from a KAMAR response
+     *
+     * @param inputStream The response input stream
+     * @param date        The date the notices were requested for
+     * @return The notices object which contains the notices or an error
+     * @throws IOException  Thrown if an error occurs when reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    Notices parse(InputStream inputStream, String date) throws IOException, SAXException {
+        return parse(inputStream, date, null);
+    }
 
-        if (isMeeting) {
-            return new MeetingNotice(index, level, subject, body, teacher, place, date, time);
+    /**
+     * Parses the notices from a KAMAR response recording the time spent
+     * parsing and the outcome into a trace
+     *
+     * @param inputStream The response input stream
+     * @param date        The date the notices were requested for
+     * @param trace       The trace of the request or null to not record anything
+     * @return The notices object which contains the notices or an error
+     * @throws IOException  Thrown if an error occurs when reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    Notices parse(InputStream inputStream, String date, RequestTrace trace) throws IOException, SAXException {
+        return parse(inputStream, date, trace, null);
+    }
+
+    /**
+     * Parses the notices from a KAMAR response giving each notice to a sink as
+     * soon as it is parsed, the notices are not collected when there is a sink
+     * and responses are never parsed lazily
+     *
+     * @param inputStream The response input stream
+     * @param date        The date the notices were requested for
+     * @param trace       The trace of the request or null to not record anything
+     * @param sink        Given each notice as it is parsed (null to collect the notices)
+     * @return The notices object which contains the notices (none if there is a sink) or an error
+     * @throws IOException  Thrown if an error occurs when reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    private Notices parse(InputStream inputStream, String date, RequestTrace trace, Consumer<Notice> sink) throws IOException, SAXException {
+        // Reads happen while parsing so the time spent reading is removed from the parse time
+        long readBefore = trace != null ? Math.max(trace.getNanos(RequestTrace.Phase.READ), 0) : 0;
+        long start = System.nanoTime();
+        Notices notices = new Notices(date);
+        String errorMessage;
+        List<Notice> parsed;
+        // The number of notices given to the sink and the time spent in it (which isn't parse time)
+        long[] sinkStats = {0, 0};
+        Consumer<Notice> timedSink = sink == null ? null : notice -> {
+            long sinkStart = System.nanoTime();
+            try {
+                sink.accept(notice);
+            } finally {
+                sinkStats[0]++;
+                sinkStats[1] += System.nanoTime() - sinkStart;
+            }
+        };
+        LazyNoticeReader reader = null;
+        if (isLazy && sink == null) {
+            // The whole response is kept and the notices decode their fields from it
+            byte[] response = inputStream.readAllBytes();
+            reader = LazyNoticeReader.read(response);
+            // Responses that can't be read lazily are parsed normally
+            if (reader == null) inputStream = new ByteArrayInputStream(response);
+        }
+        if (reader != null) {
+            errorMessage = reader.getErrorMessage();
+            parsed = reader.getNotices();
         } else {
-            return new Notice(index, level, subject, body, teacher);
+            NoticeHandler handler = new NoticeHandler(noticePool, timedSink);
+            SAX_PARSER.get().parse(inputStream, handler);
+            errorMessage = handler.getErrorMessage();
+            parsed = handler.getNotices();
+        }
+        // The error message will only be present if an error occurred
+        if (errorMessage != null) {
+            // Print the error if debug is enabled
+            if (isDebug) System.out.println("ERR: Error retrieving notices: " + errorMessage);
+            // Set the error message in the notices object
+            notices.setErrorMessage(errorMessage);
+        } else {
+            // Store the list of notices
+            notices.setNotices(parsed);
+        }
+        if (trace != null) {
+            long read = Math.max(trace.getNanos(RequestTrace.Phase.READ), 0) - readBefore;
+            trace.setNanos(RequestTrace.Phase.PARSE, System.nanoTime() - start - read - sinkStats[1]);
+            trace.setErrorMessage(errorMessage);
+            trace.setNoticeCount(errorMessage != null ? 0 : notices.getNotices().size() + (int) sinkStats[0]);
+        }
+        return notices;
+    }
+
+    /**
+     * Creates the trace for a request to KAMAR
+     *
+     * @param date The date the request is for
+     * @return The created trace
+     */
+    RequestTrace createTrace(String date) {
+        return new RequestTrace(noticeUrl.toString(), date);
+    }
+
+    /**
+     * Finishes a trace and provides it to the request listener (if there is one)
+     *
+     * @param trace The trace of the finished request
+     */
+    void report(RequestTrace trace) {
+        trace.setNanos(RequestTrace.Phase.TOTAL, System.nanoTime() - trace.getStartNanos());
+        RequestListener requestListener = this.requestListener;
+        if (requestListener != null) {
+            try {
+                requestListener.onRequest(trace);
+            } catch (RuntimeException e) {
+                // A broken listener should never break the request
+                if (isDebug) e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Creates the form encoded body of a GetNotices request
+     *
+     * @param date The date to retrieve notices for
+     * @return The bytes of the request body
+     */
+    private static byte[] createRequestBody(String date) {
+        // Create the request request
+        String request = String.format(
+                "Key=%s&Command=GetNotices&ShowAll=YES&Date=%s",
+                URLEncoder.encode(DEFAULT_KEY, StandardCharsets.UTF_8),
+                URLEncoder.encode(date, StandardCharsets.UTF_8)
+        );
+        // Convert the request into bytes so it can be written to the output stream
+        return request.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the {@link HttpClient} for the provided proxy, executor and connect timeout.
+     * Without any of them the client shared by every KNI instance is used otherwise
+     * a client is created for this instance and reused until any of them change
+     *
+     * @param proxy          The proxy the client must use
+     * @param executor       The executor the client must use (null for the default)
+     * @param connectTimeout The connect timeout the client must use (null for none)
+     * @return The http client
+     */
+    private HttpClient getHttpClient(Proxy proxy, Executor executor, Duration connectTimeout) {
+        if (proxy == Proxy.NO_PROXY && executor == null && connectTimeout == null) {
+            return SharedHttpClient.INSTANCE;
         }
+        InstanceHttpClient instanceClient = this.httpClient;
+        if (instanceClient == null || instanceClient.proxy != proxy || instanceClient.executor != executor
+                || !Objects.equals(instanceClient.connectTimeout, connectTimeout)) {
+            HttpClient.Builder builder = createHttpClientBuilder();
+            if (proxy.type() == Proxy.Type.HTTP) {
+                builder.proxy(ProxySelector.of((InetSocketAddress) proxy.address()));
+            }
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            if (connectTimeout != null) {
+                builder.connectTimeout(connectTimeout);
+            }
+            instanceClient = new InstanceHttpClient(proxy, executor, connectTimeout, builder.build());
+            this.httpClient = instanceClient;
+        }
+        return instanceClient.client;
+    }
+
+    /**
+     * @return A http client builder with the settings used for all KAMAR requests
+     */
+    private static HttpClient.Builder createHttpClientBuilder() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .proxy(HttpClient.Builder.NO_PROXY);
     }
 
     /**
@@ -336,4 +1327,207 @@ public class KNI {
         this.proxy = proxy;
     }
 
+    /**
+     * Set a cache for retrieved notices to be stored in, while cached notices
+     * are fresh they are returned without making a request to KAMAR
+     *
+     * @param cache The cache to use or null to disable caching
+     */
+    public void setCache(NoticesCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Set an archive for retrieved notices to be stored in, archived notices are
+     * used instead of making a request to KAMAR while they are younger than maxAge.
+     * Failing to read or write the archive never fails a retrieval (the failures
+     * are printed when debugging), notices that can't be read are requested instead
+     *
+     * @param archive The archive to use or null to disable archiving
+     * @param maxAge  The maximum age of archived notices to use (null to only write to the archive)
+     */
+    public void setArchive(NoticeArchive archive, Duration maxAge) {
+        this.archiveMaxAge = maxAge;
+        this.archive = archive;
+    }
+
+    /**
+     * Set a listener to be given the timings and outcome of every request
+     * sent to KAMAR (such as {@link RequestMetrics})
+     *
+     * @param requestListener The listener to use or null to disable it
+     */
+    public void setRequestListener(RequestListener requestListener) {
+        this.requestListener = requestListener;
+    }
+
+    /**
+     * Set a transport to send requests with instead of HTTP, such as a
+     * {@link ReplayTransport} to replay recorded responses. Requests sent
+     * through a transport ignore the proxy and are never sent asynchronously
+     *
+     * @param transport The transport to use or null to send requests over HTTP
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Set a recorder for the raw responses from KAMAR, responses are
+     * recorded exactly as they are received while they are parsed
+     *
+     * @param recorder The recorder to use or null to disable recording
+     */
+    public void setRecorder(ResponseRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Set a pool to deduplicate parsed notices with, the notices and values
+     * (teachers, places, bodies...) that were already retrieved on another
+     * day or by another KNI instance using the same pool are shared
+     *
+     * @param noticePool The pool to use or null to disable deduplication
+     */
+    public void setNoticePool(NoticePool noticePool) {
+        this.noticePool = noticePool;
+    }
+
+    /**
+     * Set the timeout for connecting to KAMAR
+     *
+     * @param connectTimeout The timeout or null for no timeout
+     */
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Set the timeout for reading the response from KAMAR, for blocking requests this
+     * is the longest wait for each read and for asynchronous requests the longest
+     * wait for the response headers
+     *
+     * @param readTimeout The timeout or null for no timeout
+     */
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Set the overall timeout of a retrieval covering every attempt, hedged
+     * request and retry backoff. Retrievals that exceed it fail with a
+     * {@link java.net.http.HttpTimeoutException} and their requests are aborted
+     *
+     * @param requestTimeout The timeout or null for no timeout
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Set how requests that fail with an {@link IOException} are retried
+     *
+     * @param retryPolicy The policy to use or null to not retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set when to send a second (hedged) request for a retrieval that is taking
+     * longer than usual, whichever request completes first is used. Hedged
+     * requests are always sent asynchronously (blocking retrievals wait for them)
+     *
+     * @param hedgePolicy The policy to use or null to not hedge
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Set whether to ask KAMAR to compress its responses with gzip or deflate, compressed
+     * responses are decompressed as they are parsed and portals that ignore the
+     * request and send uncompressed responses are still handled. The sizes
+     * before and after decompression are provided by {@link RequestTrace}
+     *
+     * @param isCompression Whether to request compressed responses
+     */
+    public void setCompression(boolean isCompression) {
+        this.isCompression = isCompression;
+    }
+
+    /**
+     * Set whether to parse responses lazily, the response is kept in memory as a single
+     * buffer and the fields of each notice (subject, body, teacher...) are only decoded
+     * from it the first time they are used. This saves creating strings that are never
+     * read, such as bodies when only subjects are listed, but the response is kept for as
+     * long as any of its notices are reachable. Lazily parsed notices aren't deduplicated
+     * with the notice pool
+     *
+     * @param isLazy Whether to parse responses lazily
+     */
+    public void setLazy(boolean isLazy) {
+        this.isLazy = isLazy;
+    }
+
+    /**
+     * Set the limiter of requests to the portal host, a limiter shared by many
+     * instances (see {@link MultiKNI#setHostLimiter(HostLimiter)}) limits their
+     * combined requests. The time requests wait is recorded as {@link RequestTrace.Phase#QUEUE}
+     *
+     * @param hostLimiter The limiter to use or null for no limits
+     */
+    public void setHostLimiter(HostLimiter hostLimiter) {
+        this.hostLimiter = hostLimiter;
+    }
+
+    /**
+     * Set a circuit breaker which fails retrievals fast with a {@link CircuitOpenException}
+     * while the portal keeps failing instead of sending requests to it
+     *
+     * @param circuitBreaker The circuit breaker to use or null to disable it
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Set the executor used for {@link KNI#retrieveAsync(String)} both by the
+     * http client and for parsing responses, by default the common pool is used
+     *
+     * @param executor The executor to use or null to use the default
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Lazily created holder for the http client shared by every KNI instance
+     */
+    private static class SharedHttpClient {
+
+        private static final HttpClient INSTANCE = createHttpClientBuilder().build();
+
+    }
+
+    /**
+     * A http client created for a single KNI instance along with the
+     * settings it was created with, so it can be replaced once they change
+     */
+    private static class InstanceHttpClient {
+
+        private final Proxy proxy;
+        private final Executor executor;
+        private final Duration connectTimeout;
+        private final HttpClient client;
+
+        private InstanceHttpClient(Proxy proxy, Executor executor, Duration connectTimeout, HttpClient client) {
+            this.proxy = proxy;
+            this.executor = executor;
+            this.connectTimeout = connectTimeout;
+            this.client = client;
+        }
+
+    }
+
 }
@@ -0,0 +1,40 @@
+package me.jacobtread.kni;
+
+/**
+ * Signalled by a {@link KNI#publish(String)} publisher when KAMAR responded
+ * with an error instead of notices (the same error {@link Notices#getErrorMessage()}
+ * provides for the other retrieval methods), also kept by a NoticeGateway
+ * as the cause of its last failed poll
+ */
+public class KamarErrorException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String date; // The date the notices were requested for
+    private final String errorMessage; // The error message provided by KAMAR
+
+    /**
+     * @param date         The date the notices were requested for
+     * @param errorMessage The error message provided by KAMAR
+     */
+    public KamarErrorException(String date, String errorMessage) {
+        super("KNI: KAMAR returned an error for " + date + ": " + errorMessage);
+        this.date = date;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @return The raw date string the notices were requested for
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return The error message provided by KAMAR
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+}
@@ -0,0 +1,687 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.xml.sax.SAXException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads notices from a KAMAR response that is kept in memory as a single buffer
+ * (see {@link KNI#setLazy(boolean)}). The response is scanned once to find the
+ * byte offsets of the fields of each notice and the notices created are views
+ * which only decode a field the first time its getter is called
+ * <p>
+ * The scanner checks the response is well-formed and produces the same notices
+ * as {@link NoticeHandler}, responses it can't handle the same way (encodings
+ * other than UTF-8 or a DOCTYPE that could declare entities) aren't read so they
+ * can be parsed normally instead
+ */
+class LazyNoticeReader {
+
+    // The fields of each notice in the offsets table
+    private static final int SUBJECT = 0;
+    private static final int BODY = 1;
+    private static final int TEACHER = 2;
+    private static final int PLACE = 3;
+    private static final int DATE = 4;
+    private static final int TIME = 5;
+    private static final int FIELDS = 6;
+    private static final int STRIDE = FIELDS * 2; // The start and end of each field
+    private static final int ESCAPED = 1 << 31; // Set on the end of fields which can't be decoded directly
+    private static final byte[] GENERAL = bytes("General");
+    private static final byte[] MEETING = bytes("Meeting");
+    private static final byte[] ERROR = bytes("Error");
+    private static final byte[] INDEX = bytes("index");
+    private static final byte[] LEVEL = bytes("Level");
+    private static final byte[][] FIELD_NAMES = {bytes("Subject"), bytes("Body"), bytes("Teacher"),
+            bytes("PlaceMeet"), bytes("DateMeet"), bytes("TimeMeet")};
+
+    private final byte[] buffer; // The whole response
+    private int[] offsets = new int[STRIDE * 16]; // The offsets of the fields of every notice
+    private int rows = 0; // The number of notices in the offsets table
+    private final List<Notice> notices = new ArrayList<>();
+    private String errorMessage; // The error message provided by KAMAR (null if none)
+
+    // The scanner state
+    private int position;
+    private int[] elements = new int[32]; // The start and length of the names of the open elements
+    private int depth = 0; // The number of open elements
+    private boolean isRootClosed = false;
+
+    // The current notice state
+    private boolean inNotice = false;
+    private boolean isMeeting;
+    private int noticeDepth; // The depth of the notice element
+    private int index;
+    private Notice.Level level;
+    private final int[] fields = new int[STRIDE]; // The offsets of the fields of the current notice (-1 if missing)
+    private int field; // The field of the current child element (-1 if it isn't a field)
+    private int fieldStart; // The start of the content of the current child element
+    private int errorStart = -1; // The start of the content of the error element (-1 if not in it)
+
+    private LazyNoticeReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads the notices from a response
+     *
+     * @param buffer The whole response, it is kept by the notices so must not be modified
+     * @return The reader containing the notices or null if the response can't be read lazily
+     * @throws SAXException Thrown if the response is not well-formed XML
+     */
+    static LazyNoticeReader read(byte[] buffer) throws SAXException {
+        LazyNoticeReader reader = new LazyNoticeReader(buffer);
+        return reader.scan() ? reader : null;
+    }
+
+    /**
+     * @return The notices in the order they appeared in the response
+     */
+    List<Notice> getNotices() {
+        return notices;
+    }
+
+    /**
+     * @return The error message provided by KAMAR or null if there was none
+     */
+    String getErrorMessage() {
+        return errorMessage;
+    }
+
+    private boolean scan() throws SAXException {
+        // Skip the UTF-8 byte order mark
+        if (startsWith(position, new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF})) {
+            position = 3;
+        }
+        if (startsWith(position, bytes("<?xml")) && !isUtf8Declaration()) {
+            return false;
+        }
+        while (position < buffer.length) {
+            if (buffer[position] != '<') {
+                scanText();
+            } else if (startsWith(position, bytes("<!--"))) {
+                position = find(position + 4, bytes("-->")) + 3;
+            } else if (startsWith(position, bytes("<![CDATA["))) {
+                if (depth == 0) {
+                    throw error("Content outside of the root element");
+                }
+                position = find(position + 9, bytes("]]>")) + 3;
+            } else if (startsWith(position, bytes("<!"))) {
+                // A DOCTYPE can declare entities this doesn't know about
+                return false;
+            } else if (startsWith(position, bytes("<?"))) {
+                position = find(position + 2, bytes("?>")) + 2;
+            } else if (startsWith(position, bytes("</"))) {
+                scanEndTag();
+            } else {
+                scanStartTag();
+            }
+        }
+        if (depth > 0 || !isRootClosed) {
+            throw error("Unexpected end of response");
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the XML declaration is for UTF-8 (or doesn't specify an encoding)
+     */
+    private boolean isUtf8Declaration() throws SAXException {
+        int end = find(position, bytes("?>"));
+        String declaration = new String(buffer, position, end - position, StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        int encoding = declaration.indexOf("encoding");
+        if (encoding < 0) {
+            return true;
+        }
+        String value = declaration.substring(encoding + 8).replaceAll("[\\s=\"']", " ").trim();
+        return value.startsWith("utf-8 ") || value.equals("utf-8") || value.startsWith("us-ascii");
+    }
+
+    private void scanText() throws SAXException {
+        int start = position;
+        while (position < buffer.length && buffer[position] != '<') {
+            if (buffer[position] == '&') {
+                position = checkReference(position);
+            } else {
+                position++;
+            }
+        }
+        if (depth == 0) {
+            for (int i = start; i < position; i++) {
+                byte b = buffer[i];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    throw error("Content outside of the root element");
+                }
+            }
+        }
+    }
+
+    private void scanStartTag() throws SAXException {
+        if (isRootClosed) {
+            throw error("Content outside of the root element");
+        }
+        int nameStart = position + 1;
+        int nameEnd = scanName(nameStart);
+        int indexStart = -1;
+        int indexEnd = -1;
+        position = nameEnd;
+        boolean isEmpty;
+        // Read the attributes until the end of the tag
+        while (true) {
+            position = skipWhitespace(position);
+            if (position >= buffer.length) {
+                throw error("Unexpected end of response");
+            }
+            byte b = buffer[position];
+            if (b == '>') {
+                isEmpty = false;
+                position++;
+                break;
+            }
+            if (b == '/' && position + 1 < buffer.length && buffer[position + 1] == '>') {
+                isEmpty = true;
+                position += 2;
+                break;
+            }
+            int attributeStart = position;
+            int attributeEnd = scanName(attributeStart);
+            position = skipWhitespace(attributeEnd);
+            if (position >= buffer.length || buffer[position] != '=') {
+                throw error("Expected = after attribute name");
+            }
+            position = skipWhitespace(position + 1);
+            if (position >= buffer.length || (buffer[position] != '"' && buffer[position] != '\'')) {
+                throw error("Expected quoted attribute value");
+            }
+            byte quote = buffer[position];
+            int valueStart = position + 1;
+            int valueEnd = valueStart;
+            while (valueEnd < buffer.length && buffer[valueEnd] != quote) {
+                if (buffer[valueEnd] == '<') {
+                    throw error("Invalid < in attribute value");
+                }
+                if (buffer[valueEnd] == '&') {
+                    valueEnd = checkReference(valueEnd);
+                } else {
+                    valueEnd++;
+                }
+            }
+            if (valueEnd >= buffer.length) {
+                throw error("Unexpected end of response");
+            }
+            position = valueEnd + 1;
+            if (regionEquals(attributeStart, attributeEnd, INDEX)) {
+                indexStart = valueStart;
+                indexEnd = valueEnd;
+            }
+        }
+        pushElement(nameStart, nameEnd);
+        startElement(nameStart, nameEnd, indexStart, indexEnd);
+        if (isEmpty) {
+            popElement(nameStart, nameEnd);
+            endElement(nameStart, nameEnd, position);
+        }
+    }
+
+    private void scanEndTag() throws SAXException {
+        int tagStart = position;
+        int nameStart = position + 2;
+        int nameEnd = scanName(nameStart);
+        position = skipWhitespace(nameEnd);
+        if (position >= buffer.length || buffer[position] != '>') {
+            throw error("Expected > at the end of the end tag");
+        }
+        position++;
+        popElement(nameStart, nameEnd);
+        endElement(nameStart, nameEnd, tagStart);
+    }
+
+    /**
+     * Updates the notice state for a start tag, the same as {@link NoticeHandler#startElement}
+     */
+    private void startElement(int nameStart, int nameEnd, int indexStart, int indexEnd) throws SAXException {
+        if (inNotice) {
+            // Only the content of direct children of the notice are fields
+            if (depth == noticeDepth + 1) {
+                field = -2;
+                if (!regionEquals(nameStart, nameEnd, LEVEL)) {
+                    field = -1;
+                    for (int i = 0; i < FIELDS; i++) {
+                        if (regionEquals(nameStart, nameEnd, FIELD_NAMES[i])) {
+                            field = i;
+                            break;
+                        }
+                    }
+                }
+                fieldStart = position;
+            }
+        } else if (regionEquals(nameStart, nameEnd, GENERAL) || regionEquals(nameStart, nameEnd, MEETING)) {
+            inNotice = true;
+            isMeeting = regionEquals(nameStart, nameEnd, MEETING);
+            noticeDepth = depth;
+            index = -1;
+            if (indexStart >= 0) {
+                try {
+                    index = Integer.parseInt(decode(indexStart, indexEnd, isEscaped(indexStart, indexEnd)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            level = null;
+            Arrays.fill(fields, -1);
+        } else if (errorStart < 0 && errorMessage == null && regionEquals(nameStart, nameEnd, ERROR)) {
+            errorStart = position;
+        }
+    }
+
+    /**
+     * Updates the notice state for an end tag, the same as {@link NoticeHandler#endElement}
+     */
+    private void endElement(int nameStart, int nameEnd, int contentEnd) {
+        if (inNotice) {
+            if (depth == noticeDepth - 1) {
+                // The end of the notice element itself
+                inNotice = false;
+                addNotice();
+            } else if (depth == noticeDepth) {
+                boolean isEscaped = isEscaped(fieldStart, contentEnd);
+                if (field == -2) {
+                    level = Notice.Level.fromString(decode(fieldStart, contentEnd, isEscaped));
+                } else if (field >= 0) {
+                    fields[field * 2] = fieldStart;
+                    fields[field * 2 + 1] = contentEnd | (isEscaped ? ESCAPED : 0);
+                }
+            }
+        } else if (errorStart >= 0 && regionEquals(nameStart, nameEnd, ERROR)) {
+            errorMessage = decode(errorStart, contentEnd, isEscaped(errorStart, contentEnd));
+            errorStart = -1;
+        }
+    }
+
+    /**
+     * Adds the current notice ignoring it if it is missing any fields
+     */
+    private void addNotice() {
+        int required = isMeeting ? FIELDS : PLACE;
+        if (level == null) {
+            return;
+        }
+        for (int i = 0; i < required; i++) {
+            if (fields[i * 2] < 0) {
+                return;
+            }
+        }
+        if (offsets.length < (rows + 1) * STRIDE) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(fields, 0, offsets, rows * STRIDE, STRIDE);
+        int row = rows++;
+        notices.add(isMeeting ? new LazyMeetingNotice(row, index, level) : new LazyNotice(row, index, level));
+    }
+
+    private void pushElement(int nameStart, int nameEnd) {
+        if (elements.length < (depth + 1) * 2) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        elements[depth * 2] = nameStart;
+        elements[depth * 2 + 1] = nameEnd - nameStart;
+        depth++;
+    }
+
+    private void popElement(int nameStart, int nameEnd) throws SAXException {
+        if (depth == 0) {
+            throw error("Unexpected end tag");
+        }
+        depth--;
+        int openStart = elements[depth * 2];
+        int openLength = elements[depth * 2 + 1];
+        if (openLength != nameEnd - nameStart
+                || !Arrays.equals(buffer, openStart, openStart + openLength, buffer, nameStart, nameEnd)) {
+            throw error("End tag does not match the start tag");
+        }
+        if (depth == 0) {
+            isRootClosed = true;
+        }
+    }
+
+    private int scanName(int start) throws SAXException {
+        int end = start;
+        while (end < buffer.length) {
+            byte b = buffer[end];
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/' || b == '=' || b == '<') {
+                break;
+            }
+            end++;
+        }
+        if (end == start) {
+            throw error("Expected a name");
+        }
+        return end;
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < buffer.length) {
+            byte b = buffer[position];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Checks an entity or character reference is one that can be decoded
+     *
+     * @param start The position of the &amp;
+     * @return The position after the reference
+     * @throws SAXException Thrown if the reference is invalid
+     */
+    private int checkReference(int start) throws SAXException {
+        int end = start + 1;
+        while (end < buffer.length && buffer[end] != ';' && end - start < 12) {
+            end++;
+        }
+        if (end >= buffer.length || buffer[end] != ';' || reference(buffer, start + 1, end) < 0) {
+            throw error("Invalid entity reference");
+        }
+        return end + 1;
+    }
+
+    /**
+     * @return Whether a region contains anything other than plain text
+     */
+    private boolean isEscaped(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '&' || b == '<' || b == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(int from, byte[] value) throws SAXException {
+        for (int i = from; i <= buffer.length - value.length; i++) {
+            if (startsWith(i, value)) {
+                return i;
+            }
+        }
+        throw error("Unexpected end of response");
+    }
+
+    private boolean startsWith(int position, byte[] value) {
+        return position + value.length <= buffer.length
+                && Arrays.equals(buffer, position, position + value.length, value, 0, value.length);
+    }
+
+    private boolean regionEquals(int start, int end, byte[] value) {
+        return Arrays.equals(buffer, start, end, value, 0, value.length);
+    }
+
+    private SAXException error(String message) {
+        return new SAXException("KNI: " + message + " at byte " + position);
+    }
+
+    /**
+     * @param row   The row of a notice
+     * @param field The field to decode
+     * @return The decoded value of the field
+     */
+    private String decode(int row, int field) {
+        int offset = row * STRIDE + field * 2;
+        int end = offsets[offset + 1];
+        return decode(offsets[offset], end & ~ESCAPED, (end & ESCAPED) != 0);
+    }
+
+    /**
+     * Decodes the text content of a region, the same as the text a SAX parser
+     * provides with references replaced, CDATA sections included, line endings
+     * normalized and the tags of nested elements and comments removed
+     *
+     * @param start     The start of the region
+     * @param end       The end of the region
+     * @param isEscaped Whether the region contains anything other than plain text
+     * @return The decoded text
+     */
+    private String decode(int start, int end, boolean isEscaped) {
+        if (!isEscaped) {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        int runStart = start;
+        int i = start;
+        while (i < end) {
+            byte b = buffer[i];
+            if (b != '&' && b != '<' && b != '\r') {
+                i++;
+                continue;
+            }
+            builder.append(new String(buffer, runStart, i - runStart, StandardCharsets.UTF_8));
+            if (b == '&') {
+                int referenceEnd = i + 1;
+                while (buffer[referenceEnd] != ';') {
+                    referenceEnd++;
+                }
+                builder.appendCodePoint(reference(buffer, i + 1, referenceEnd));
+                i = referenceEnd + 1;
+            } else if (b == '\r') {
+                builder.append('\n');
+                i += i + 1 < end && buffer[i + 1] == '\n' ? 2 : 1;
+            } else if (startsWith(i, bytes("<![CDATA["))) {
+                int cdataEnd = indexOf(i + 9, end, bytes("]]>"));
+                builder.append(new String(buffer, i + 9, cdataEnd - i - 9, StandardCharsets.UTF_8)
+                        .replace("\r\n", "\n").replace('\r', '\n'));
+                i = cdataEnd + 3;
+            } else if (startsWith(i, bytes("<!--"))) {
+                i = indexOf(i + 4, end, bytes("-->")) + 3;
+            } else if (startsWith(i, bytes("<?"))) {
+                i = indexOf(i + 2, end, bytes("?>")) + 2;
+            } else {
+                // The tag of a nested element, only its text is kept
+                byte quote = 0;
+                while (quote != 0 || buffer[i] != '>') {
+                    if (quote == 0 && (buffer[i] == '"' || buffer[i] == '\'')) {
+                        quote = buffer[i];
+                    } else if (buffer[i] == quote) {
+                        quote = 0;
+                    }
+                    i++;
+                }
+                i++;
+            }
+            runStart = i;
+        }
+        builder.append(new String(buffer, runStart, end - runStart, StandardCharsets.UTF_8));
+        return builder.toString();
+    }
+
+    private int indexOf(int from, int end, byte[] value) {
+        for (int i = from; i <= end - value.length; i++) {
+            if (startsWith(i, value)) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @param buffer The buffer containing the reference
+     * @param start  The start of the reference name (after the &amp;)
+     * @param end    The end of the reference name (the ;)
+     * @return The code point the reference is for or -1 if it is invalid
+     */
+    private static int reference(byte[] buffer, int start, int end) {
+        String name = new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+        switch (name) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+        }
+        if (!name.startsWith("#") || name.length() < 2) {
+            return -1;
+        }
+        try {
+            int codePoint = name.charAt(1) == 'x'
+                    ? Integer.parseInt(name.substring(2), 16)
+                    : Integer.parseInt(name.substring(1));
+            return Character.isValidCodePoint(codePoint) && codePoint != 0 ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A general notice which decodes its fields from the response when they are first used
+     */
+    private class LazyNotice extends Notice {
+
+        private final int row;
+        private final int index;
+        private final Level level;
+        private String subject;
+        private String body;
+        private String teacher;
+
+        private LazyNotice(int row, int index, Level level) {
+            super(0, null, null, null, null);
+            this.row = row;
+            this.index = index;
+            this.level = level;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Level getLevel() {
+            return level;
+        }
+
+        @Override
+        public String getSubject() {
+            if (subject == null) {
+                subject = decode(row, SUBJECT);
+            }
+            return subject;
+        }
+
+        @Override
+        public String getBody() {
+            if (body == null) {
+                body = decode(row, BODY);
+            }
+            return body;
+        }
+
+        @Override
+        public String getTeacher() {
+            if (teacher == null) {
+                teacher = decode(row, TEACHER);
+            }
+            return teacher;
+        }
+
+    }
+
+    /**
+     * A meeting notice which decodes its fields from the response when they are first used
+     */
+    private class LazyMeetingNotice extends MeetingNotice {
+
+        private final int row;
+        private final int index;
+        private final Level level;
+        private String subject;
+        private String body;
+        private String teacher;
+        private String place;
+        private String date;
+        private String time;
+
+        private LazyMeetingNotice(int row, int index, Level level) {
+            super(0, null, null, null, null, null, null, null);
+            this.row = row;
+            this.index = index;
+            this.level = level;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Level getLevel() {
+            return level;
+        }
+
+        @Override
+        public String getSubject() {
+            if (subject == null) {
+                subject = decode(row, SUBJECT);
+            }
+            return subject;
+        }
+
+        @Override
+        public String getBody() {
+            if (body == null) {
+                body = decode(row, BODY);
+            }
+            return body;
+        }
+
+        @Override
+        public String getTeacher() {
+            if (teacher == null) {
+                teacher = decode(row, TEACHER);
+            }
+            return teacher;
+        }
+
+        @Override
+        public String getPlace() {
+            if (place == null) {
+                place = decode(row, PLACE);
+            }
+            return place;
+        }
+
+        @Override
+        public String getDate() {
+            if (date == null) {
+                date = decode(row, DATE);
+            }
+            return date;
+        }
+
+        @Override
+        public String getTime() {
+            if (time == null) {
+                time = decode(row, TIME);
+            }
+            return time;
+        }
+
+    }
+
+}
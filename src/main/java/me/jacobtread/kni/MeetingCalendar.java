@@ -0,0 +1,309 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index of the meetings of many {@link Notices} snapshots across many
+ * portals ordered by when they occur, so the meetings in a time range or at a
+ * place can be found without scanning or parsing every meeting
+ * <p>
+ * Each snapshot is identified by its portal and date, adding a newer snapshot
+ * for the same portal and date only updates the meetings that changed. A meeting
+ * retrieved for more than one date is only returned once by queries
+ */
+public class MeetingCalendar {
+
+    // Meetings are ordered by when they start and then by the order they were added
+    private static final Comparator<ScheduledMeeting> ORDER = Comparator.comparing(ScheduledMeeting::getStart)
+            .thenComparingLong(ScheduledMeeting::getId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Clock clock; // The clock for upcoming meetings
+    private final NavigableSet<ScheduledMeeting> byStart = new TreeSet<>(ORDER); // Every meeting by start
+    private final Map<String, NavigableSet<ScheduledMeeting>> byPlace = new HashMap<>(); // The meetings at each place
+    private final Map<String, List<ScheduledMeeting>> snapshots = new HashMap<>(); // The meetings of each portal and date
+    private long nextId = 0; // The id given to the next added meeting
+
+    public MeetingCalendar() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock The clock used to find upcoming meetings
+     */
+    public MeetingCalendar(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Adds the meetings of a snapshot replacing any meetings previously added for the same
+     * portal and date. Meetings without a year are given the year closest to the date of the
+     * snapshot and meetings with a date that can't be parsed aren't added
+     *
+     * @param portal  The portal the notices were retrieved from
+     * @param notices The notices to add the meetings of
+     */
+    public void add(String portal, Notices notices) {
+        String date = notices.getDate();
+        LocalDate requestDate = notices.getLocalDate();
+        List<MeetingNotice> meetings = notices.getNotices() == null ? List.of() : notices.getMeetings();
+        lock.writeLock().lock();
+        try {
+            List<ScheduledMeeting> previous = snapshots.getOrDefault(createKey(portal, date), List.of());
+            // The previous meetings (a snapshot can contain equal meetings more than once)
+            Map<MeetingNotice, List<ScheduledMeeting>> unchanged = new HashMap<>();
+            for (ScheduledMeeting scheduled : previous) {
+                unchanged.computeIfAbsent(scheduled.getMeeting(), key -> new ArrayList<>(1)).add(scheduled);
+            }
+            List<ScheduledMeeting> current = new ArrayList<>(meetings.size());
+            for (MeetingNotice meeting : meetings) {
+                List<ScheduledMeeting> matching = unchanged.get(meeting);
+                ScheduledMeeting scheduled;
+                if (matching != null && !matching.isEmpty()) {
+                    scheduled = matching.remove(matching.size() - 1);
+                } else {
+                    LocalDate meetingDate = meeting.getLocalDate(requestDate);
+                    if (meetingDate == null) {
+                        continue;
+                    }
+                    LocalTime time = meeting.getLocalTime();
+                    scheduled = new ScheduledMeeting(nextId++, portal, date, meeting,
+                            time != null ? meetingDate.atTime(time) : meetingDate.atStartOfDay(), time == null);
+                    addEntries(scheduled);
+                }
+                current.add(scheduled);
+            }
+            // Anything left was removed from the snapshot
+            for (List<ScheduledMeeting> removed : unchanged.values()) {
+                for (ScheduledMeeting scheduled : removed) {
+                    removeEntries(scheduled);
+                }
+            }
+            if (current.isEmpty()) {
+                snapshots.remove(createKey(portal, date));
+            } else {
+                snapshots.put(createKey(portal, date), current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the meetings of a snapshot
+     *
+     * @param portal The portal the notices were retrieved from
+     * @param date   The raw date string the notices were retrieved for
+     */
+    public void remove(String portal, String date) {
+        lock.writeLock().lock();
+        try {
+            List<ScheduledMeeting> previous = snapshots.remove(createKey(portal, date));
+            if (previous != null) {
+                for (ScheduledMeeting scheduled : previous) {
+                    removeEntries(scheduled);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the meetings that ended before a time, adding a snapshot
+     * containing them again will add them back
+     *
+     * @param time The time to remove the meetings before
+     * @return The number of meetings removed
+     */
+    public int removeBefore(LocalDateTime time) {
+        lock.writeLock().lock();
+        try {
+            List<ScheduledMeeting> removed = new ArrayList<>();
+            for (ScheduledMeeting scheduled : byStart.headSet(createProbe(time), false)) {
+                if (!scheduled.getEnd().isAfter(time)) {
+                    removed.add(scheduled);
+                }
+            }
+            for (ScheduledMeeting scheduled : removed) {
+                removeEntries(scheduled);
+                String key = createKey(scheduled.getPortal(), scheduled.getDate());
+                List<ScheduledMeeting> snapshot = snapshots.get(key);
+                snapshot.remove(scheduled);
+                if (snapshot.isEmpty()) {
+                    snapshots.remove(key);
+                }
+            }
+            return removed.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of meetings in the calendar (including the same meeting retrieved for different dates)
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byStart.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the meetings that occur within a time range, meetings
+     * without a clock time occur over their whole day
+     *
+     * @param from The start of the range (inclusive)
+     * @param to   The end of the range (exclusive)
+     * @return The meetings in the order they start
+     */
+    public List<ScheduledMeeting> between(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            return between(byStart, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the meetings that occur from now until the end of a window, such
+     * as the meetings in the next 2 hours or the next 7 days
+     *
+     * @param window The length of the window
+     * @return The meetings in the order they start
+     */
+    public List<ScheduledMeeting> upcoming(Duration window) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        return between(now, now.plus(window));
+    }
+
+    /**
+     * Finds the meetings at a place, places are matched ignoring case
+     * and surrounding whitespace
+     *
+     * @param place The place of the meetings
+     * @return The meetings in the order they start
+     */
+    public List<ScheduledMeeting> atPlace(String place) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<ScheduledMeeting> meetings = byPlace.get(normalizePlace(place));
+            return meetings == null ? List.of() : distinct(meetings);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the meetings at a place that occur within a time range
+     *
+     * @param place The place of the meetings
+     * @param from  The start of the range (inclusive)
+     * @param to    The end of the range (exclusive)
+     * @return The meetings in the order they start
+     */
+    public List<ScheduledMeeting> atPlace(String place, LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<ScheduledMeeting> meetings = byPlace.get(normalizePlace(place));
+            return meetings == null ? List.of() : between(meetings, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param meetings The meetings ordered by start
+     * @param from     The start of the range (inclusive)
+     * @param to       The end of the range (exclusive)
+     * @return The distinct meetings that overlap the range
+     */
+    private static List<ScheduledMeeting> between(NavigableSet<ScheduledMeeting> meetings, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        // Meetings last at most a day so only ones starting in the day before can still be going
+        Collection<ScheduledMeeting> candidates = meetings.subSet(createProbe(from.minusDays(1)), false, createProbe(to), false);
+        List<ScheduledMeeting> overlapping = new ArrayList<>();
+        for (ScheduledMeeting scheduled : candidates) {
+            if (!scheduled.getStart().isBefore(from) || scheduled.getEnd().isAfter(from)) {
+                overlapping.add(scheduled);
+            }
+        }
+        return distinct(overlapping);
+    }
+
+    /**
+     * @param meetings The meetings ordered by start
+     * @return The meetings with repeats of the same meeting from the same portal removed
+     */
+    private static List<ScheduledMeeting> distinct(Collection<ScheduledMeeting> meetings) {
+        List<ScheduledMeeting> distinct = new ArrayList<>(meetings.size());
+        Set<List<Object>> seen = new HashSet<>();
+        for (ScheduledMeeting scheduled : meetings) {
+            if (seen.add(Arrays.asList(scheduled.getPortal(), scheduled.getMeeting(), scheduled.getStart()))) {
+                distinct.add(scheduled);
+            }
+        }
+        return distinct;
+    }
+
+    private void addEntries(ScheduledMeeting scheduled) {
+        byStart.add(scheduled);
+        byPlace.computeIfAbsent(normalizePlace(scheduled.getMeeting().getPlace()), key -> new TreeSet<>(ORDER))
+                .add(scheduled);
+    }
+
+    private void removeEntries(ScheduledMeeting scheduled) {
+        byStart.remove(scheduled);
+        String place = normalizePlace(scheduled.getMeeting().getPlace());
+        NavigableSet<ScheduledMeeting> meetings = byPlace.get(place);
+        if (meetings != null) {
+            meetings.remove(scheduled);
+            if (meetings.isEmpty()) {
+                byPlace.remove(place);
+            }
+        }
+    }
+
+    /**
+     * @param time The time to probe
+     * @return A meeting ordered before every meeting starting at the time
+     */
+    private static ScheduledMeeting createProbe(LocalDateTime time) {
+        return new ScheduledMeeting(Long.MIN_VALUE, null, null, null, time, false);
+    }
+
+    private static String normalizePlace(String place) {
+        return place == null ? "" : place.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String createKey(String portal, String date) {
+        return portal + ' ' + date;
+    }
+
+}
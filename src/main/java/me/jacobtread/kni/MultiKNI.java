@@ -0,0 +1,232 @@
+package me.jacobtread.kni;
+
+import java.net.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Retrieves the notices of many KAMAR portals at once with a bounded
+ * number of requests in flight at any time
+ * <p>
+ * Any {@link Executor} can be supplied to run the requests on, on newer
+ * runtimes {@code Executors.newVirtualThreadPerTaskExecutor()} works well
+ * as each request spends most of its time waiting on the network
+ */
+public class MultiKNI {
+
+    private final Map<String, KNI> portals = new LinkedHashMap<>(); // The KNI instance for each host
+    private final Semaphore permits; // Limits the number of requests in flight
+    private final Executor executor; // The executor the requests are run on
+
+    /**
+     * Creates a multi portal client which runs its requests on
+     * its own daemon threads
+     *
+     * @param hosts          The hosts of the KAMAR portals (see {@link KNI#KNI(String)})
+     * @param maxConcurrency The maximum number of requests in flight at any time
+     */
+    public MultiKNI(Collection<String> hosts, int maxConcurrency) {
+        this(hosts, maxConcurrency, createDefaultExecutor());
+    }
+
+    /**
+     * @param hosts          The hosts of the KAMAR portals (see {@link KNI#KNI(String)})
+     * @param maxConcurrency The maximum number of requests in flight at any time
+     * @param executor       The executor to run the requests on
+     */
+    public MultiKNI(Collection<String> hosts, int maxConcurrency, Executor executor) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1");
+        }
+        for (String host : hosts) {
+            portals.put(host, new KNI(host));
+        }
+        this.permits = new Semaphore(maxConcurrency);
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the executor used when none is provided, the threads are
+     * daemon threads, so they will never keep the JVM alive, and are
+     * discarded once idle
+     *
+     * @return The created executor
+     */
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "KNI-MultiKNI");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Set a proxy for the connections of every portal to use
+     *
+     * @param proxy The proxy to use
+     */
+    public void setProxy(Proxy proxy) {
+        for (KNI kni : portals.values()) {
+            kni.setProxy(proxy);
+        }
+    }
+
+    /**
+     * Set a cache for the retrieved notices of every portal
+     *
+     * @param cache The cache to use or null to disable caching
+     */
+    public void setCache(NoticesCache cache) {
+        for (KNI kni : portals.values()) {
+            kni.setCache(cache);
+        }
+    }
+
+    /**
+     * Set a pool to deduplicate the notices of every portal with
+     *
+     * @param noticePool The pool to use or null to disable deduplication
+     */
+    public void setNoticePool(NoticePool noticePool) {
+        for (KNI kni : portals.values()) {
+            kni.setNoticePool(noticePool);
+        }
+    }
+
+    /**
+     * Set how failed requests to every portal are retried
+     *
+     * @param retryPolicy The policy to use or null to not retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        for (KNI kni : portals.values()) {
+            kni.setRetryPolicy(retryPolicy);
+        }
+    }
+
+    /**
+     * Set a circuit breaker for every portal, the circuit of each
+     * portal is tracked separately so one failing portal doesn't
+     * stop requests to the others
+     *
+     * @param circuitBreaker The circuit breaker to use or null to disable it
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        for (KNI kni : portals.values()) {
+            kni.setCircuitBreaker(circuitBreaker);
+        }
+    }
+
+    /**
+     * Set the limiter of the requests to the portal hosts, the limiter can
+     * also be shared with other instances sending requests to the same hosts
+     *
+     * @param hostLimiter The limiter to use or null for no limits
+     */
+    public void setHostLimiter(HostLimiter hostLimiter) {
+        for (KNI kni : portals.values()) {
+            kni.setHostLimiter(hostLimiter);
+        }
+    }
+
+    /**
+     * Set a listener to be given the timings and outcome of the requests to
+     * every portal, {@link RequestTrace#getUrl()} identifies the portal
+     *
+     * @param requestListener The listener to use or null to disable it
+     */
+    public void setRequestListener(RequestListener requestListener) {
+        for (KNI kni : portals.values()) {
+            kni.setRequestListener(requestListener);
+        }
+    }
+
+    /**
+     * Retrieve the notices from every portal using the current date
+     *
+     * @return The result for each portal in the order the hosts were provided
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the results
+     */
+    public List<PortalResult> retrieve() throws InterruptedException {
+        return retrieve(LocalDate.now());
+    }
+
+    /**
+     * Retrieve the notices from every portal using a {@link LocalDate} object
+     *
+     * @param date The date of which to fetch notices for
+     * @return The result for each portal in the order the hosts were provided
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the results
+     */
+    public List<PortalResult> retrieve(LocalDate date) throws InterruptedException {
+        return retrieve(KNI.DATE_FORMATTER.format(date));
+    }
+
+    /**
+     * Retrieve the notices from every portal using a date string
+     * MUST FOLLOW THE FORMAT USED BY {@link KNI#DATE_FORMATTER}
+     * <p>
+     * Failures are never thrown, they are instead stored in the
+     * {@link PortalResult} of the portal that failed
+     *
+     * @param date The date to retrieve notices for
+     * @return The result for each portal in the order the hosts were provided
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the results
+     */
+    public List<PortalResult> retrieve(String date) throws InterruptedException {
+        PortalResult[] results = new PortalResult[portals.size()];
+        CountDownLatch remaining = new CountDownLatch(results.length);
+        int i = 0;
+        for (Map.Entry<String, KNI> portal : portals.entrySet()) {
+            int resultIndex = i++;
+            String host = portal.getKey();
+            KNI kni = portal.getValue();
+            // Wait for a free slot before handing the request to the executor
+            permits.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        results[resultIndex] = retrieve(host, kni, date);
+                    } finally {
+                        permits.release();
+                        remaining.countDown();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The executor rejected the request
+                permits.release();
+                results[resultIndex] = new PortalResult(host, null, e);
+                remaining.countDown();
+            }
+        }
+        remaining.await();
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Retrieves the notices of a single portal capturing any failure
+     *
+     * @param host The host of the portal
+     * @param kni  The KNI instance for the portal
+     * @param date The date to retrieve notices for
+     * @return The result of the retrieval
+     */
+    private static PortalResult retrieve(String host, KNI kni, String date) {
+        try {
+            return new PortalResult(host, kni.retrieve(date), null);
+        } catch (Exception e) {
+            return new PortalResult(host, null, e);
+        }
+    }
+
+}
@@ -0,0 +1,624 @@
+package me.jacobtread.kni;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only archive of notices snapshots stored on disk, one snapshot is
+ * stored for each portal and date (storing a newer snapshot replaces the older)
+ * <p>
+ * Snapshots are appended to a log file and located through a memory-mapped hash
+ * index, so opening the archive only maps the index and a lookup reads a single
+ * record. Replaced snapshots stay in the log until {@link NoticeArchive#compact()}
+ * is called. If the index is missing or does not match the log (e.g. after a crash)
+ * it is rebuilt from the record headers of the log when the archive is opened
+ * <p>
+ * An archive directory must only be opened by one archive at a time
+ */
+public class NoticeArchive implements Closeable {
+
+    private static final String LOG_FILE = "notices.log"; // The name of the log file
+    private static final String INDEX_FILE = "notices.idx"; // The name of the index file
+    private static final int INDEX_MAGIC = 0x4B4E4949; // The index file magic number "KNII"
+    private static final int INDEX_VERSION = 2; // The version of the index and record format
+    private static final int HEADER_SIZE = 32; // magic(4) version(4) capacity(4) size(4) logLength(8) reserved(8)
+    private static final int SLOT_SIZE = 24; // keyHash(8) offset(8) storedAt(8)
+    private static final int INITIAL_CAPACITY = 1024; // The initial number of index slots (must be a power of two)
+
+    private final Path logPath;
+    private final Path indexPath;
+    private FileChannel log; // The append-only log of records
+    private MappedByteBuffer index; // The memory-mapped hash index
+    private int capacity; // The number of slots in the index
+    private int size; // The number of used slots in the index
+
+    /**
+     * Opens the archive stored in a directory, creating it if it doesn't exist
+     *
+     * @param directory The directory the archive files are stored in
+     * @throws IOException Thrown if the archive files could not be opened or created
+     */
+    public NoticeArchive(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.logPath = directory.resolve(LOG_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!openIndex()) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Gets the latest snapshot stored for a portal and date
+     *
+     * @param portal The notice url of the portal
+     * @param date   The requested date string
+     * @return The stored notices or null if there are none
+     * @throws IOException Thrown if the snapshot could not be read
+     */
+    public Notices get(String portal, String date) throws IOException {
+        return get(portal, date, null);
+    }
+
+    /**
+     * Gets the latest snapshot stored for a portal and date if it is fresh enough
+     *
+     * @param portal The notice url of the portal
+     * @param date   The requested date string
+     * @param maxAge The maximum age of the snapshot (null for any age)
+     * @return The stored notices or null if there are none or they are older than maxAge
+     * @throws IOException Thrown if the snapshot could not be read
+     */
+    public synchronized Notices get(String portal, String date, Duration maxAge) throws IOException {
+        int slot = findSlot(portal, date, hash(portal, date));
+        if (slot < 0 || slotHash(slot) == 0) {
+            return null;
+        }
+        if (maxAge != null && System.currentTimeMillis() - slotStoredAt(slot) > maxAge.toMillis()) {
+            return null;
+        }
+        return readNotices(slotOffset(slot));
+    }
+
+    /**
+     * Gets when the latest snapshot for a portal and date was stored
+     * without reading the snapshot itself
+     *
+     * @param portal The notice url of the portal
+     * @param date   The requested date string
+     * @return The time in epoch milliseconds or -1 if there is no snapshot
+     * @throws IOException Thrown if the index could not be read
+     */
+    public synchronized long getStoredAt(String portal, String date) throws IOException {
+        int slot = findSlot(portal, date, hash(portal, date));
+        if (slot < 0 || slotHash(slot) == 0) {
+            return -1;
+        }
+        return slotStoredAt(slot);
+    }
+
+    /**
+     * Appends a snapshot for a portal and date replacing any previous
+     * snapshot, responses containing an error message from KAMAR are not stored
+     *
+     * @param portal  The notice url of the portal
+     * @param date    The requested date string
+     * @param notices The notices to store
+     * @throws IOException Thrown if the snapshot could not be written
+     */
+    public synchronized void put(String portal, String date, Notices notices) throws IOException {
+        if (notices.getErrorMessage() != null) {
+            return;
+        }
+        long storedAt = System.currentTimeMillis();
+        long offset = log.size();
+        ByteBuffer record = createRecord(storedAt, portal, date, notices);
+        try {
+            while (record.hasRemaining()) {
+                log.write(record, offset + record.position());
+            }
+        } catch (IOException e) {
+            // Remove the partial record so the next record isn't appended after it
+            try {
+                log.truncate(offset);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        long keyHash = hash(portal, date);
+        int slot = findSlot(portal, date, keyHash);
+        if (slot >= 0 && slotHash(slot) != 0) {
+            // Replace the previous snapshot
+            writeSlot(index, slot, keyHash, offset, storedAt);
+        } else {
+            if ((size + 1) * 2 > capacity) {
+                resize(capacity * 2);
+                slot = findSlot(portal, date, keyHash);
+            }
+            writeSlot(index, slot, keyHash, offset, storedAt);
+            size++;
+        }
+        writeHeader(index, capacity, size, log.size());
+    }
+
+    /**
+     * @return The number of portal and date snapshots stored
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Rewrites the log keeping only the latest snapshot of each portal and date
+     *
+     * @throws IOException Thrown if the archive could not be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        // Collect the live records in log order
+        List<long[]> live = new ArrayList<>(size);
+        for (int slot = 0; slot < capacity; slot++) {
+            long keyHash = slotHash(slot);
+            if (keyHash != 0) {
+                live.add(new long[]{keyHash, slotOffset(slot), slotStoredAt(slot)});
+            }
+        }
+        live.sort(Comparator.comparingLong(entry -> entry[1]));
+        Path compactPath = logPath.resolveSibling(LOG_FILE + ".compact");
+        try {
+            writeCompacted(compactPath, live);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(compactPath, e);
+            throw e;
+        }
+        log.close();
+        try {
+            // Once the log is replaced the old index no longer matches it, so a crash
+            // before the new index is written results in the index being rebuilt
+            Files.move(compactPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // The old log and index are still valid so the archive carries on using them
+            deleteQuietly(compactPath, e);
+            throw e;
+        } finally {
+            log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        createIndex(capacity, live);
+    }
+
+    /**
+     * Copies the live records to a new log file
+     *
+     * @param compactPath The path of the new log file
+     * @param live        The live entries as {keyHash, offset, storedAt} in log order (the offsets are updated)
+     * @throws IOException Thrown if the records could not be copied
+     */
+    private void writeCompacted(Path compactPath, List<long[]> live) throws IOException {
+        long logSize = log.size();
+        try (FileChannel compacted = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long[] entry : live) {
+                long offset = entry[1];
+                long recordLength = Integer.BYTES + readLength(offset, logSize);
+                // The new offset of the record
+                entry[1] = compacted.position();
+                long transferred = 0;
+                while (transferred < recordLength) {
+                    transferred += log.transferTo(offset + transferred, recordLength - transferred, compacted);
+                }
+            }
+            compacted.force(true);
+        }
+    }
+
+    /**
+     * Deletes a file adding any failure to the exception being thrown
+     *
+     * @param path      The file to delete
+     * @param exception The exception being thrown
+     */
+    private static void deleteQuietly(Path path, Exception exception) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            exception.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.force();
+        log.force(true);
+        log.close();
+    }
+
+    /**
+     * Maps the existing index file if it is valid and matches the log
+     *
+     * @return Whether or not the index was opened
+     * @throws IOException Thrown if the index file could not be read
+     */
+    private boolean openIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            int indexCapacity = mapped.getInt(8);
+            if (mapped.getInt(0) != INDEX_MAGIC || mapped.getInt(4) != INDEX_VERSION
+                    || Integer.bitCount(indexCapacity) != 1
+                    || fileSize != HEADER_SIZE + (long) indexCapacity * SLOT_SIZE
+                    || mapped.getLong(16) != log.size()) {
+                return false;
+            }
+            this.index = mapped;
+            this.capacity = indexCapacity;
+            this.size = mapped.getInt(12);
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds the index by scanning the record headers of the log, a
+     * partially written record at the end of the log is truncated. The
+     * scan stops at a corrupt record without truncating the records after it
+     *
+     * @throws IOException Thrown if the log could not be read or the index written
+     */
+    private void rebuildIndex() throws IOException {
+        // Only the latest record of each key is kept
+        Map<String, long[]> latest = new LinkedHashMap<>();
+        long logSize = log.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+        while (offset + header.capacity() <= logSize) {
+            header.clear();
+            readFully(header, offset);
+            long recordEnd = offset + Integer.BYTES + header.getInt(0);
+            if (recordEnd > logSize) {
+                if (isIncomplete(offset, recordEnd, logSize)) {
+                    // Drop the incomplete record left by a crash
+                    log.truncate(offset);
+                }
+                break;
+            }
+            String portal;
+            String date;
+            long position = offset + header.capacity();
+            try {
+                if (recordEnd < position) {
+                    throw new IOException("KNI: Corrupt notice archive record");
+                }
+                portal = readString(position, recordEnd);
+                position += Integer.BYTES + utf8Length(portal);
+                date = readString(position, recordEnd);
+                position += Integer.BYTES + utf8Length(date);
+            } catch (IOException e) {
+                // The records after a corrupt record can't be found, they are kept in the log
+                // rather than truncated but only the records before it are indexed
+                break;
+            }
+            long storedAt = header.getLong(Integer.BYTES);
+            // Records from before the binary codec was used are left out so they are fetched again
+            if (isEncoded(position, recordEnd)) {
+                latest.put(portal + '\0' + date, new long[]{hash(portal, date), offset, storedAt});
+            }
+            offset = recordEnd;
+        }
+        if (offset < logSize && offset + header.capacity() > logSize) {
+            // Drop the incomplete record header left by a crash
+            log.truncate(offset);
+        }
+        int indexCapacity = INITIAL_CAPACITY;
+        while (latest.size() * 2 > indexCapacity) {
+            indexCapacity *= 2;
+        }
+        createIndex(indexCapacity, new ArrayList<>(latest.values()));
+    }
+
+    /**
+     * Checks whether a record that runs past the end of the log was cut short while
+     * it was being written, rather than having a corrupt length. The string lengths
+     * that were written before the log ended must fit within the record
+     *
+     * @param offset    The offset of the record in the log
+     * @param recordEnd The position the length of the record says it ends at
+     * @param logSize   The size of the log
+     * @return Whether or not the record is an incomplete write
+     * @throws IOException Thrown if the log could not be read
+     */
+    private boolean isIncomplete(long offset, long recordEnd, long logSize) throws IOException {
+        long position = offset + Integer.BYTES + Long.BYTES;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        for (int i = 0; i < 2; i++) {
+            if (position + Integer.BYTES > logSize) {
+                return true;
+            }
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length < 0 || position + Integer.BYTES + length > recordEnd) {
+                return false;
+            }
+            position += Integer.BYTES + length;
+        }
+        return true;
+    }
+
+    /**
+     * @param position  The position of the notices payload in the log
+     * @param recordEnd The position of the end of the record in the log
+     * @return Whether or not the payload starts with the magic number of the codec
+     * @throws IOException Thrown if the log could not be read
+     */
+    private boolean isEncoded(long position, long recordEnd) throws IOException {
+        if (position + Integer.BYTES > recordEnd) {
+            return false;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        readFully(magic, position);
+        return magic.getInt(0) == NoticesCodec.MAGIC;
+    }
+
+    /**
+     * Doubles the capacity of the index rehashing every slot
+     *
+     * @param newCapacity The new number of slots
+     * @throws IOException Thrown if the index could not be written
+     */
+    private void resize(int newCapacity) throws IOException {
+        List<long[]> entries = new ArrayList<>(size);
+        for (int slot = 0; slot < capacity; slot++) {
+            long keyHash = slotHash(slot);
+            if (keyHash != 0) {
+                entries.add(new long[]{keyHash, slotOffset(slot), slotStoredAt(slot)});
+            }
+        }
+        createIndex(newCapacity, entries);
+    }
+
+    /**
+     * Writes a new index file containing the provided entries and maps it
+     *
+     * @param indexCapacity The number of slots
+     * @param entries       The entries as {keyHash, offset, storedAt} (keys must be unique)
+     * @throws IOException Thrown if the index could not be written
+     */
+    private void createIndex(int indexCapacity, List<long[]> entries) throws IOException {
+        Path tempPath = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        Files.deleteIfExists(tempPath);
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) indexCapacity * SLOT_SIZE);
+        }
+        int mask = indexCapacity - 1;
+        for (long[] entry : entries) {
+            int slot = (int) (entry[0] & mask);
+            while (mapped.getLong(HEADER_SIZE + slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            writeSlot(mapped, slot, entry[0], entry[1], entry[2]);
+        }
+        mapped.putInt(0, INDEX_MAGIC);
+        mapped.putInt(4, INDEX_VERSION);
+        writeHeader(mapped, indexCapacity, entries.size(), log.size());
+        mapped.force();
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.index = mapped;
+        this.capacity = indexCapacity;
+        this.size = entries.size();
+    }
+
+    /**
+     * Finds the slot for a key using linear probing, the hashes of slots
+     * are compared first and the key of the record is only read to rule
+     * out a hash collision
+     *
+     * @param portal  The notice url of the portal
+     * @param date    The requested date string
+     * @param keyHash The hash of the key
+     * @return The slot containing the key, the empty slot where it belongs, or -1 if the index is full
+     * @throws IOException Thrown if a record key could not be read
+     */
+    private int findSlot(String portal, String date, long keyHash) throws IOException {
+        int mask = capacity - 1;
+        int slot = (int) (keyHash & mask);
+        for (int probes = 0; probes < capacity; probes++) {
+            long slotHash = slotHash(slot);
+            if (slotHash == 0) {
+                return slot;
+            }
+            if (slotHash == keyHash && isKey(slotOffset(slot), portal, date)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private long slotHash(int slot) {
+        return index.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private long slotOffset(int slot) {
+        return index.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+
+    private long slotStoredAt(int slot) {
+        return index.getLong(HEADER_SIZE + slot * SLOT_SIZE + 16);
+    }
+
+    private static void writeSlot(MappedByteBuffer buffer, int slot, long keyHash, long offset, long storedAt) {
+        int position = HEADER_SIZE + slot * SLOT_SIZE;
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, storedAt);
+        // The hash is written last as it marks the slot as used
+        buffer.putLong(position, keyHash);
+    }
+
+    private static void writeHeader(MappedByteBuffer buffer, int capacity, int size, long logLength) {
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, size);
+        buffer.putLong(16, logLength);
+    }
+
+    /**
+     * Creates a 64-bit FNV-1a hash of a portal and date, zero is
+     * reserved for empty slots so it is never returned
+     *
+     * @param portal The notice url of the portal
+     * @param date   The requested date string
+     * @return The hash of the key
+     */
+    private static long hash(String portal, String date) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, portal);
+        // Separate the portal from the date
+        hash *= 0x100000001b3L;
+        hash = hash(hash, date);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Checks whether the record at an offset is for the provided key
+     *
+     * @param offset The offset of the record in the log
+     * @param portal The notice url of the portal
+     * @param date   The requested date string
+     * @return Whether or not the record key matches
+     * @throws IOException Thrown if the record could not be read
+     */
+    private boolean isKey(long offset, String portal, String date) throws IOException {
+        long logSize = log.size();
+        long position = offset + Integer.BYTES + Long.BYTES;
+        if (!portal.equals(readString(position, logSize))) {
+            return false;
+        }
+        position += Integer.BYTES + utf8Length(portal);
+        return date.equals(readString(position, logSize));
+    }
+
+    /**
+     * Creates a log record
+     * [int length][long storedAt][string portal][string date][notices payload]
+     * where the payload is encoded using {@link NoticesCodec}
+     *
+     * @param storedAt When the record was stored
+     * @param portal   The notice url of the portal
+     * @param date     The requested date string
+     * @param notices  The notices to store
+     * @return A buffer containing the record ready to be written
+     */
+    private static ByteBuffer createRecord(long storedAt, String portal, String date, Notices notices) {
+        byte[] portalBytes = portal.getBytes(StandardCharsets.UTF_8);
+        byte[] dateBytes = date.getBytes(StandardCharsets.UTF_8);
+        int length = Long.BYTES + Integer.BYTES + portalBytes.length + Integer.BYTES + dateBytes.length
+                + NoticesCodec.encodedLength(notices);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+        record.putInt(length);
+        record.putLong(storedAt);
+        record.putInt(portalBytes.length).put(portalBytes);
+        record.putInt(dateBytes.length).put(dateBytes);
+        NoticesCodec.encode(notices, record);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Reads the notices payload of the record at an offset
+     *
+     * @param offset The offset of the record in the log
+     * @return The notices stored in the record
+     * @throws IOException Thrown if the record could not be read
+     */
+    private Notices readNotices(long offset) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(readLength(offset, log.size()));
+        readFully(record, offset + Integer.BYTES);
+        record.flip();
+        // Skip the stored at time, portal and date
+        record.position(Long.BYTES);
+        record.position(record.position() + Integer.BYTES + record.getInt(record.position()));
+        record.position(record.position() + Integer.BYTES + record.getInt(record.position()));
+        return NoticesCodec.decode(record);
+    }
+
+    /**
+     * Reads a length prefixed string from the log
+     *
+     * @param position The position of the string in the log
+     * @param limit    The position the string must end before
+     * @return The string
+     * @throws IOException Thrown if the string could not be read or its length is corrupt
+     */
+    private String readString(long position, long limit) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(readLength(position, limit));
+        readFully(bytes, position + Integer.BYTES);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the length prefix of a record or string from the log
+     *
+     * @param position The position of the length in the log
+     * @param limit    The position the value after the length must end before
+     * @return The length
+     * @throws IOException Thrown if the length could not be read or is corrupt
+     */
+    private int readLength(long position, long limit) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(lengthBuffer, position);
+        int length = lengthBuffer.getInt(0);
+        if (length < 0 || position + Integer.BYTES + length > limit) {
+            throw new IOException("KNI: Corrupt notice archive record");
+        }
+        return length;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Fills a buffer with the bytes of the log at a position
+     *
+     * @param buffer   The buffer to fill
+     * @param position The position in the log
+     * @throws IOException Thrown if the end of the log is reached or it could not be read
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("KNI: Unexpected end of notice archive");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,446 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the notices of any number of snapshots as one record per notice in
+ * JSON Lines or CSV format, every record is encoded straight into one reused
+ * buffer so memory use stays the same however many snapshots are exported
+ * <p>
+ * Each record has the fields portal, date (the raw date of the snapshot), index,
+ * level, meeting, subject, body and teacher followed by place, meetingDate and
+ * meetingTime which are only set for meeting notices (null in JSON and empty in CSV).
+ * CSV is written as RFC 4180 with a header line and CRLF line endings
+ * <p>
+ * An exporter is not thread-safe, closing it closes the stream or channel it writes to
+ */
+public class NoticeExporter implements Closeable, Flushable {
+
+    /**
+     * The formats notices can be exported as
+     */
+    public enum Format {
+        JSON_LINES, // One JSON object per line
+        CSV // Comma separated values with a header line
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024; // The size of the reused buffer
+    private static final int MAX_CHAR_SIZE = 6; // The most bytes a single char is written as (a \\uXXXX escape)
+    private static final String[] FIELDS = {"portal", "date", "index", "level", "meeting", "subject", "body", "teacher", "place", "meetingDate", "meetingTime"};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final Format format;
+    private final OutputStream stream; // The stream to write to (null when writing to the channel)
+    private final WritableByteChannel channel; // The channel to write to (null when writing to the stream)
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer channelBuffer; // Wraps the buffer for writing to the channel (null when writing to the stream)
+    private int position = 0; // The number of bytes in the buffer
+    private long records = 0;
+    private boolean isClosed = false;
+
+    /**
+     * @param stream The stream to write the records to
+     * @param format The format to write the records in
+     * @throws IOException Thrown if the header could not be written
+     */
+    public NoticeExporter(OutputStream stream, Format format) throws IOException {
+        this(stream, format, false);
+    }
+
+    /**
+     * @param stream The stream to write the records to
+     * @param format The format to write the records in
+     * @param isGzip Whether or not to gzip the records
+     * @throws IOException Thrown if the header could not be written
+     */
+    public NoticeExporter(OutputStream stream, Format format, boolean isGzip) throws IOException {
+        this.format = format;
+        this.stream = isGzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : stream;
+        this.channel = null;
+        this.channelBuffer = null;
+        writeHeader();
+    }
+
+    /**
+     * @param channel The channel to write the records to
+     * @param format  The format to write the records in
+     * @param isGzip  Whether or not to gzip the records
+     * @throws IOException Thrown if the header could not be written
+     */
+    public NoticeExporter(WritableByteChannel channel, Format format, boolean isGzip) throws IOException {
+        this.format = format;
+        if (isGzip) {
+            // Compressed through a stream, the deflater writes to the channel in chunks
+            this.stream = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            this.channel = null;
+            this.channelBuffer = null;
+        } else {
+            this.stream = null;
+            this.channel = channel;
+            this.channelBuffer = ByteBuffer.wrap(buffer);
+        }
+        writeHeader();
+    }
+
+    /**
+     * Writes the header line of CSV exports into the buffer
+     *
+     * @throws IOException Thrown if the buffer could not be flushed
+     */
+    private void writeHeader() throws IOException {
+        if (format == Format.CSV) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (i > 0) {
+                    writeByte(',');
+                }
+                writeAscii(FIELDS[i]);
+            }
+            writeAscii("\r\n");
+        }
+    }
+
+    /**
+     * Writes a record for every notice of a snapshot, snapshots
+     * with an error message have no notices so write nothing
+     *
+     * @param portal  The portal the notices were retrieved from (such as its host)
+     * @param notices The notices to write
+     * @throws IOException Thrown if the records could not be written
+     */
+    public void write(String portal, Notices notices) throws IOException {
+        if (isClosed) {
+            throw new IOException("KNI: Exporter is closed");
+        }
+        List<Notice> list = notices.getNotices();
+        if (list == null) {
+            return;
+        }
+        String date = notices.getDate();
+        for (Notice notice : list) {
+            if (format == Format.CSV) {
+                writeCsv(portal, date, notice);
+            } else {
+                writeJson(portal, date, notice);
+            }
+            records++;
+        }
+    }
+
+    private void writeJson(String portal, String date, Notice notice) throws IOException {
+        MeetingNotice meeting = notice.isMeeting() ? (MeetingNotice) notice : null;
+        writeByte('{');
+        writeJsonField(0, portal);
+        writeJsonField(1, date);
+        writeJsonName(2);
+        ensure(11);
+        writeInt(notice.getIndex());
+        writeJsonField(3, notice.getLevel() == null ? null : notice.getLevel().name());
+        writeJsonName(4);
+        writeAscii(meeting != null ? "true" : "false");
+        writeJsonField(5, notice.getSubject());
+        writeJsonField(6, notice.getBody());
+        writeJsonField(7, notice.getTeacher());
+        writeJsonField(8, meeting == null ? null : meeting.getPlace());
+        writeJsonField(9, meeting == null ? null : meeting.getDate());
+        writeJsonField(10, meeting == null ? null : meeting.getTime());
+        writeAscii("}\n");
+    }
+
+    private void writeJsonName(int field) throws IOException {
+        if (field > 0) {
+            writeByte(',');
+        }
+        writeByte('"');
+        writeAscii(FIELDS[field]);
+        writeAscii("\":");
+    }
+
+    private void writeJsonField(int field, String value) throws IOException {
+        writeJsonName(field);
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            ensure(MAX_CHAR_SIZE);
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writeEscape('"');
+                    break;
+                case '\\':
+                    writeEscape('\\');
+                    break;
+                case '\n':
+                    writeEscape('n');
+                    break;
+                case '\r':
+                    writeEscape('r');
+                    break;
+                case '\t':
+                    writeEscape('t');
+                    break;
+                case '\b':
+                    writeEscape('b');
+                    break;
+                case '\f':
+                    writeEscape('f');
+                    break;
+                default:
+                    // Line and paragraph separators are escaped as JavaScript treats them as line endings
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        writeUnicodeEscape(c);
+                    } else {
+                        i = writeChar(value, i);
+                    }
+                    break;
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeEscape(char c) {
+        buffer[position++] = '\\';
+        buffer[position++] = (byte) c;
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xF];
+        buffer[position++] = HEX[(c >> 8) & 0xF];
+        buffer[position++] = HEX[(c >> 4) & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+    }
+
+    private void writeCsv(String portal, String date, Notice notice) throws IOException {
+        MeetingNotice meeting = notice.isMeeting() ? (MeetingNotice) notice : null;
+        writeCsvField(portal);
+        writeByte(',');
+        writeCsvField(date);
+        writeByte(',');
+        ensure(11);
+        writeInt(notice.getIndex());
+        writeByte(',');
+        writeCsvField(notice.getLevel() == null ? null : notice.getLevel().name());
+        writeByte(',');
+        writeAscii(meeting != null ? "true" : "false");
+        writeByte(',');
+        writeCsvField(notice.getSubject());
+        writeByte(',');
+        writeCsvField(notice.getBody());
+        writeByte(',');
+        writeCsvField(notice.getTeacher());
+        writeByte(',');
+        writeCsvField(meeting == null ? null : meeting.getPlace());
+        writeByte(',');
+        writeCsvField(meeting == null ? null : meeting.getDate());
+        writeByte(',');
+        writeCsvField(meeting == null ? null : meeting.getTime());
+        writeAscii("\r\n");
+    }
+
+    /**
+     * Writes a CSV field, quoted only if it contains a comma, quote or line break
+     *
+     * @param value The value of the field (null for an empty field)
+     * @throws IOException Thrown if the buffer could not be flushed
+     */
+    private void writeCsvField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        boolean isQuoted = false;
+        for (int i = 0; i < length && !isQuoted; i++) {
+            char c = value.charAt(i);
+            isQuoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (isQuoted) {
+            writeByte('"');
+        }
+        for (int i = 0; i < length; i++) {
+            ensure(MAX_CHAR_SIZE);
+            if (value.charAt(i) == '"') {
+                buffer[position++] = '"';
+                buffer[position++] = '"';
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        if (isQuoted) {
+            writeByte('"');
+        }
+    }
+
+    /**
+     * Writes a char as UTF-8, a surrogate pair is written as one code point
+     * and an unpaired surrogate is replaced with '?' (space must be ensured)
+     *
+     * @param value The string being written
+     * @param i     The index of the char to write
+     * @return The index of the last char written
+     */
+    private int writeChar(String value, int i) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+                return i + 1;
+            }
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        }
+        return i;
+    }
+
+    /**
+     * Writes an int in decimal (space must be ensured)
+     *
+     * @param value The value to write
+     */
+    private void writeInt(int value) {
+        // Widened so the smallest int can be negated
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[position++] = '-';
+            remaining = -remaining;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        // The digits were written least significant first
+        for (int left = start, right = position - 1; left < right; left++, right--) {
+            byte digit = buffer[left];
+            buffer[left] = buffer[right];
+            buffer[right] = digit;
+        }
+    }
+
+    /**
+     * Writes the field names and constant parts of the records
+     *
+     * @param value The ASCII text to write
+     * @throws IOException Thrown if the buffer could not be flushed
+     */
+    private void writeAscii(String value) throws IOException {
+        if (position + value.length() > buffer.length) {
+            flushBuffer();
+        }
+        for (int i = 0; i < value.length(); i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    /**
+     * Makes sure there is space for at least the provided number of bytes in the buffer
+     *
+     * @param size The number of bytes needed
+     * @throws IOException Thrown if the buffer could not be flushed
+     */
+    private void ensure(int size) throws IOException {
+        if (position + size > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffer to the stream or channel
+     *
+     * @throws IOException Thrown if it could not be written
+     */
+    private void flushBuffer() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        if (stream != null) {
+            stream.write(buffer, 0, position);
+        } else {
+            channelBuffer.clear().limit(position);
+            while (channelBuffer.hasRemaining()) {
+                channel.write(channelBuffer);
+            }
+        }
+        position = 0;
+    }
+
+    /**
+     * @return The number of records written
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Writes any buffered records to the stream or channel, gzipped
+     * records are only flushed as far as the compressor allows
+     *
+     * @throws IOException Thrown if the records could not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Writes any buffered records, finishes the gzip stream
+     * and closes the stream or channel
+     *
+     * @throws IOException Thrown if the records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            flushBuffer();
+        } finally {
+            if (stream != null) {
+                stream.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+}
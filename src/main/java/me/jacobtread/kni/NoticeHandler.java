@@ -0,0 +1,215 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A streaming SAX handler which builds notices straight from the KAMAR
+ * response in a single pass (in document order) without ever creating
+ * a DOM of the response
+ */
+class NoticeHandler extends DefaultHandler {
+
+    private final List<Notice> notices = new ArrayList<>(); // The notices parsed so far
+    private final NoticePool pool; // The pool to deduplicate notices with (null to not deduplicate)
+    private final Consumer<Notice> sink; // Given each notice as it is parsed instead of collecting them (null to collect)
+    private final StringBuilder text = new StringBuilder(); // Reused buffer for the current element text
+    private boolean capturing = false; // Whether or not text is currently being collected
+    private String errorMessage; // The error message provided by KAMAR (null if none)
+
+    // The current notice state
+    private boolean inNotice = false;
+    private boolean isMeeting;
+    private int depth;
+    private int index;
+
+    // General Notices
+    private Notice.Level level;
+    private String subject;
+    private String body;
+    private String teacher;
+
+    // Meeting Notices
+    private String place;
+    private String date;
+    private String time;
+
+    NoticeHandler() {
+        this(null);
+    }
+
+    /**
+     * @param pool The pool to deduplicate notices with (null to not deduplicate)
+     */
+    NoticeHandler(NoticePool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * @param pool The pool to deduplicate notices with (null to not deduplicate)
+     * @param sink Given each notice as soon as it is parsed, the notices aren't
+     *             collected when provided (null to collect the notices)
+     */
+    NoticeHandler(NoticePool pool, Consumer<Notice> sink) {
+        this.pool = pool;
+        this.sink = sink;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (inNotice) {
+            depth++;
+            // Only collect the text of direct children of the notice
+            if (depth == 1) {
+                text.setLength(0);
+                capturing = true;
+            }
+        } else if (qName.equals("General") || qName.equals("Meeting")) {
+            startNotice(qName.equals("Meeting"), attributes.getValue("index"));
+        } else if (qName.equals("Error") && errorMessage == null) {
+            text.setLength(0);
+            capturing = true;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (inNotice) {
+            if (depth == 0) {
+                // The end of the notice element itself
+                inNotice = false;
+                Notice notice = createNotice();
+                // Ignore invalid / null notices
+                if (notice != null) {
+                    if (pool != null) {
+                        notice = pool.intern(notice);
+                    }
+                    if (sink != null) {
+                        sink.accept(notice);
+                    } else {
+                        notices.add(notice);
+                    }
+                }
+            } else {
+                if (depth == 1) {
+                    capturing = false;
+                    setField(qName, text.toString());
+                }
+                depth--;
+            }
+        } else if (capturing && qName.equals("Error")) {
+            capturing = false;
+            errorMessage = text.toString();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (capturing) {
+            text.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Resets the current notice state for a new notice element
+     *
+     * @param isMeeting Whether or not the element is a meeting notice
+     * @param indexValue The raw value of the index attribute (can be null)
+     */
+    private void startNotice(boolean isMeeting, String indexValue) {
+        this.inNotice = true;
+        this.isMeeting = isMeeting;
+        this.depth = 0;
+        this.index = -1;
+        if (indexValue != null) {
+            try {
+                index = Integer.parseInt(indexValue);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        level = null;
+        subject = null;
+        body = null;
+        teacher = null;
+        place = null;
+        date = null;
+        time = null;
+    }
+
+    /**
+     * Stores the content of a notice child element
+     *
+     * @param name The name of the child element
+     * @param content The text content within the element
+     */
+    private void setField(String name, String content) {
+        // Decide what to do based on the element name
+        switch (name) {
+            case "Level":
+                // Parse the notice level
+                level = Notice.Level.fromString(content);
+                break;
+            case "Subject":
+                subject = content;
+                break;
+            case "Body":
+                body = content;
+                break;
+            case "Teacher":
+                teacher = content;
+                break;
+            case "PlaceMeet":
+                place = content;
+                break;
+            case "DateMeet":
+                date = content;
+                break;
+            case "TimeMeet":
+                time = content;
+                break;
+        }
+    }
+
+    /**
+     * Creates a notice from the current state will return null
+     * if the notice was missing any of its fields
+     *
+     * @return Null if the xml was invalid or the notice object
+     */
+    private Notice createNotice() {
+        // Ignore invalid notices (bad server response?) This shouldn't happen but just in case
+        if (level == null || subject == null || body == null || teacher == null) {
+            return null;
+        }
+        if (isMeeting) {
+            // Not actually a meeting notice?
+            if (place == null || date == null || time == null) {
+                return null;
+            }
+            return new MeetingNotice(index, level, subject, body, teacher, place, date, time);
+        } else {
+            return new Notice(index, level, subject, body, teacher);
+        }
+    }
+
+    /**
+     * @return The notices parsed in the order they appeared in the response
+     */
+    List<Notice> getNotices() {
+        return notices;
+    }
+
+    /**
+     * @return The error message provided by KAMAR or null if there was none
+     */
+    String getErrorMessage() {
+        return errorMessage;
+    }
+
+}
@@ -0,0 +1,349 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over the subject, body and teacher of the notices
+ * of many {@link Notices} snapshots across many portals
+ * <p>
+ * Each snapshot is identified by its portal and date, adding a newer snapshot
+ * for the same portal and date only updates the notices that changed
+ */
+public class NoticeIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Set<IndexedNotice>> postings = new TreeMap<>(); // The notices containing each term
+    private final Map<String, List<IndexedNotice>> snapshots = new HashMap<>(); // The notices of each portal and date
+    private long nextId = 0; // The id given to the next indexed notice
+    private int size = 0; // The number of indexed notices
+
+    /**
+     * Adds the notices of a snapshot replacing any notices previously
+     * added for the same portal and date
+     *
+     * @param portal  The portal the notices were retrieved from
+     * @param notices The notices to add
+     */
+    public void add(String portal, Notices notices) {
+        String date = notices.getDate();
+        List<Notice> noticeList = notices.getNotices() == null ? List.of() : notices.getNotices();
+        lock.writeLock().lock();
+        try {
+            List<IndexedNotice> previous = snapshots.getOrDefault(createKey(portal, date), List.of());
+            // The previous notices (a snapshot can contain equal notices more than once)
+            Map<Notice, List<IndexedNotice>> unchanged = new HashMap<>();
+            for (IndexedNotice indexed : previous) {
+                unchanged.computeIfAbsent(indexed.getNotice(), key -> new ArrayList<>(1)).add(indexed);
+            }
+            List<IndexedNotice> current = new ArrayList<>(noticeList.size());
+            for (Notice notice : noticeList) {
+                List<IndexedNotice> matching = unchanged.get(notice);
+                IndexedNotice indexed;
+                if (matching != null && !matching.isEmpty()) {
+                    indexed = matching.remove(matching.size() - 1);
+                } else {
+                    indexed = new IndexedNotice(nextId++, portal, date, notice, tokenize(notice));
+                    addPostings(indexed);
+                }
+                current.add(indexed);
+            }
+            // Anything left was removed from the snapshot
+            for (List<IndexedNotice> removed : unchanged.values()) {
+                for (IndexedNotice indexed : removed) {
+                    removePostings(indexed);
+                }
+            }
+            if (current.isEmpty()) {
+                snapshots.remove(createKey(portal, date));
+            } else {
+                snapshots.put(createKey(portal, date), current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the notices of a snapshot
+     *
+     * @param portal The portal the notices were retrieved from
+     * @param date   The raw date string the notices were retrieved for
+     */
+    public void remove(String portal, String date) {
+        lock.writeLock().lock();
+        try {
+            List<IndexedNotice> previous = snapshots.remove(createKey(portal, date));
+            if (previous != null) {
+                for (IndexedNotice indexed : previous) {
+                    removePostings(indexed);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of notices in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the index for free text as it would be typed into a search box,
+     * every word must match a term and the last word only has to be the
+     * start of a term
+     *
+     * @param text The text to search for
+     * @return The matching notices in the order they were added
+     */
+    public List<IndexedNotice> search(String text) {
+        List<String> words = split(text);
+        Query query = query();
+        for (int i = 0; i < words.size(); i++) {
+            if (i == words.size() - 1) {
+                query.prefix(words.get(i));
+            } else {
+                query.term(words.get(i));
+            }
+        }
+        return query.search();
+    }
+
+    /**
+     * @return A new query against this index
+     */
+    public Query query() {
+        return new Query();
+    }
+
+    private void addPostings(IndexedNotice indexed) {
+        for (String term : indexed.getTerms()) {
+            postings.computeIfAbsent(term, key -> new HashSet<>()).add(indexed);
+        }
+        size++;
+    }
+
+    private void removePostings(IndexedNotice indexed) {
+        for (String term : indexed.getTerms()) {
+            Set<IndexedNotice> notices = postings.get(term);
+            if (notices != null) {
+                notices.remove(indexed);
+                if (notices.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        size--;
+    }
+
+    private static String createKey(String portal, String date) {
+        return portal + ' ' + date;
+    }
+
+    /**
+     * @param notice The notice to tokenize
+     * @return The sorted distinct terms of the notice subject, body and teacher
+     */
+    private static String[] tokenize(Notice notice) {
+        Set<String> terms = new TreeSet<>();
+        terms.addAll(split(notice.getSubject()));
+        terms.addAll(split(notice.getBody()));
+        terms.addAll(split(notice.getTeacher()));
+        return terms.toArray(new String[0]);
+    }
+
+    /**
+     * Splits text into lower case terms of letters and digits
+     *
+     * @param text The text to split
+     * @return The terms of the text
+     */
+    private static List<String> split(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean isTermChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (isTermChar && start < 0) {
+                start = i;
+            } else if (!isTermChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * A query against the index, all the terms, prefixes and filters
+     * of the query must match for a notice to be included
+     */
+    public class Query {
+
+        private final List<String> terms = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private Notice.Level level;
+        private Boolean isMeeting;
+        private String portal;
+
+        private Query() {
+        }
+
+        /**
+         * @param term A word that must be in the subject, body or teacher
+         * @return This query
+         */
+        public Query term(String term) {
+            terms.addAll(split(term));
+            return this;
+        }
+
+        /**
+         * @param prefix The start of a word that must be in the subject, body or teacher
+         * @return This query
+         */
+        public Query prefix(String prefix) {
+            prefixes.addAll(split(prefix));
+            return this;
+        }
+
+        /**
+         * @param level The level the notices must be for
+         * @return This query
+         */
+        public Query level(Notice.Level level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param isMeeting Whether the notices must be meeting notices or general notices
+         * @return This query
+         */
+        public Query meetings(boolean isMeeting) {
+            this.isMeeting = isMeeting;
+            return this;
+        }
+
+        /**
+         * @param portal The portal the notices must be from
+         * @return This query
+         */
+        public Query portal(String portal) {
+            this.portal = portal;
+            return this;
+        }
+
+        /**
+         * Runs the query, the smallest set of candidates is found first
+         * and only those candidates are checked against the rest of the query
+         *
+         * @return The matching notices in the order they were added
+         */
+        public List<IndexedNotice> search() {
+            lock.readLock().lock();
+            try {
+                Collection<IndexedNotice> candidates = null;
+                List<Set<IndexedNotice>> termSets = new ArrayList<>(terms.size());
+                for (String term : terms) {
+                    Set<IndexedNotice> notices = postings.get(term);
+                    if (notices == null) {
+                        return List.of();
+                    }
+                    termSets.add(notices);
+                }
+                termSets.sort(Comparator.comparingInt(Set::size));
+                if (!termSets.isEmpty()) {
+                    candidates = termSets.get(0);
+                } else if (!prefixes.isEmpty()) {
+                    candidates = prefixCandidates(prefixes.get(0));
+                } else {
+                    candidates = new ArrayList<>();
+                    for (List<IndexedNotice> snapshot : snapshots.values()) {
+                        candidates.addAll(snapshot);
+                    }
+                }
+                List<IndexedNotice> results = new ArrayList<>();
+                for (IndexedNotice candidate : candidates) {
+                    if (matches(candidate, termSets)) {
+                        results.add(candidate);
+                    }
+                }
+                results.sort(Comparator.comparingLong(IndexedNotice::getId));
+                return Collections.unmodifiableList(results);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * @param prefix The start of a term
+         * @return Every notice containing a term starting with the prefix
+         */
+        private Set<IndexedNotice> prefixCandidates(String prefix) {
+            Set<IndexedNotice> notices = new HashSet<>();
+            for (Set<IndexedNotice> termNotices : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                notices.addAll(termNotices);
+            }
+            return notices;
+        }
+
+        private boolean matches(IndexedNotice candidate, List<Set<IndexedNotice>> termSets) {
+            Notice notice = candidate.getNotice();
+            if (level != null && notice.getLevel() != level) {
+                return false;
+            }
+            if (isMeeting != null && notice.isMeeting() != isMeeting) {
+                return false;
+            }
+            if (portal != null && !portal.equals(candidate.getPortal())) {
+                return false;
+            }
+            for (Set<IndexedNotice> termSet : termSets) {
+                if (!termSet.contains(candidate)) {
+                    return false;
+                }
+            }
+            String[] candidateTerms = candidate.getTerms();
+            for (String prefix : prefixes) {
+                // The terms are sorted so the first term not before the prefix is the only one to check
+                int position = Arrays.binarySearch(candidateTerms, prefix);
+                if (position < 0) {
+                    position = -position - 1;
+                }
+                if (position >= candidateTerms.length || !candidateTerms[position].startsWith(prefix)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
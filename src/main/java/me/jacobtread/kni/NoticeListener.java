@@ -0,0 +1,54 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+
+/**
+ * Listener for the changes found by a {@link NoticeWatcher}, meeting
+ * notices are provided as {@link me.jacobtread.kni.data.MeetingNotice}
+ * objects (Checked via {@link Notice#isMeeting()})
+ */
+public interface NoticeListener {
+
+    /**
+     * Called when a notice appears that was not in the previous response
+     *
+     * @param notice The new notice
+     */
+    default void onAdded(Notice notice) {
+    }
+
+    /**
+     * Called when a notice from the previous response is no longer present
+     *
+     * @param notice The removed notice
+     */
+    default void onRemoved(Notice notice) {
+    }
+
+    /**
+     * Called when a notice with the same index as one in the previous
+     * response has different content
+     *
+     * @param previous The notice from the previous response
+     * @param current  The notice from the current response
+     */
+    default void onChanged(Notice previous, Notice current) {
+    }
+
+    /**
+     * Called when KAMAR responds with an error message
+     *
+     * @param errorMessage The error message provided by KAMAR
+     */
+    default void onErrorMessage(String errorMessage) {
+    }
+
+    /**
+     * Called when a poll fails because of a connection or parsing error
+     *
+     * @param exception The exception that caused the poll to fail
+     */
+    default void onError(Exception exception) {
+    }
+
+}
@@ -0,0 +1,142 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of the values shared between notices so that the same teacher,
+ * place, subject or body retrieved on many days (or from many portals)
+ * is only stored once, along with a single instance of every distinct notice
+ * <p>
+ * Set using {@link KNI#setNoticePool(NoticePool)} to deduplicate notices as
+ * they are parsed, {@link NoticePool#pack(Notices)} stores notices in a
+ * packed form which references the pooled values by id
+ * <p>
+ * Values are never removed from the pool, it grows with the number of
+ * distinct values so it is intended to be kept for as long as the
+ * notices using it are kept
+ */
+public class NoticePool {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>(); // The id of each pooled value
+    private final Map<Notice, Notice> notices = new ConcurrentHashMap<>(); // The single instance of each distinct notice
+    private volatile String[] values = new String[64]; // The pooled values by id
+    private int size = 0; // The number of pooled values (guarded by this)
+
+    /**
+     * Gets the pooled instance of a value, adding it if it is not already pooled
+     *
+     * @param value The value to get (can be null)
+     * @return The pooled instance of the value
+     */
+    public String intern(String value) {
+        return get(id(value));
+    }
+
+    /**
+     * Gets the pooled instance of a notice (or an equal notice) adding
+     * it if it is not already pooled, the values of pooled notices are
+     * pooled as well
+     *
+     * @param notice The notice to get
+     * @return The pooled instance of the notice
+     */
+    public Notice intern(Notice notice) {
+        Notice existing = notices.get(notice);
+        if (existing != null) {
+            return existing;
+        }
+        Notice pooled;
+        if (notice.isMeeting()) {
+            MeetingNotice meeting = (MeetingNotice) notice;
+            pooled = new MeetingNotice(notice.getIndex(), notice.getLevel(),
+                    intern(notice.getSubject()), intern(notice.getBody()), intern(notice.getTeacher()),
+                    intern(meeting.getPlace()), intern(meeting.getDate()), intern(meeting.getTime()));
+        } else {
+            pooled = new Notice(notice.getIndex(), notice.getLevel(),
+                    intern(notice.getSubject()), intern(notice.getBody()), intern(notice.getTeacher()));
+        }
+        existing = notices.putIfAbsent(pooled, pooled);
+        return existing != null ? existing : pooled;
+    }
+
+    /**
+     * Creates a copy of notices which stores its notices packed into a single
+     * array of pooled value ids. Each notice provided by the copy is a
+     * lightweight view which is created when it is accessed, so notices from
+     * the copy are equal to the originals but not always the same instance
+     * <p>
+     * Notices containing an error message are returned as they are
+     *
+     * @param notices The notices to pack
+     * @return The packed copy of the notices
+     */
+    public Notices pack(Notices notices) {
+        List<Notice> noticeList = notices.getNotices();
+        if (noticeList == null || noticeList instanceof PackedNoticeList) {
+            return notices;
+        }
+        Notices packed = new Notices(notices.getDate());
+        packed.setNotices(new PackedNoticeList(this, noticeList));
+        return packed;
+    }
+
+    /**
+     * @return The number of distinct values in the pool
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of distinct notices in the pool
+     */
+    public int getNoticeCount() {
+        return notices.size();
+    }
+
+    /**
+     * Gets the id of a value, adding it to the pool if it is not already pooled
+     *
+     * @param value The value (can be null)
+     * @return The id of the value or -1 for null
+     */
+    int id(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            String[] values = this.values;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            // The value is stored before the id is published so readers of the id always see it
+            values[size] = value;
+            this.values = values;
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param id The id of a value
+     * @return The value with the id or null for -1
+     */
+    String get(int id) {
+        return id < 0 ? null : values[id];
+    }
+
+}
@@ -0,0 +1,198 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A publisher which retrieves the notices for a date for each subscriber and emits
+ * each notice as soon as it is parsed (see {@link KNI#publish(String)})
+ * <p>
+ * The response is read and parsed on a thread of the executor which waits while
+ * the subscriber has no outstanding demand, so a slow subscriber slows reading
+ * the response instead of notices being buffered in memory
+ */
+class NoticePublisher implements Flow.Publisher<Notice> {
+
+    private final KNI kni;
+    private final String date; // The date to retrieve notices for
+    private final Executor executor; // The executor the responses are read and parsed on
+
+    /**
+     * @param kni      The instance to retrieve the notices with
+     * @param date     The date to retrieve notices for
+     * @param executor The executor to read and parse responses on
+     */
+    NoticePublisher(KNI kni, String date, Executor executor) {
+        this.kni = kni;
+        this.date = date;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Notice> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        NoticeSubscription subscription = new NoticeSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        try {
+            executor.execute(subscription);
+        } catch (RejectedExecutionException e) {
+            subscription.fail(e);
+        }
+    }
+
+    /**
+     * The subscription of a single subscriber which runs its retrieval
+     */
+    private class NoticeSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Notice> subscriber;
+        private final Lock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition(); // Signalled when demand is added or the subscription ends
+        private long demand = 0; // The number of notices requested but not yet emitted
+        private boolean isCancelled = false;
+        private IllegalArgumentException invalidRequest; // The error for a request of a non-positive amount (null if none)
+
+        private NoticeSubscription(Flow.Subscriber<? super Notice> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (isCancelled || invalidRequest != null) {
+                    return;
+                }
+                if (n <= 0) {
+                    // Signalled by the retrieval thread as signals must not be concurrent
+                    invalidRequest = new IllegalArgumentException("KNI: Requested " + n + " notices, requests must be positive");
+                } else {
+                    demand += n;
+                    if (demand < 0) {
+                        // Demand this large is treated as unbounded
+                        demand = Long.MAX_VALUE;
+                    }
+                }
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                isCancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            Notices notices;
+            try {
+                notices = kni.stream(date, this::emit);
+            } catch (CancellationException e) {
+                IllegalArgumentException invalidRequest = getInvalidRequest();
+                if (invalidRequest != null) {
+                    subscriber.onError(invalidRequest);
+                }
+                return;
+            } catch (IOException | SAXException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            IllegalArgumentException invalidRequest = getInvalidRequest();
+            if (invalidRequest != null) {
+                subscriber.onError(invalidRequest);
+            } else if (isCancelled()) {
+                return;
+            } else if (notices.getErrorMessage() != null) {
+                subscriber.onError(new KamarErrorException(date, notices.getErrorMessage()));
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        /**
+         * Emits a notice once the subscriber has demand for it, called by the
+         * parser so waiting for demand pauses reading the response
+         *
+         * @param notice The notice to emit
+         * @throws CancellationException Thrown to stop the retrieval if the subscription ended
+         */
+        private void emit(Notice notice) {
+            lock.lock();
+            try {
+                while (demand == 0 && !isCancelled && invalidRequest == null) {
+                    demanded.await();
+                }
+                if (isCancelled || invalidRequest != null) {
+                    throw new CancellationException("KNI: Subscription cancelled");
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                isCancelled = true;
+                throw new CancellationException("KNI: Interrupted while waiting for demand");
+            } finally {
+                lock.unlock();
+            }
+            try {
+                subscriber.onNext(notice);
+            } catch (RuntimeException e) {
+                // A subscriber that throws is treated as having cancelled
+                cancel();
+                CancellationException cancelled = new CancellationException("KNI: Subscriber failed");
+                cancelled.initCause(e);
+                throw cancelled;
+            }
+        }
+
+        /**
+         * Signals a failure unless the subscription was cancelled
+         *
+         * @param error The cause of the failure
+         */
+        private void fail(Throwable error) {
+            if (!isCancelled()) {
+                subscriber.onError(error);
+            }
+        }
+
+        private boolean isCancelled() {
+            lock.lock();
+            try {
+                return isCancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private IllegalArgumentException getInvalidRequest() {
+            lock.lock();
+            try {
+                return invalidRequest;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Polls a KAMAR portal on an interval and notifies its listeners of any
+ * notices that were added, removed or changed since the previous poll
+ * <p>
+ * The raw response is hashed before it is parsed, when the response is
+ * identical to the previous one parsing is skipped completely
+ */
+public class NoticeWatcher implements Closeable {
+
+    private final KNI kni; // The KNI instance used to poll
+    private final Duration interval; // The time between polls
+    private final ScheduledExecutorService scheduler; // The scheduler the polls are run on
+    private final boolean ownsScheduler; // Whether or not the scheduler should be shutdown on close
+    private final List<NoticeListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledFuture<?> task; // The scheduled poll task (null if not started)
+
+    // The state of the previous poll
+    private String previousDate;
+    private byte[] previousHash;
+    private Map<Object, Notice> previousNotices = Map.of();
+
+    // Statistics
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Creates a watcher which polls on its own daemon thread
+     *
+     * @param kni      The KNI instance of the portal to watch
+     * @param interval The time between polls
+     */
+    public NoticeWatcher(KNI kni, Duration interval) {
+        this(kni, interval, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KNI-NoticeWatcher");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param kni       The KNI instance of the portal to watch
+     * @param interval  The time between polls
+     * @param scheduler The scheduler to run the polls on (this is not shutdown on close)
+     */
+    public NoticeWatcher(KNI kni, Duration interval, ScheduledExecutorService scheduler) {
+        this(kni, interval, scheduler, false);
+    }
+
+    private NoticeWatcher(KNI kni, Duration interval, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.kni = kni;
+        this.interval = interval;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    public void addListener(NoticeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(NoticeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts polling, the first poll happens immediately
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = scheduler.scheduleWithFixedDelay(this::pollQuietly, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops polling, and shuts down the scheduler if it was created by this watcher
+     */
+    @Override
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Polls for the current date catching any exceptions so
+     * that the scheduled polling is never cancelled
+     */
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (IOException | SAXException | RuntimeException e) {
+            notifyListeners(listener -> listener.onError(e));
+        }
+    }
+
+    /**
+     * Notifies each of the listeners catching any exceptions so that
+     * one broken listener doesn't stop the others from being notified
+     *
+     * @param event The event to notify the listeners of
+     */
+    private void notifyListeners(Consumer<NoticeListener> event) {
+        for (NoticeListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException ignored) {
+                // A broken listener should never break the polling
+            }
+        }
+    }
+
+    /**
+     * Polls the portal once for the current date notifying the listeners
+     * of any changes since the previous poll
+     *
+     * @return Whether or not the response was different to the previous response
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    public boolean poll() throws IOException, SAXException {
+        return poll(LocalDate.now());
+    }
+
+    /**
+     * Polls the portal once for the provided date, when the date is different to
+     * the date of the previous poll the notices are compared against nothing so
+     * the notices of the new day are all reported as added
+     *
+     * @param localDate The date to poll
+     * @return Whether or not the response was different to the previous response
+     * @throws IOException  Thrown if an error occurs when making the request or reading the response
+     * @throws SAXException Thrown if the XML response from KAMAR is invalid or contains errors
+     */
+    synchronized boolean poll(LocalDate localDate) throws IOException, SAXException {
+        String date = KNI.DATE_FORMATTER.format(localDate);
+        if (!date.equals(previousDate)) {
+            // The notices of the previous day were not removed so they are not reported as removed
+            previousDate = date;
+            previousHash = null;
+            previousNotices = Map.of();
+        }
+        // The whole poll is reported to the request listener of the KNI instance
+        RequestTrace trace = kni.createTrace(date);
+        try {
+            return poll(date, trace);
+        } catch (IOException | SAXException | RuntimeException e) {
+            trace.setException(e);
+            throw e;
+        } finally {
+            kni.report(trace);
+        }
+    }
+
+    private boolean poll(String date, RequestTrace trace) throws IOException, SAXException {
+        byte[] response = kni.requestRaw(date, trace);
+        polls.increment();
+        byte[] hash = hash(response);
+        if (Arrays.equals(hash, previousHash)) {
+            // Identical response so there is nothing to parse
+            skipped.increment();
+            return false;
+        }
+        Notices notices = kni.parse(new ByteArrayInputStream(response), date, trace);
+        String errorMessage = notices.getErrorMessage();
+        if (errorMessage != null) {
+            notifyListeners(listener -> listener.onErrorMessage(errorMessage));
+            // Keep the previous notices so the changes are found once KAMAR recovers
+            previousHash = hash;
+            return true;
+        }
+        Map<Object, Notice> currentNotices = new LinkedHashMap<>();
+        for (Notice notice : notices.getNotices()) {
+            currentNotices.put(createKey(notice), notice);
+        }
+        for (Map.Entry<Object, Notice> entry : currentNotices.entrySet()) {
+            Notice current = entry.getValue();
+            Notice previous = previousNotices.get(entry.getKey());
+            if (previous == null) {
+                notifyListeners(listener -> listener.onAdded(current));
+            } else if (!previous.equals(current)) {
+                notifyListeners(listener -> listener.onChanged(previous, current));
+            }
+        }
+        for (Map.Entry<Object, Notice> entry : previousNotices.entrySet()) {
+            if (!currentNotices.containsKey(entry.getKey())) {
+                Notice removed = entry.getValue();
+                notifyListeners(listener -> listener.onRemoved(removed));
+            }
+        }
+        previousNotices = currentNotices;
+        // Only stored once the changes are known so a failed poll is never skipped next time
+        previousHash = hash;
+        return true;
+    }
+
+    /**
+     * Creates the key used to match notices between polls, notices are
+     * matched by their type and index. Notices without an index can only
+     * be matched by their content so they never appear as changed
+     *
+     * @param notice The notice
+     * @return The key for the notice
+     */
+    private static Object createKey(Notice notice) {
+        if (notice.getIndex() < 0) {
+            return notice;
+        }
+        return List.of(notice.isMeeting(), notice.getIndex());
+    }
+
+    /**
+     * @param bytes The bytes to hash
+     * @return The SHA-256 hash of the bytes
+     */
+    private static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("KNI: SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * @return The number of responses received
+     */
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    /**
+     * @return The number of responses that were not parsed because they were unchanged
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+}
@@ -3,34 +3,124 @@ package me.jacobtread.kni;
 import me.jacobtread.kni.data.MeetingNotice;
 import me.jacobtread.kni.data.Notice;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public class Notices {
 
     private final String date;
+    private final LocalDate localDate; // The parsed date (null if it isn't in the request format)
     private List<Notice> notices;
     private String errorMessage;
 
+    // Views of the notices built once when the notices are set
+    private Map<Notice.Level, List<Notice>> levelViews = Map.of();
+    private Map<String, List<Notice>> teacherViews = Map.of();
+    private List<MeetingNotice> meetings = List.of();
+    private List<Notice> generals = List.of();
+
     /**
      * @param date The date this notices object is for
      */
     Notices(String date) {
         this.date = date;
+        this.localDate = parseDate(date);
+    }
+
+    /**
+     * @param date The raw date string
+     * @return The date parsed with the request format or null if it isn't in that format
+     */
+    private static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date, KNI.DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 
     /**
      * Get all the notices
      *
-     * @return A list of all the notices
+     * @return An unmodifiable list of all the notices
      */
     public List<Notice> getNotices() {
         return notices;
     }
 
+    /**
+     * Sets the notices and builds the views of them so that
+     * none of the accessors need to copy or filter the notices
+     *
+     * @param notices The notices
+     */
     void setNotices(List<Notice> notices) {
+        if (notices instanceof PackedNoticeList) {
+            setPackedNotices((PackedNoticeList) notices);
+            return;
+        }
+        this.notices = List.copyOf(notices);
+        Map<Notice.Level, List<Notice>> levelViews = new EnumMap<>(Notice.Level.class);
+        Map<String, List<Notice>> teacherViews = new HashMap<>();
+        List<MeetingNotice> meetings = new ArrayList<>();
+        List<Notice> generals = new ArrayList<>();
+        for (Notice notice : this.notices) {
+            levelViews.computeIfAbsent(notice.getLevel(), level -> new ArrayList<>()).add(notice);
+            teacherViews.computeIfAbsent(notice.getTeacher(), teacher -> new ArrayList<>()).add(notice);
+            if (notice.isMeeting()) {
+                meetings.add((MeetingNotice) notice);
+            } else {
+                generals.add(notice);
+            }
+        }
+        levelViews.replaceAll((level, view) -> List.copyOf(view));
+        teacherViews.replaceAll((teacher, view) -> List.copyOf(view));
+        this.levelViews = Collections.unmodifiableMap(levelViews);
+        this.teacherViews = Collections.unmodifiableMap(teacherViews);
+        this.meetings = List.copyOf(meetings);
+        this.generals = List.copyOf(generals);
+    }
+
+    /**
+     * Sets packed notices, the views are built as views of the packed list
+     * (by index) so the notices never need to be created
+     *
+     * @param notices The packed notices
+     */
+    @SuppressWarnings("unchecked")
+    private void setPackedNotices(PackedNoticeList notices) {
         this.notices = notices;
+        Map<Notice.Level, IntStream.Builder> levelIndexes = new EnumMap<>(Notice.Level.class);
+        Map<String, IntStream.Builder> teacherIndexes = new HashMap<>();
+        IntStream.Builder meetingIndexes = IntStream.builder();
+        IntStream.Builder generalIndexes = IntStream.builder();
+        for (int i = 0; i < notices.size(); i++) {
+            levelIndexes.computeIfAbsent(notices.getLevel(i), level -> IntStream.builder()).add(i);
+            teacherIndexes.computeIfAbsent(notices.getTeacher(i), teacher -> IntStream.builder()).add(i);
+            (notices.isMeeting(i) ? meetingIndexes : generalIndexes).add(i);
+        }
+        Map<Notice.Level, List<Notice>> levelViews = new EnumMap<>(Notice.Level.class);
+        levelIndexes.forEach((level, indexes) -> levelViews.put(level, notices.view(indexes.build().toArray())));
+        Map<String, List<Notice>> teacherViews = new HashMap<>();
+        teacherIndexes.forEach((teacher, indexes) -> teacherViews.put(teacher, notices.view(indexes.build().toArray())));
+        this.levelViews = Collections.unmodifiableMap(levelViews);
+        this.teacherViews = Collections.unmodifiableMap(teacherViews);
+        // Every notice in the meetings view is a meeting notice
+        this.meetings = (List<MeetingNotice>) (List<?>) notices.view(meetingIndexes.build().toArray());
+        this.generals = notices.view(generalIndexes.build().toArray());
     }
 
     /**
@@ -40,22 +130,65 @@ public class Notices {
      * @return A list of notices filtered based on the filter
      */
     public List<Notice> getNotices(Predicate<Notice> filter) {
-        List<Notice> filtered = new ArrayList<>(notices);
-        filtered.removeIf(Predicate.not(filter));
+        List<Notice> filtered = new ArrayList<>();
+        for (Notice notice : notices) {
+            if (filter.test(notice)) {
+                filtered.add(notice);
+            }
+        }
         return filtered;
     }
 
+    /**
+     * Gets all the notices for a level
+     *
+     * @param level The level of the notices
+     * @return An unmodifiable list of the notices for the level
+     */
+    public List<Notice> getNotices(Notice.Level level) {
+        return levelViews.getOrDefault(level, List.of());
+    }
+
+    /**
+     * Gets all the notices posted by a teacher
+     *
+     * @param teacher The teacher that posted the notices
+     * @return An unmodifiable list of the notices posted by the teacher
+     */
+    public List<Notice> getNoticesByTeacher(String teacher) {
+        return teacherViews.getOrDefault(teacher, List.of());
+    }
+
+    /**
+     * @return The teachers that posted the notices
+     */
+    public Set<String> getTeachers() {
+        return teacherViews.keySet();
+    }
+
     /**
      * Gets all the meeting notices
      *
-     * @return A list containing all the meeting notices
+     * @return An unmodifiable list containing all the meeting notices
      */
     public List<MeetingNotice> getMeetings() {
-        List<MeetingNotice> meetingNotices = new ArrayList<>();
-        for (Notice notice : getNotices(Notice::isMeeting)) {
-            meetingNotices.add((MeetingNotice) notice);
-        }
-        return meetingNotices;
+        return meetings;
+    }
+
+    /**
+     * Gets all the general (non meeting) notices
+     *
+     * @return An unmodifiable list containing all the general notices
+     */
+    public List<Notice> getGeneral() {
+        return generals;
+    }
+
+    /**
+     * @return A new query against these notices
+     */
+    public Query query() {
+        return new Query();
     }
 
     /**
@@ -65,6 +198,13 @@ public class Notices {
         return date;
     }
 
+    /**
+     * @return The date this request is for or null if the date string isn't in the request format
+     */
+    public LocalDate getLocalDate() {
+        return localDate;
+    }
+
     void setErrorMessage(String errorMessage) {
         this.errorMessage = errorMessage;
     }
@@ -90,4 +230,118 @@ public class Notices {
                 ", notices=" + notices +
                 '}';
     }
+
+    /**
+     * A query against the notices, the precomputed view with the fewest
+     * notices is used as the starting point and only its notices are
+     * checked against the rest of the query
+     */
+    public class Query {
+
+        private Notice.Level level;
+        private String teacher;
+        private Boolean isMeeting;
+        private Predicate<Notice> filter;
+
+        private Query() {
+        }
+
+        /**
+         * @param level The level the notices must be for
+         * @return This query
+         */
+        public Query level(Notice.Level level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param teacher The teacher that must have posted the notices
+         * @return This query
+         */
+        public Query teacher(String teacher) {
+            this.teacher = teacher;
+            return this;
+        }
+
+        /**
+         * Only include meeting notices
+         *
+         * @return This query
+         */
+        public Query meetings() {
+            this.isMeeting = true;
+            return this;
+        }
+
+        /**
+         * Only include general (non meeting) notices
+         *
+         * @return This query
+         */
+        public Query general() {
+            this.isMeeting = false;
+            return this;
+        }
+
+        /**
+         * @param filter An additional filter the notices must match
+         * @return This query
+         */
+        public Query filter(Predicate<Notice> filter) {
+            this.filter = this.filter == null ? filter : this.filter.and(filter);
+            return this;
+        }
+
+        /**
+         * Runs the query, when the query only uses a single view
+         * the view is returned without any copying
+         *
+         * @return An unmodifiable list of the matching notices
+         */
+        @SuppressWarnings("unchecked")
+        public List<Notice> list() {
+            if (notices == null) {
+                return List.of();
+            }
+            // Find the smallest view to start from
+            List<? extends Notice> candidates = notices;
+            int criteria = 0;
+            if (level != null) {
+                candidates = smallest(candidates, getNotices(level));
+                criteria++;
+            }
+            if (teacher != null) {
+                candidates = smallest(candidates, getNoticesByTeacher(teacher));
+                criteria++;
+            }
+            if (isMeeting != null) {
+                candidates = smallest(candidates, isMeeting ? meetings : generals);
+                criteria++;
+            }
+            if (criteria <= 1 && filter == null) {
+                // The views are already unmodifiable so they are safe to share
+                return (List<Notice>) candidates;
+            }
+            List<Notice> results = new ArrayList<>();
+            for (Notice notice : candidates) {
+                if (matches(notice)) {
+                    results.add(notice);
+                }
+            }
+            return Collections.unmodifiableList(results);
+        }
+
+        private List<? extends Notice> smallest(List<? extends Notice> current, List<? extends Notice> view) {
+            return view.size() < current.size() ? view : current;
+        }
+
+        private boolean matches(Notice notice) {
+            return (level == null || notice.getLevel() == level)
+                    && (teacher == null || Objects.equals(notice.getTeacher(), teacher))
+                    && (isMeeting == null || notice.isMeeting() == isMeeting)
+                    && (filter == null || filter.test(notice));
+        }
+
+    }
 }
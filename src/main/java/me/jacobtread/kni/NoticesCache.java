@@ -0,0 +1,237 @@
+package me.jacobtread.kni;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size bounded cache of retrieved notices keyed by the portal URL and the
+ * requested date string. Entries expire after a time to live (which can be
+ * longer for past dates as those rarely change) and the least recently used
+ * entry is evicted once the cache is full
+ * <p>
+ * A single cache can be shared by many {@link KNI} instances using
+ * {@link KNI#setCache(NoticesCache)}, the cached {@link Notices} objects
+ * are shared by every caller so they should not be modified
+ */
+public class NoticesCache {
+
+    private final int maxEntries; // The maximum number of entries to store
+    private final Map<String, Entry> entries; // The cached entries in least recently used order
+    private volatile long ttlNanos; // The time to live of entries for today and future dates
+    private volatile long pastTtlNanos; // The time to live of entries for past dates
+    private volatile NoticePool pool; // The pool cached notices are packed with (null to store them as they are)
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxEntries The maximum number of entries to store before evicting the least recently used
+     * @param ttl        How long entries should be kept for (this is also used for past dates
+     *                   unless {@link NoticesCache#setPastTtl(Duration)} is used)
+     */
+    public NoticesCache(int maxEntries, Duration ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.pastTtlNanos = ttlNanos;
+        // Access ordered so the eldest entry is always the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > NoticesCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Set how long entries for today and future dates are kept for
+     *
+     * @param ttl The time to live
+     */
+    public void setTtl(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Set how long entries for dates before today are kept for
+     *
+     * @param pastTtl The time to live
+     */
+    public void setPastTtl(Duration pastTtl) {
+        this.pastTtlNanos = pastTtl.toNanos();
+    }
+
+    /**
+     * Set a pool to pack the cached notices with (see {@link NoticePool#pack(Notices)}),
+     * packed notices use far less memory when many entries share the same values
+     * but their notices are created each time they are accessed
+     *
+     * @param pool The pool to use or null to store notices as they are
+     */
+    public void setPool(NoticePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the cached notices for a portal and date
+     *
+     * @param url  The notice url of the portal
+     * @param date The requested date string
+     * @return The cached notices or null if there are none or they have expired
+     */
+    public Notices get(String url, String date) {
+        String key = createKey(url, date);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.increment();
+                    return entry.notices;
+                }
+                entries.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the notices for a portal and date, responses containing
+     * an error message from KAMAR are never cached
+     *
+     * @param url     The notice url of the portal
+     * @param date    The requested date string
+     * @param notices The notices to store
+     */
+    public void put(String url, String date, Notices notices) {
+        if (notices.getErrorMessage() != null) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + (isPast(date) ? pastTtlNanos : ttlNanos);
+        NoticePool pool = this.pool;
+        if (pool != null) {
+            notices = pool.pack(notices);
+        }
+        synchronized (entries) {
+            entries.put(createKey(url, date), new Entry(notices, expiresAt));
+        }
+    }
+
+    /**
+     * Removes the cached notices for a portal and date
+     *
+     * @param url  The notice url of the portal
+     * @param date The requested date string
+     */
+    public void invalidate(String url, String date) {
+        synchronized (entries) {
+            entries.remove(createKey(url, date));
+        }
+    }
+
+    /**
+     * Removes all the cached notices
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return The number of entries currently stored (this can include expired entries)
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return The number of lookups that found notices
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that found no notices
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of entries removed to make room for new entries
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of entries removed because they had expired
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * Determines whether a date string is for a date before today
+     *
+     * @param date The date string (in the {@link KNI#DATE_FORMATTER} format)
+     * @return Whether or not the date is in the past (false if it could not be parsed)
+     */
+    private static boolean isPast(String date) {
+        try {
+            return LocalDate.parse(date, KNI.DATE_FORMATTER).isBefore(LocalDate.now());
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String createKey(String url, String date) {
+        return url + ' ' + date;
+    }
+
+    @Override
+    public String toString() {
+        return "NoticesCache{" +
+                "size=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", expirations=" + expirations +
+                '}';
+    }
+
+    /**
+     * A cached notices object and when it expires
+     */
+    private static class Entry {
+
+        private final Notices notices;
+        private final long expiresAt; // The System.nanoTime when this expires
+
+        private Entry(Notices notices, long expiresAt) {
+            this.notices = notices;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
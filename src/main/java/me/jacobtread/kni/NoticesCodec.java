@@ -0,0 +1,569 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of {@link Notices} snapshots which can be decoded
+ * far faster than the KAMAR XML and round trips every value exactly
+ * <pre>
+ * magic        4 bytes "KNIC"
+ * version      1 byte
+ * length       varint (the number of bytes after this)
+ * flags        1 byte (1 = has an error message)
+ * date         string
+ * error        string (only with the error flag, nothing follows it)
+ * stringCount  varint
+ * strings      string * stringCount (every distinct notice value)
+ * noticeCount  varint
+ * notices      notice * noticeCount
+ *
+ * string       varint UTF-8 length, UTF-8 bytes
+ * notice       1 byte level ordinal (| 0x10 for meeting notices), zigzag varint index,
+ *              varint string ids of the subject, body and teacher (and then the
+ *              place, date and time of meeting notices) where 0 is null and
+ *              1 is the first string in the table
+ * </pre>
+ * Varints are unsigned LEB128 (7 bits per byte, least significant first)
+ */
+public class NoticesCodec {
+
+    public static final int MAGIC = 0x4B4E4943; // The magic number "KNIC" at the start of every encoding
+    public static final int VERSION = 1; // The version of the encoding
+    private static final int HEADER_SIZE = 5; // magic(4) version(1) followed by the varint length
+    private static final int FLAG_ERROR = 1; // Set when the snapshot contains an error message instead of notices
+    private static final int MEETING_FLAG = 0x10; // Set on the level of meeting notices
+    private static final int MAX_VARINT_SIZE = 5;
+    private static final int MAX_LENGTH = 64 * 1024 * 1024; // Anything longer can only be a corrupt length
+    private static final Notice.Level[] LEVELS = Notice.Level.values();
+    // The buffer used to write to channels, direct so it is not copied again by the channel
+    private static final ThreadLocal<ByteBuffer> WRITE_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(16 * 1024));
+
+    private NoticesCodec() {
+    }
+
+    /**
+     * @param notices The notices to encode
+     * @return The exact number of bytes the notices will be encoded as
+     */
+    public static int encodedLength(Notices notices) {
+        return new Encoder(notices).length();
+    }
+
+    /**
+     * @param notices The notices to encode
+     * @return The encoded notices
+     */
+    public static byte[] encode(Notices notices) {
+        Encoder encoder = new Encoder(notices);
+        ByteBuffer buffer = ByteBuffer.allocate(encoder.length());
+        encoder.write(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes notices into a buffer starting at its position
+     *
+     * @param notices The notices to encode
+     * @param buffer  The buffer to encode into (its position is moved past the encoded notices)
+     * @throws BufferOverflowException Thrown if there is not enough space remaining in the buffer
+     *                                 (see {@link NoticesCodec#encodedLength(Notices)}), nothing is written
+     */
+    public static void encode(Notices notices, ByteBuffer buffer) {
+        Encoder encoder = new Encoder(notices);
+        if (buffer.remaining() < encoder.length()) {
+            throw new BufferOverflowException();
+        }
+        encoder.write(buffer);
+    }
+
+    /**
+     * Encodes notices to a channel in chunks so the whole encoding
+     * is never held in memory
+     *
+     * @param notices The notices to encode
+     * @param channel The channel to write to
+     * @throws IOException Thrown if the channel could not be written to
+     */
+    public static void encode(Notices notices, WritableByteChannel channel) throws IOException {
+        Encoder encoder = new Encoder(notices);
+        ByteBuffer buffer = WRITE_BUFFER.get();
+        buffer.clear();
+        encoder.write(buffer, channel);
+        buffer.flip();
+        writeFully(buffer, channel);
+    }
+
+    /**
+     * @param bytes The encoded notices
+     * @return The decoded notices
+     * @throws IOException Thrown if the bytes are not encoded notices or are truncated
+     */
+    public static Notices decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * @param buffer The buffer to decode from (its position is moved past the encoded notices)
+     * @return The decoded notices
+     * @throws IOException Thrown if the buffer does not contain encoded notices or they are truncated
+     */
+    public static Notices decode(ByteBuffer buffer) throws IOException {
+        return decode(buffer, null);
+    }
+
+    /**
+     * Decodes notices from a buffer, when the buffer is backed by an array
+     * the strings are decoded straight from the array without copying
+     *
+     * @param buffer The buffer to decode from (its position is moved past the encoded notices)
+     * @param pool   The pool to deduplicate the decoded values with (null to not deduplicate)
+     * @return The decoded notices
+     * @throws IOException Thrown if the buffer does not contain encoded notices or they are truncated
+     */
+    public static Notices decode(ByteBuffer buffer, NoticePool pool) throws IOException {
+        try {
+            readHeader(buffer);
+            int length = getLength(buffer);
+            if (length > buffer.remaining()) {
+                throw new EOFException("KNI: Truncated notices encoding");
+            }
+            int end = buffer.position() + length;
+            Notices notices = decodePayload(buffer, pool);
+            if (buffer.position() != end) {
+                throw new IOException("KNI: Invalid notices encoding length");
+            }
+            return notices;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new EOFException("KNI: Truncated notices encoding");
+        }
+    }
+
+    /**
+     * Decodes the next notices from a channel, only the bytes of the
+     * encoded notices are read so the channel can contain more after them
+     *
+     * @param channel The channel to read from
+     * @param pool    The pool to deduplicate the decoded values with (null to not deduplicate)
+     * @return The decoded notices or null if the channel had already reached its end
+     * @throws IOException Thrown if the channel could not be read or does not contain encoded notices
+     */
+    public static Notices decode(ReadableByteChannel channel, NoticePool pool) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + MAX_VARINT_SIZE);
+        header.limit(HEADER_SIZE);
+        if (!readFully(header, channel, true)) {
+            return null;
+        }
+        // Checked before anything is allocated for the notices
+        header.flip();
+        readHeader(header);
+        header.limit(HEADER_SIZE);
+        // The varint is read a byte at a time so nothing after the notices is read
+        int value;
+        do {
+            if (!header.hasRemaining() && header.limit() == header.capacity()) {
+                throw new IOException("KNI: Invalid notices encoding length");
+            }
+            header.limit(header.position() + 1);
+            readFully(header, channel, false);
+            value = header.get(header.position() - 1);
+        } while ((value & 0x80) != 0);
+        header.flip();
+        int headerLength = header.remaining();
+        header.position(HEADER_SIZE);
+        int length = getLength(header);
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + length);
+        header.position(0);
+        buffer.put(header);
+        readFully(buffer, channel, false);
+        buffer.flip();
+        return decode(buffer, pool);
+    }
+
+    private static void readHeader(ByteBuffer buffer) throws IOException {
+        // Read byte by byte so the byte order of the buffer doesn't matter
+        int magic = (buffer.get() & 0xFF) << 24 | (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+        if (magic != MAGIC) {
+            throw new IOException("KNI: Not encoded notices");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("KNI: Unsupported notices encoding version " + version);
+        }
+    }
+
+    private static Notices decodePayload(ByteBuffer buffer, NoticePool pool) throws IOException {
+        int flags = buffer.get() & 0xFF;
+        Notices notices = new Notices(getString(buffer));
+        if ((flags & FLAG_ERROR) != 0) {
+            notices.setErrorMessage(getString(buffer));
+            return notices;
+        }
+        int stringCount = getCount(buffer, 1);
+        String[] strings = new String[stringCount + 1]; // Id 0 is null
+        for (int i = 1; i <= stringCount; i++) {
+            String value = getString(buffer);
+            strings[i] = pool != null ? pool.intern(value) : value;
+        }
+        // The smallest notice is a level, index and three string ids
+        int noticeCount = getCount(buffer, 5);
+        List<Notice> noticeList = new ArrayList<>(noticeCount);
+        for (int i = 0; i < noticeCount; i++) {
+            int levelValue = buffer.get() & 0xFF;
+            int levelOrdinal = levelValue & ~MEETING_FLAG;
+            if (levelOrdinal >= LEVELS.length) {
+                throw new IOException("KNI: Invalid notice level " + levelOrdinal);
+            }
+            Notice.Level level = LEVELS[levelOrdinal];
+            int varint = getVarint(buffer);
+            int index = (varint >>> 1) ^ -(varint & 1);
+            String subject = strings[getId(buffer, stringCount)];
+            String body = strings[getId(buffer, stringCount)];
+            String teacher = strings[getId(buffer, stringCount)];
+            Notice notice;
+            if ((levelValue & MEETING_FLAG) != 0) {
+                notice = new MeetingNotice(index, level, subject, body, teacher,
+                        strings[getId(buffer, stringCount)],
+                        strings[getId(buffer, stringCount)],
+                        strings[getId(buffer, stringCount)]);
+            } else {
+                notice = new Notice(index, level, subject, body, teacher);
+            }
+            noticeList.add(pool != null ? pool.intern(notice) : notice);
+        }
+        notices.setNotices(noticeList);
+        return notices;
+    }
+
+    /**
+     * Reads a count checking it against the remaining bytes so
+     * corrupt data can't cause huge allocations
+     *
+     * @param buffer  The buffer to read from
+     * @param minSize The smallest number of bytes each counted value can take
+     * @return The count
+     * @throws IOException Thrown if the count is larger than the remaining bytes allow
+     */
+    private static int getCount(ByteBuffer buffer, int minSize) throws IOException {
+        int count = getVarint(buffer);
+        if (count < 0 || (long) count * minSize > buffer.remaining()) {
+            throw new EOFException("KNI: Truncated notices encoding");
+        }
+        return count;
+    }
+
+    private static int getId(ByteBuffer buffer, int stringCount) throws IOException {
+        int id = getVarint(buffer);
+        if (id < 0 || id > stringCount) {
+            throw new IOException("KNI: Invalid string id " + id);
+        }
+        return id;
+    }
+
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("KNI: Invalid varint");
+    }
+
+    private static int getLength(ByteBuffer buffer) throws IOException {
+        int length = getVarint(buffer);
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("KNI: Invalid notices encoding length " + length);
+        }
+        return length;
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = getCount(buffer, 1);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Fills a buffer from a channel
+     *
+     * @param buffer  The buffer to fill
+     * @param channel The channel to read from
+     * @param isStart Whether this is the start of the notices (reaching the end is allowed before any bytes are read)
+     * @return False if the end was reached at the start of the notices
+     * @throws IOException Thrown if the channel could not be read or ended part way through the notices
+     */
+    private static boolean readFully(ByteBuffer buffer, ReadableByteChannel channel, boolean isStart) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (isStart && buffer.position() == start) {
+                    return false;
+                }
+                throw new EOFException("KNI: Truncated notices encoding");
+            }
+        }
+        return true;
+    }
+
+    private static void writeFully(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @param value The string to measure
+     * @return The number of bytes the string is encoded as by {@link String#getBytes(java.nio.charset.Charset)}
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    // Unpaired surrogates are replaced with '?'
+                    length++;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes one snapshot, the string table and the length of the
+     * encoding are worked out up front so the length can be written first
+     */
+    private static class Encoder {
+
+        private final Notices notices;
+        private final List<Notice> noticeList;
+        private final List<String> strings = new ArrayList<>(); // The string table
+        private final int[] stringLengths; // The UTF-8 length of each string in the table
+        private final int[] ids; // The string ids of each notice (6 for each notice)
+        private final int payloadLength;
+        private ByteBuffer buffer;
+        private WritableByteChannel channel; // The channel the buffer is flushed to (null if it can't be)
+
+        private Encoder(Notices notices) {
+            this.notices = notices;
+            boolean isError = notices.getErrorMessage() != null;
+            this.noticeList = isError || notices.getNotices() == null ? List.of() : notices.getNotices();
+            Map<String, Integer> stringIds = new HashMap<>();
+            this.ids = new int[noticeList.size() * 6];
+            for (int i = 0; i < noticeList.size(); i++) {
+                Notice notice = noticeList.get(i);
+                int offset = i * 6;
+                ids[offset] = id(stringIds, notice.getSubject());
+                ids[offset + 1] = id(stringIds, notice.getBody());
+                ids[offset + 2] = id(stringIds, notice.getTeacher());
+                if (notice.isMeeting()) {
+                    MeetingNotice meeting = (MeetingNotice) notice;
+                    ids[offset + 3] = id(stringIds, meeting.getPlace());
+                    ids[offset + 4] = id(stringIds, meeting.getDate());
+                    ids[offset + 5] = id(stringIds, meeting.getTime());
+                }
+            }
+            int length = 1 + stringSize(utf8Length(notices.getDate()));
+            if (isError) {
+                length += stringSize(utf8Length(notices.getErrorMessage()));
+                stringLengths = new int[0];
+            } else {
+                stringLengths = new int[strings.size()];
+                length += varintSize(strings.size());
+                for (int i = 0; i < strings.size(); i++) {
+                    stringLengths[i] = utf8Length(strings.get(i));
+                    length += stringSize(stringLengths[i]);
+                }
+                length += varintSize(noticeList.size());
+                for (int i = 0; i < noticeList.size(); i++) {
+                    Notice notice = noticeList.get(i);
+                    length += 1 + varintSize(zigzag(notice.getIndex()));
+                    int idCount = notice.isMeeting() ? 6 : 3;
+                    for (int j = 0; j < idCount; j++) {
+                        length += varintSize(ids[i * 6 + j]);
+                    }
+                }
+            }
+            this.payloadLength = length;
+        }
+
+        private int id(Map<String, Integer> stringIds, String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                strings.add(value);
+                id = strings.size();
+                stringIds.put(value, id);
+            }
+            return id;
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+        private static int stringSize(int utf8Length) {
+            return varintSize(utf8Length) + utf8Length;
+        }
+
+        private int length() {
+            return HEADER_SIZE + varintSize(payloadLength) + payloadLength;
+        }
+
+        /**
+         * Writes to a buffer which has enough space for the whole encoding
+         *
+         * @param buffer The buffer to write to
+         */
+        private void write(ByteBuffer buffer) {
+            try {
+                write(buffer, null);
+            } catch (IOException e) {
+                // Only flushing to a channel can fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @param buffer  The buffer to write to
+         * @param channel The channel to flush the buffer to once full (null if the buffer has enough space)
+         * @throws IOException Thrown if the buffer could not be flushed to the channel
+         */
+        private void write(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+            this.buffer = buffer;
+            this.channel = channel;
+            ensure(HEADER_SIZE + MAX_VARINT_SIZE + 1);
+            buffer.put((byte) (MAGIC >>> 24)).put((byte) (MAGIC >>> 16)).put((byte) (MAGIC >>> 8)).put((byte) MAGIC);
+            buffer.put((byte) VERSION);
+            putVarint(payloadLength);
+            String errorMessage = notices.getErrorMessage();
+            buffer.put((byte) (errorMessage != null ? FLAG_ERROR : 0));
+            putString(notices.getDate(), utf8Length(notices.getDate()));
+            if (errorMessage != null) {
+                putString(errorMessage, utf8Length(errorMessage));
+                return;
+            }
+            putVarint(strings.size());
+            for (int i = 0; i < strings.size(); i++) {
+                putString(strings.get(i), stringLengths[i]);
+            }
+            putVarint(noticeList.size());
+            for (int i = 0; i < noticeList.size(); i++) {
+                Notice notice = noticeList.get(i);
+                ensure(1 + MAX_VARINT_SIZE * 7);
+                buffer.put((byte) (notice.getLevel().ordinal() | (notice.isMeeting() ? MEETING_FLAG : 0)));
+                putVarint(zigzag(notice.getIndex()));
+                int idCount = notice.isMeeting() ? 6 : 3;
+                for (int j = 0; j < idCount; j++) {
+                    putVarint(ids[i * 6 + j]);
+                }
+            }
+        }
+
+        /**
+         * Makes sure there is space for some bytes in the buffer
+         * flushing it to the channel if there isn't
+         *
+         * @param bytes The number of bytes that need to fit
+         * @throws IOException Thrown if the buffer could not be flushed
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes || channel == null) {
+                return;
+            }
+            buffer.flip();
+            writeFully(buffer, channel);
+            buffer.clear();
+        }
+
+        private void putVarint(int value) throws IOException {
+            ensure(MAX_VARINT_SIZE);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        /**
+         * Writes a string encoding it straight into the buffer
+         *
+         * @param value      The string to write
+         * @param utf8Length The UTF-8 length of the string
+         * @throws IOException Thrown if the buffer could not be flushed
+         */
+        private void putString(String value, int utf8Length) throws IOException {
+            putVarint(utf8Length);
+            for (int i = 0; i < value.length(); i++) {
+                ensure(4);
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                        buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                        buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                    } else {
+                        buffer.put((byte) '?');
+                    }
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+    }
+
+}
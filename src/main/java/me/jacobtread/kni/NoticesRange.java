@@ -0,0 +1,130 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The notices retrieved for a range of dates, notices that are posted
+ * for more than one day in the range only appear once in the merged
+ * list returned by {@link NoticesRange#getNotices()}
+ */
+public class NoticesRange {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final NavigableMap<LocalDate, Notices> days = new TreeMap<>();
+    private final NavigableMap<LocalDate, Throwable> failures = new TreeMap<>();
+    private List<Notice> notices;
+
+    /**
+     * @param from The first date of the range
+     * @param to   The last date of the range (inclusive)
+     */
+    NoticesRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Stores the outcome of retrieving the notices for a single day
+     *
+     * @param date    The date the notices were retrieved for
+     * @param notices The retrieved notices (null if the retrieval failed)
+     * @param error   The reason the retrieval failed (null if it succeeded)
+     */
+    synchronized void add(LocalDate date, Notices notices, Throwable error) {
+        if (error != null) {
+            // Unwrap the exception thrown by the request itself
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            failures.put(date, error);
+        } else {
+            days.put(date, notices);
+        }
+    }
+
+    /**
+     * Merges the notices of every successful day in date order
+     * removing any notices that are repeated across days
+     */
+    synchronized void complete() {
+        Set<Notice> merged = new LinkedHashSet<>();
+        for (Notices dayNotices : days.values()) {
+            List<Notice> noticeList = dayNotices.getNotices();
+            if (noticeList != null) {
+                merged.addAll(noticeList);
+            }
+        }
+        notices = Collections.unmodifiableList(new ArrayList<>(merged));
+    }
+
+    /**
+     * @return The first date of the range
+     */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /**
+     * @return The last date of the range (inclusive)
+     */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * Get the notices of every day in the range without duplicates
+     *
+     * @return A list of the notices in date order
+     */
+    public synchronized List<Notice> getNotices() {
+        return notices;
+    }
+
+    /**
+     * Get the notices objects of each day that was retrieved without failing,
+     * these may still contain an error message from KAMAR
+     *
+     * @return The notices of each day ordered by date
+     */
+    public synchronized Map<LocalDate, Notices> getDays() {
+        return Collections.unmodifiableNavigableMap(days);
+    }
+
+    /**
+     * Get the reason each failed day could not be retrieved
+     *
+     * @return The exception of each failed day ordered by date
+     */
+    public synchronized Map<LocalDate, Throwable> getFailures() {
+        return Collections.unmodifiableNavigableMap(failures);
+    }
+
+    /**
+     * @return Whether or not every day in the range was retrieved
+     */
+    public synchronized boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NoticesRange{" +
+                "from=" + from +
+                ", to=" + to +
+                ", notices=" + notices +
+                ", failures=" + failures.keySet() +
+                '}';
+    }
+}
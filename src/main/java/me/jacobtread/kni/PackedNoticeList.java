@@ -0,0 +1,229 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of notices packed into a single array of the
+ * ids of their values in a {@link NoticePool} (see {@link NoticePool#pack(Notices)})
+ * <p>
+ * The notices are only created when they are accessed, as views
+ * which read their values from the packed array. Meeting notices are
+ * kept once created so their parsed schedule is reused
+ */
+class PackedNoticeList extends AbstractList<Notice> implements RandomAccess {
+
+    private static final Notice.Level[] LEVELS = Notice.Level.values();
+    private static final int MEETING_FLAG = 1 << 16; // Set on the level of meeting notices
+
+    // The offsets of the values of each notice
+    private static final int INDEX = 0;
+    private static final int LEVEL = 1;
+    private static final int SUBJECT = 2;
+    private static final int BODY = 3;
+    private static final int TEACHER = 4;
+    private static final int PLACE = 5;
+    private static final int DATE = 6;
+    private static final int TIME = 7;
+    private static final int STRIDE = 8; // The number of values stored for each notice
+
+    private final NoticePool pool; // The pool the value ids are from
+    private final int[] data; // The values of every notice (shared with views of this list)
+    private final int[] rows; // The rows of the notices in this list (null if this list has every row)
+    private final MeetingNotice[] meetings; // The meeting notices created for each row (shared with views of this list)
+    private final int size;
+
+    /**
+     * @param pool    The pool to store the values of the notices in
+     * @param notices The notices to pack
+     */
+    PackedNoticeList(NoticePool pool, List<Notice> notices) {
+        this.pool = pool;
+        this.size = notices.size();
+        this.data = new int[size * STRIDE];
+        this.rows = null;
+        this.meetings = new MeetingNotice[size];
+        for (int row = 0; row < size; row++) {
+            Notice notice = notices.get(row);
+            int offset = row * STRIDE;
+            data[offset + INDEX] = notice.getIndex();
+            data[offset + LEVEL] = notice.getLevel().ordinal() | (notice.isMeeting() ? MEETING_FLAG : 0);
+            data[offset + SUBJECT] = pool.id(notice.getSubject());
+            data[offset + BODY] = pool.id(notice.getBody());
+            data[offset + TEACHER] = pool.id(notice.getTeacher());
+            if (notice.isMeeting()) {
+                MeetingNotice meeting = (MeetingNotice) notice;
+                data[offset + PLACE] = pool.id(meeting.getPlace());
+                data[offset + DATE] = pool.id(meeting.getDate());
+                data[offset + TIME] = pool.id(meeting.getTime());
+            } else {
+                data[offset + PLACE] = -1;
+                data[offset + DATE] = -1;
+                data[offset + TIME] = -1;
+            }
+        }
+    }
+
+    private PackedNoticeList(NoticePool pool, int[] data, int[] rows, MeetingNotice[] meetings) {
+        this.pool = pool;
+        this.data = data;
+        this.rows = rows;
+        this.meetings = meetings;
+        this.size = rows.length;
+    }
+
+    /**
+     * Creates a view of some of the notices in this list without copying them
+     *
+     * @param indexes The indexes of the notices in this list
+     * @return The list of the notices at the indexes
+     */
+    PackedNoticeList view(int[] indexes) {
+        int[] viewRows = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            viewRows[i] = row(indexes[i]);
+        }
+        return new PackedNoticeList(pool, data, viewRows, meetings);
+    }
+
+    Notice.Level getLevel(int index) {
+        return LEVELS[data[row(index) * STRIDE + LEVEL] & ~MEETING_FLAG];
+    }
+
+    String getTeacher(int index) {
+        return value(row(index), TEACHER);
+    }
+
+    boolean isMeeting(int index) {
+        return (data[row(index) * STRIDE + LEVEL] & MEETING_FLAG) != 0;
+    }
+
+    private int row(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return rows == null ? index : rows[index];
+    }
+
+    private String value(int row, int field) {
+        return pool.get(data[row * STRIDE + field]);
+    }
+
+    @Override
+    public Notice get(int index) {
+        int row = row(index);
+        if (!isMeeting(index)) {
+            return new PackedNotice(row);
+        }
+        MeetingNotice meeting = meetings[row];
+        if (meeting == null) {
+            // Creating two from concurrent calls is harmless, one is kept and both read the same row
+            meeting = new PackedMeetingNotice(row);
+            meetings[row] = meeting;
+        }
+        return meeting;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A general notice which reads its values from a row of the packed array
+     */
+    private class PackedNotice extends Notice {
+
+        private final int row;
+
+        private PackedNotice(int row) {
+            super(0, null, null, null, null);
+            this.row = row;
+        }
+
+        @Override
+        public int getIndex() {
+            return data[row * STRIDE + INDEX];
+        }
+
+        @Override
+        public Level getLevel() {
+            return LEVELS[data[row * STRIDE + LEVEL] & ~MEETING_FLAG];
+        }
+
+        @Override
+        public String getSubject() {
+            return value(row, SUBJECT);
+        }
+
+        @Override
+        public String getBody() {
+            return value(row, BODY);
+        }
+
+        @Override
+        public String getTeacher() {
+            return value(row, TEACHER);
+        }
+
+    }
+
+    /**
+     * A meeting notice which reads its values from a row of the packed array
+     */
+    private class PackedMeetingNotice extends MeetingNotice {
+
+        private final int row;
+
+        private PackedMeetingNotice(int row) {
+            super(0, null, null, null, null, null, null, null);
+            this.row = row;
+        }
+
+        @Override
+        public int getIndex() {
+            return data[row * STRIDE + INDEX];
+        }
+
+        @Override
+        public Level getLevel() {
+            return LEVELS[data[row * STRIDE + LEVEL] & ~MEETING_FLAG];
+        }
+
+        @Override
+        public String getSubject() {
+            return value(row, SUBJECT);
+        }
+
+        @Override
+        public String getBody() {
+            return value(row, BODY);
+        }
+
+        @Override
+        public String getTeacher() {
+            return value(row, TEACHER);
+        }
+
+        @Override
+        public String getPlace() {
+            return value(row, PLACE);
+        }
+
+        @Override
+        public String getDate() {
+            return value(row, DATE);
+        }
+
+        @Override
+        public String getTime() {
+            return value(row, TIME);
+        }
+
+    }
+
+}
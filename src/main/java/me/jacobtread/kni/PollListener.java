@@ -0,0 +1,39 @@
+package me.jacobtread.kni;
+
+/**
+ * Listener for the polls made by a {@link PollScheduler}, called on the
+ * thread that finished the retrieval so it should return quickly
+ */
+public interface PollListener {
+
+    /**
+     * Called after each successful poll of the current date
+     *
+     * @param portal    The name the portal was added with
+     * @param notices   The retrieved notices
+     * @param isChanged Whether or not the notices are different to the previous poll of the same date
+     *                  (always true for the first poll of a date that was not prefetched)
+     */
+    default void onPolled(String portal, Notices notices, boolean isChanged) {
+    }
+
+    /**
+     * Called when the notices of the next school day have been prefetched
+     *
+     * @param portal  The name the portal was added with
+     * @param notices The retrieved notices
+     */
+    default void onPrefetched(String portal, Notices notices) {
+    }
+
+    /**
+     * Called when a poll fails, KAMAR error responses are
+     * provided as a {@link KamarErrorException}
+     *
+     * @param portal    The name the portal was added with
+     * @param exception The exception that caused the poll to fail
+     */
+    default void onError(String portal, Exception exception) {
+    }
+
+}
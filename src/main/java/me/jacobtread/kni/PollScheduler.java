@@ -0,0 +1,482 @@
+package me.jacobtread.kni;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Polls many portals each on its own interval which is learned from how often
+ * its notices change, so quiet portals are polled rarely and busy ones often
+ * <p>
+ * The change rate of each portal is estimated by comparing the notices of successive
+ * polls of the same date, decaying older observations so the rate follows the time of
+ * day. The interval aims for a fixed number of changes per poll (see
+ * {@link PollScheduler#setChangesPerPoll(double)}) bounded by the minimum and maximum
+ * intervals, it halves straight away when a change is seen and at most doubles
+ * after each quiet poll. Every delay is jittered so that portals added together
+ * drift apart instead of being polled in bursts
+ * <p>
+ * Polls are sent asynchronously so no thread is held while waiting on a portal, combine
+ * with a shared {@link HostLimiter} to bound the requests in flight. Polls always go to the
+ * portal, a {@link NoticesCache} or {@link NoticeArchive} set on the portal is not read
+ * (a cached snapshot would look unchanged) but is still updated with every response
+ */
+public class PollScheduler implements Closeable {
+
+    private static final long RATE_HALF_LIFE_NANOS = TimeUnit.HOURS.toNanos(3); // How quickly old observations are forgotten
+    private static final int MAX_BACKOFF_SHIFT = 6; // Failures back off up to 64 times the interval (bounded by the maximum interval)
+
+    private final Duration minInterval; // The shortest time between polls of a portal
+    private final Duration maxInterval; // The longest time between polls of a portal
+    private final ScheduledExecutorService scheduler; // The scheduler the polls are started on
+    private final boolean ownsScheduler; // Whether or not the scheduler should be shutdown on close
+    private final Clock clock; // The clock used for the dates to poll and the status times
+    private final Map<String, Portal> portals = new ConcurrentHashMap<>();
+    private final List<PollListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean isClosed = false;
+
+    private volatile double changesPerPoll = 0.2;
+    private volatile double jitter = 0.1;
+    private volatile LocalTime prefetchTime = LocalTime.of(17, 0);
+    private volatile Predicate<LocalDate> isSchoolDay = date -> date.getDayOfWeek() != DayOfWeek.SATURDAY
+            && date.getDayOfWeek() != DayOfWeek.SUNDAY;
+
+    /**
+     * Creates a scheduler which starts its polls on its own daemon thread
+     *
+     * @param minInterval The shortest time between polls of a portal
+     * @param maxInterval The longest time between polls of a portal
+     */
+    public PollScheduler(Duration minInterval, Duration maxInterval) {
+        this(minInterval, maxInterval, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KNI-PollScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }), Clock.systemDefaultZone(), true);
+    }
+
+    /**
+     * @param minInterval The shortest time between polls of a portal
+     * @param maxInterval The longest time between polls of a portal
+     * @param scheduler   The scheduler to start the polls on (this is not shutdown on close)
+     * @param clock       The clock used for the dates to poll and the status times
+     */
+    public PollScheduler(Duration minInterval, Duration maxInterval, ScheduledExecutorService scheduler, Clock clock) {
+        this(minInterval, maxInterval, scheduler, clock, false);
+    }
+
+    private PollScheduler(Duration minInterval, Duration maxInterval, ScheduledExecutorService scheduler, Clock clock, boolean ownsScheduler) {
+        if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("KNI: Intervals must be positive with the maximum at least the minimum");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    public void addListener(PollListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PollListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts polling a portal, the first poll is at a random time within the
+     * minimum interval so that many portals added at once are spread out
+     *
+     * @param name The name to report the portal with (such as its host)
+     * @param kni  The KNI instance of the portal
+     * @throws IllegalArgumentException Thrown if a portal with the same name was already added
+     */
+    public void addPortal(String name, KNI kni) {
+        Portal portal = new Portal(name, kni, minInterval.toNanos());
+        if (portals.putIfAbsent(name, portal) != null) {
+            throw new IllegalArgumentException("KNI: Portal " + name + " was already added");
+        }
+        long delay = ThreadLocalRandom.current().nextLong(minInterval.toNanos());
+        synchronized (portal) {
+            schedule(portal, delay);
+        }
+    }
+
+    /**
+     * Stops polling a portal, a poll that is in flight still completes
+     * but its result is not reported
+     *
+     * @param name The name the portal was added with
+     * @return Whether or not the portal was being polled
+     */
+    public boolean removePortal(String name) {
+        Portal portal = portals.remove(name);
+        if (portal == null) {
+            return false;
+        }
+        synchronized (portal) {
+            portal.isRemoved = true;
+            if (portal.task != null) {
+                portal.task.cancel(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops polling every portal and shuts down the scheduler
+     * if it was created by this poll scheduler
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        for (String name : new ArrayList<>(portals.keySet())) {
+            removePortal(name);
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Schedules the next poll of a portal, must hold the lock of the portal
+     *
+     * @param portal     The portal to poll
+     * @param delayNanos The time until the poll
+     */
+    private void schedule(Portal portal, long delayNanos) {
+        if (isClosed || portal.isRemoved) {
+            return;
+        }
+        portal.nextPoll = clock.instant().plusNanos(delayNanos);
+        try {
+            portal.task = scheduler.schedule(() -> poll(portal), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shutdown so polling stops
+            portal.nextPoll = null;
+        }
+    }
+
+    /**
+     * Starts a poll of the current date, and the next school
+     * day when it is due to be prefetched
+     *
+     * @param portal The portal to poll
+     */
+    private void poll(Portal portal) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDate today = now.toLocalDate();
+        LocalDate prefetchDate = null;
+        synchronized (portal) {
+            if (isClosed || portal.isRemoved) {
+                return;
+            }
+            portal.nextPoll = null;
+            LocalTime prefetchTime = this.prefetchTime;
+            if (prefetchTime != null && !now.toLocalTime().isBefore(prefetchTime)) {
+                LocalDate next = nextSchoolDay(today);
+                if (!next.equals(portal.prefetchedDate)) {
+                    // Marked before the request so it is only prefetched once
+                    portal.prefetchedDate = next;
+                    portal.prefetched = null;
+                    prefetchDate = next;
+                }
+            }
+        }
+        portal.kni.refreshAsync(KNI.DATE_FORMATTER.format(today)).whenComplete((notices, error) -> completePoll(portal, today, notices, error));
+        if (prefetchDate != null) {
+            LocalDate date = prefetchDate;
+            portal.kni.refreshAsync(KNI.DATE_FORMATTER.format(date)).whenComplete((notices, error) -> completePrefetch(portal, date, notices, error));
+        }
+    }
+
+    /**
+     * @param date The current date
+     * @return The first school day after the date
+     */
+    private LocalDate nextSchoolDay(LocalDate date) {
+        Predicate<LocalDate> isSchoolDay = this.isSchoolDay;
+        LocalDate next = date.plusDays(1);
+        // Bounded so a predicate that rejects every day can't loop forever
+        for (int i = 0; i < 366 && !isSchoolDay.test(next); i++) {
+            next = next.plusDays(1);
+        }
+        return next;
+    }
+
+    /**
+     * Updates the change rate of a portal with the result of a poll, reports
+     * it to the listeners and schedules the next poll
+     */
+    private void completePoll(Portal portal, LocalDate date, Notices notices, Throwable error) {
+        Exception failure = getFailure(date, notices, error);
+        boolean isChanged = false;
+        synchronized (portal) {
+            if (portal.isRemoved) {
+                return;
+            }
+            Instant now = clock.instant();
+            portal.lastPoll = now;
+            portal.polls++;
+            if (failure != null) {
+                portal.failures++;
+                portal.consecutiveFailures++;
+                portal.lastError = failure;
+            } else {
+                portal.consecutiveFailures = 0;
+                // The first poll of a new date compares against its prefetched notices
+                Notices previous = date.equals(portal.date) ? portal.notices
+                        : date.equals(portal.prefetchedDate) ? portal.prefetched : null;
+                isChanged = previous == null || !previous.getNotices().equals(notices.getNotices());
+                if (previous != null) {
+                    Instant since = date.equals(portal.date) ? portal.lastObserved : portal.prefetchedAt;
+                    portal.observe(isChanged, Duration.between(since, now).toNanos(), minInterval.toNanos(), maxInterval.toNanos(), changesPerPoll);
+                }
+                if (isChanged) {
+                    portal.changes++;
+                    portal.lastChange = now;
+                }
+                portal.date = date;
+                portal.notices = notices;
+                portal.lastObserved = now;
+            }
+        }
+        for (PollListener listener : listeners) {
+            try {
+                if (failure != null) {
+                    listener.onError(portal.name, failure);
+                } else {
+                    listener.onPolled(portal.name, notices, isChanged);
+                }
+            } catch (RuntimeException ignored) {
+                // A broken listener should never stop the portal being polled
+            }
+        }
+        // Scheduled after the listeners so the next poll never overlaps them
+        synchronized (portal) {
+            schedule(portal, jitter(portal.getDelay(maxInterval.toNanos())));
+        }
+    }
+
+    private void completePrefetch(Portal portal, LocalDate date, Notices notices, Throwable error) {
+        Exception failure = getFailure(date, notices, error);
+        synchronized (portal) {
+            if (portal.isRemoved || !date.equals(portal.prefetchedDate)) {
+                return;
+            }
+            if (failure != null) {
+                portal.failures++;
+                portal.lastError = failure;
+                // Prefetched again by the next poll
+                portal.prefetchedDate = null;
+            } else {
+                portal.prefetched = notices;
+                portal.prefetchedAt = clock.instant();
+            }
+        }
+        for (PollListener listener : listeners) {
+            try {
+                if (failure != null) {
+                    listener.onError(portal.name, failure);
+                } else {
+                    listener.onPrefetched(portal.name, notices);
+                }
+            } catch (RuntimeException ignored) {
+                // A broken listener should never stop the portal being polled
+            }
+        }
+    }
+
+    /**
+     * @param date    The date that was polled
+     * @param notices The retrieved notices (null if the retrieval failed)
+     * @param error   The cause of the failed retrieval (null if it succeeded)
+     * @return The cause of the failure or null if the notices were retrieved
+     */
+    private static Exception getFailure(LocalDate date, Notices notices, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+        }
+        if (notices.getErrorMessage() != null) {
+            return new KamarErrorException(KNI.DATE_FORMATTER.format(date), notices.getErrorMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @param delayNanos The delay to jitter
+     * @return The delay moved randomly by up to the jitter fraction either way
+     */
+    private long jitter(long delayNanos) {
+        double jitter = this.jitter;
+        if (jitter <= 0) {
+            return delayNanos;
+        }
+        return (long) (delayNanos * (1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter)));
+    }
+
+    /**
+     * @param name The name the portal was added with
+     * @return The status of the portal or null if there is no portal with the name
+     */
+    public PortalStatus getStatus(String name) {
+        Portal portal = portals.get(name);
+        return portal == null ? null : portal.getStatus();
+    }
+
+    /**
+     * @return The status of every portal
+     */
+    public List<PortalStatus> getStatuses() {
+        List<PortalStatus> statuses = new ArrayList<>(portals.size());
+        for (Portal portal : portals.values()) {
+            statuses.add(portal.getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * Sets the number of changes each poll should expect to find, lower values
+     * poll more often so changes are seen sooner (defaults to 0.2)
+     *
+     * @param changesPerPoll The expected number of changes between polls
+     */
+    public void setChangesPerPoll(double changesPerPoll) {
+        if (changesPerPoll <= 0) {
+            throw new IllegalArgumentException("KNI: Changes per poll must be positive");
+        }
+        this.changesPerPoll = changesPerPoll;
+    }
+
+    /**
+     * @param jitter The fraction each delay is randomly moved by either way (defaults to 0.1, 0 for none)
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("KNI: Jitter must be at least 0 and less than 1");
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * Sets the time of day from which the notices of the next school day are
+     * prefetched, once for each portal by its first poll after the time.
+     * With a {@link NoticesCache} set on the portal the morning's retrievals
+     * are then served from the cache until the first poll of the day refreshes
+     * it, and that poll compares against the prefetched notices so any changes
+     * made overnight are reported (defaults to 17:00)
+     *
+     * @param prefetchTime The time of day to prefetch from or null to never prefetch
+     */
+    public void setPrefetchTime(LocalTime prefetchTime) {
+        this.prefetchTime = prefetchTime;
+    }
+
+    /**
+     * @param isSchoolDay Tests whether a date is a school day, such as to skip
+     *                    holidays (defaults to Monday to Friday)
+     */
+    public void setSchoolDays(Predicate<LocalDate> isSchoolDay) {
+        this.isSchoolDay = isSchoolDay;
+    }
+
+    /**
+     * The polling state of a single portal, guarded by its own lock
+     */
+    private static class Portal {
+
+        private final String name;
+        private final KNI kni;
+        private long intervalNanos; // The learned time between polls
+        private double changeWeight = 0; // The decayed number of changes seen
+        private double timeWeight = 0; // The decayed time observed in nanoseconds
+        private long polls = 0;
+        private long changes = 0;
+        private long failures = 0;
+        private int consecutiveFailures = 0;
+        private Exception lastError;
+        private Instant lastPoll;
+        private Instant lastChange;
+        private Instant nextPoll;
+        private LocalDate date; // The date of the last notices
+        private Notices notices; // The last notices (null until the first successful poll)
+        private Instant lastObserved; // When the last notices were retrieved
+        private LocalDate prefetchedDate; // The school day prefetched or being prefetched
+        private Notices prefetched; // The prefetched notices (null until retrieved)
+        private Instant prefetchedAt; // When the prefetched notices were retrieved
+        private ScheduledFuture<?> task; // The next scheduled poll
+        private boolean isRemoved = false;
+
+        private Portal(String name, KNI kni, long intervalNanos) {
+            this.name = name;
+            this.kni = kni;
+            this.intervalNanos = intervalNanos;
+        }
+
+        /**
+         * Adds an observation to the change rate and updates the interval
+         *
+         * @param isChanged      Whether or not the notices changed
+         * @param elapsedNanos   The time since the notices were last retrieved
+         * @param minNanos       The shortest interval
+         * @param maxNanos       The longest interval
+         * @param changesPerPoll The expected number of changes between polls
+         */
+        private void observe(boolean isChanged, long elapsedNanos, long minNanos, long maxNanos, double changesPerPoll) {
+            elapsedNanos = Math.max(1, elapsedNanos);
+            double decay = Math.pow(0.5, (double) elapsedNanos / RATE_HALF_LIFE_NANOS);
+            changeWeight = changeWeight * decay + (isChanged ? 1 : 0);
+            timeWeight = timeWeight * decay + elapsedNanos;
+            double rate = changeWeight / timeWeight; // Changes per nanosecond
+            long target = rate > 0 ? (long) Math.min(maxNanos, changesPerPoll / rate) : maxNanos;
+            long interval;
+            if (isChanged) {
+                // React to activity straight away rather than waiting for the rate to catch up
+                interval = Math.min(target, intervalNanos / 2);
+            } else {
+                interval = Math.min(target, intervalNanos * 2);
+            }
+            intervalNanos = Math.max(minNanos, Math.min(maxNanos, interval));
+        }
+
+        /**
+         * @param maxNanos The longest interval
+         * @return The delay until the next poll before jitter, backed off after failures
+         */
+        private long getDelay(long maxNanos) {
+            if (consecutiveFailures == 0) {
+                return intervalNanos;
+            }
+            int shift = Math.min(MAX_BACKOFF_SHIFT, consecutiveFailures);
+            return Math.max(intervalNanos, Math.min(maxNanos, intervalNanos << shift));
+        }
+
+        private synchronized PortalStatus getStatus() {
+            double changesPerHour = timeWeight > 0 ? changeWeight / timeWeight * TimeUnit.HOURS.toNanos(1) : 0;
+            return new PortalStatus(name, Duration.ofNanos(intervalNanos), changesPerHour, lastPoll, lastChange, nextPoll,
+                    prefetched == null ? null : prefetchedDate, polls, changes, failures, lastError);
+        }
+
+    }
+
+}
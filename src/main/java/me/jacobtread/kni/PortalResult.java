@@ -0,0 +1,60 @@
+package me.jacobtread.kni;
+
+/**
+ * The outcome of retrieving the notices of a single portal
+ * as part of a {@link MultiKNI} retrieval
+ */
+public class PortalResult {
+
+    private final String host;
+    private final Notices notices;
+    private final Exception exception;
+
+    /**
+     * @param host The host of the portal this result is for
+     * @param notices The retrieved notices (null if the retrieval failed)
+     * @param exception The exception that caused the retrieval to fail (null if it succeeded)
+     */
+    PortalResult(String host, Notices notices, Exception exception) {
+        this.host = host;
+        this.notices = notices;
+        this.exception = exception;
+    }
+
+    /**
+     * @return The host of the portal this result is for
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return The retrieved notices or null if the retrieval failed
+     */
+    public Notices getNotices() {
+        return notices;
+    }
+
+    /**
+     * @return The exception that caused the retrieval to fail or null if it succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * @return Whether or not the notices were retrieved without an exception
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PortalResult{" +
+                "host='" + host + '\'' +
+                ", notices=" + notices +
+                ", exception=" + exception +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package me.jacobtread.kni;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A snapshot of the polling state of a single portal in a {@link PollScheduler}
+ */
+public class PortalStatus {
+
+    private final String portal; // The name the portal was added with
+    private final Duration interval; // The learned time between polls
+    private final double changesPerHour; // The learned rate the notices change at
+    private final Instant lastPoll; // When the last poll finished (null if never polled)
+    private final Instant lastChange; // When the last change was seen (null if never)
+    private final Instant nextPoll; // When the next poll is due (null while a poll is in flight)
+    private final LocalDate prefetchedDate; // The school day last prefetched (null if none)
+    private final long polls;
+    private final long changes;
+    private final long failures;
+    private final Exception lastError; // The cause of the last failed poll (null if none)
+
+    PortalStatus(String portal, Duration interval, double changesPerHour, Instant lastPoll, Instant lastChange, Instant nextPoll,
+                 LocalDate prefetchedDate, long polls, long changes, long failures, Exception lastError) {
+        this.portal = portal;
+        this.interval = interval;
+        this.changesPerHour = changesPerHour;
+        this.lastPoll = lastPoll;
+        this.lastChange = lastChange;
+        this.nextPoll = nextPoll;
+        this.prefetchedDate = prefetchedDate;
+        this.polls = polls;
+        this.changes = changes;
+        this.failures = failures;
+        this.lastError = lastError;
+    }
+
+    /**
+     * @return The name the portal was added with
+     */
+    public String getPortal() {
+        return portal;
+    }
+
+    /**
+     * @return The learned time between polls before jitter and failure backoff
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The learned rate the notices change at in changes per hour
+     */
+    public double getChangesPerHour() {
+        return changesPerHour;
+    }
+
+    /**
+     * @return When the last poll finished (null if the portal has not been polled)
+     */
+    public Instant getLastPoll() {
+        return lastPoll;
+    }
+
+    /**
+     * @return When a change to the notices was last seen (null if none has been seen)
+     */
+    public Instant getLastChange() {
+        return lastChange;
+    }
+
+    /**
+     * @return When the next poll is due (null while a poll is in flight)
+     */
+    public Instant getNextPoll() {
+        return nextPoll;
+    }
+
+    /**
+     * @return The school day whose notices were last prefetched (null if none)
+     */
+    public LocalDate getPrefetchedDate() {
+        return prefetchedDate;
+    }
+
+    /**
+     * @return The number of polls that finished
+     */
+    public long getPolls() {
+        return polls;
+    }
+
+    /**
+     * @return The number of polls that found changed notices
+     */
+    public long getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return The number of polls that failed or that KAMAR responded to with an error
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return The cause of the last failed poll (null if no poll has failed)
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return "PortalStatus{" +
+                "portal='" + portal + '\'' +
+                ", interval=" + interval +
+                ", changesPerHour=" + changesPerHour +
+                ", lastPoll=" + lastPoll +
+                ", lastChange=" + lastChange +
+                ", nextPoll=" + nextPoll +
+                ", prefetchedDate=" + prefetchedDate +
+                ", polls=" + polls +
+                ", changes=" + changes +
+                ", failures=" + failures +
+                ", lastError=" + lastError +
+                '}';
+    }
+}
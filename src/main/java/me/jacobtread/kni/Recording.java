@@ -0,0 +1,163 @@
+package me.jacobtread.kni;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A KAMAR response recorded by a {@link ResponseRecorder}
+ * <p>
+ * Each recording is a file with a short text header followed by
+ * a blank line and then the response body as it was read by the parser,
+ * after any Content-Encoding (e.g. gzip) was decoded
+ * <pre>
+ * KNI-Recording: 1
+ * Url: https://portal.your.school.nz/api/api.php
+ * Date: 01/01/2020
+ * Recorded: 2020-01-01T08:00:00Z
+ *
+ * &lt;?xml version="1.0" ...
+ * </pre>
+ */
+public class Recording {
+
+    static final String EXTENSION = ".kamar"; // The file extension of recordings
+    private static final String MAGIC = "KNI-Recording: 1"; // The first line of every recording
+    private static final int MAX_HEADER_LENGTH = 8192;
+
+    private final String url;
+    private final String date;
+    private final Instant recordedAt;
+    private final byte[] body;
+
+    Recording(String url, String date, Instant recordedAt, byte[] body) {
+        this.url = url;
+        this.date = date;
+        this.recordedAt = recordedAt;
+        this.body = body;
+    }
+
+    /**
+     * Writes the header of a recording
+     *
+     * @param outputStream The stream to write to
+     * @param url          The url the response was retrieved from
+     * @param date         The raw date string the response was for
+     * @param recordedAt   When the response was retrieved
+     * @throws IOException Thrown if the header could not be written
+     */
+    static void writeHeader(OutputStream outputStream, String url, String date, Instant recordedAt) throws IOException {
+        String header = MAGIC + '\n' +
+                "Url: " + url + '\n' +
+                "Date: " + date + '\n' +
+                "Recorded: " + recordedAt + '\n' +
+                '\n';
+        outputStream.write(header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a recording from a file
+     *
+     * @param path The path of the recording
+     * @return The recording
+     * @throws IOException Thrown if the file could not be read or is not a recording
+     */
+    public static Recording read(Path path) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+            // The header ends at the first blank line
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            int previous = -1;
+            int value;
+            while ((value = inputStream.read()) != -1) {
+                if (value == '\n' && previous == '\n') {
+                    break;
+                }
+                if (header.size() >= MAX_HEADER_LENGTH) {
+                    throw new IOException("Recording header is too long: " + path);
+                }
+                header.write(value);
+                previous = value;
+            }
+            if (value == -1) {
+                throw new IOException("Recording has no body: " + path);
+            }
+            String[] lines = header.toString(StandardCharsets.UTF_8).split("\n");
+            if (!lines[0].equals(MAGIC)) {
+                throw new IOException("Not a recording: " + path);
+            }
+            String url = null;
+            String date = null;
+            Instant recordedAt = null;
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i];
+                int separator = line.indexOf(": ");
+                if (separator < 0) {
+                    continue;
+                }
+                String name = line.substring(0, separator);
+                String headerValue = line.substring(separator + 2);
+                switch (name) {
+                    case "Url":
+                        url = headerValue;
+                        break;
+                    case "Date":
+                        date = headerValue;
+                        break;
+                    case "Recorded":
+                        try {
+                            recordedAt = Instant.parse(headerValue);
+                        } catch (DateTimeParseException e) {
+                            throw new IOException("Invalid recording time: " + path, e);
+                        }
+                        break;
+                }
+            }
+            return new Recording(url, date, recordedAt, inputStream.readAllBytes());
+        }
+    }
+
+    /**
+     * @return The url the response was retrieved from
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The raw date string the response was for
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return When the response was retrieved
+     */
+    public Instant getRecordedAt() {
+        return recordedAt;
+    }
+
+    /**
+     * @return The decoded response body (this is not copied so it should not be modified)
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return "Recording{" +
+                "url='" + url + '\'' +
+                ", date='" + date + '\'' +
+                ", recordedAt=" + recordedAt +
+                ", bytes=" + body.length +
+                '}';
+    }
+}
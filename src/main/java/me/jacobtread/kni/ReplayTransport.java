@@ -0,0 +1,117 @@
+package me.jacobtread.kni;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Transport} which responds with the responses recorded by a
+ * {@link ResponseRecorder} instead of sending requests to KAMAR, so
+ * recorded traffic can be parsed and benchmarked offline
+ * <p>
+ * The recordings are loaded into memory up front. By default a request is
+ * answered with a recording for the same date (cycling through them when
+ * there are several), without date matching every request cycles through
+ * all of the recordings
+ */
+public class ReplayTransport implements Transport {
+
+    private final List<Recording> recordings; // The recordings in the order they were recorded
+    private final Map<String, List<Recording>> recordingsByDate; // The recordings for each date
+    private final Map<String, AtomicInteger> positions = new HashMap<>(); // The next recording to use for each date
+    private final AtomicInteger position = new AtomicInteger(); // The next recording to use without date matching
+    private volatile boolean isMatchDate = true; // Whether requests must be answered with a recording for the same date
+
+    /**
+     * Loads every recording in a directory
+     *
+     * @param directory The directory the recordings were written to
+     * @throws IOException Thrown if the directory or one of the recordings could not be read
+     */
+    public ReplayTransport(Path directory) throws IOException {
+        this(readRecordings(directory));
+    }
+
+    /**
+     * @param recordings The recordings to respond with
+     */
+    public ReplayTransport(List<Recording> recordings) {
+        if (recordings.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one recording to replay");
+        }
+        this.recordings = List.copyOf(recordings);
+        this.recordingsByDate = Collections.unmodifiableMap(this.recordings.stream()
+                .filter(recording -> recording.getDate() != null)
+                .collect(Collectors.groupingBy(Recording::getDate)));
+        for (String date : recordingsByDate.keySet()) {
+            positions.put(date, new AtomicInteger());
+        }
+    }
+
+    /**
+     * @param directory The directory the recordings were written to
+     * @return The recordings in the order they were recorded
+     * @throws IOException Thrown if the directory or one of the recordings could not be read
+     */
+    private static List<Recording> readRecordings(Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(ResponseRecorder::isRecording)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<Recording> recordings = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            recordings.add(Recording.read(path));
+        }
+        return recordings;
+    }
+
+    /**
+     * Set whether requests must be answered with a recording for the same date
+     *
+     * @param isMatchDate False to cycle through every recording regardless of the date
+     */
+    public void setMatchDate(boolean isMatchDate) {
+        this.isMatchDate = isMatchDate;
+    }
+
+    /**
+     * @return The recordings being replayed in the order they were recorded
+     */
+    public List<Recording> getRecordings() {
+        return recordings;
+    }
+
+    @Override
+    public InputStream open(URL url, String date) throws IOException {
+        Recording recording;
+        if (isMatchDate) {
+            List<Recording> matching = recordingsByDate.get(date);
+            if (matching == null) {
+                throw new FileNotFoundException("No recording for date: " + date);
+            }
+            recording = next(matching, positions.get(date));
+        } else {
+            recording = next(recordings, position);
+        }
+        return new ByteArrayInputStream(recording.getBody());
+    }
+
+    private static Recording next(List<Recording> recordings, AtomicInteger position) {
+        return recordings.get(Math.floorMod(position.getAndIncrement(), recordings.size()));
+    }
+
+}
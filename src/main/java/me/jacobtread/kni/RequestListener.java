@@ -0,0 +1,20 @@
+package me.jacobtread.kni;
+
+/**
+ * Listener for the requests sent to KAMAR, set using {@link KNI#setRequestListener(RequestListener)}.
+ * Notices returned from a cache or archive are not requests so they are not reported
+ * <p>
+ * The listener is called on the thread that finished the request so it
+ * should return quickly, see {@link RequestMetrics} for an implementation
+ * which aggregates the timings into histograms
+ */
+public interface RequestListener {
+
+    /**
+     * Called once for every request after it has either completed or failed
+     *
+     * @param trace The timings and outcome of the request
+     */
+    void onRequest(RequestTrace trace);
+
+}
@@ -0,0 +1,247 @@
+package me.jacobtread.kni;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RequestListener} which aggregates the timing of each request
+ * phase into a histogram along with counts of the requests, failures,
+ * KAMAR errors, notices and response bytes
+ * <p>
+ * Recording only increments counters so a single instance can be shared
+ * by many {@link KNI} instances and threads
+ */
+public class RequestMetrics implements RequestListener {
+
+    private final Map<RequestTrace.Phase, Histogram> histograms = new EnumMap<>(RequestTrace.Phase.class);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder(); // Requests that failed with an exception
+    private final LongAdder errorMessages = new LongAdder(); // Requests that KAMAR responded to with an error
+    private final LongAdder notices = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder(); // Bytes received (compressed when compression was used)
+    private final LongAdder decodedBytes = new LongAdder(); // Bytes after decompression
+
+    public RequestMetrics() {
+        for (RequestTrace.Phase phase : RequestTrace.Phase.values()) {
+            histograms.put(phase, new Histogram());
+        }
+    }
+
+    @Override
+    public void onRequest(RequestTrace trace) {
+        requests.increment();
+        for (Map.Entry<RequestTrace.Phase, Histogram> entry : histograms.entrySet()) {
+            long nanos = trace.getNanos(entry.getKey());
+            if (nanos >= 0) {
+                entry.getValue().record(nanos);
+            }
+        }
+        if (trace.isFailed()) {
+            failures.increment();
+        }
+        if (trace.getErrorMessage() != null) {
+            errorMessages.increment();
+        }
+        if (trace.getNoticeCount() > 0) {
+            notices.add(trace.getNoticeCount());
+        }
+        if (trace.getResponseBytes() > 0) {
+            responseBytes.add(trace.getResponseBytes());
+        }
+        if (trace.getDecodedBytes() > 0) {
+            decodedBytes.add(trace.getDecodedBytes());
+        }
+    }
+
+    /**
+     * @param phase The phase of the requests
+     * @return The histogram of the time the phase took in nanoseconds
+     */
+    public Histogram getHistogram(RequestTrace.Phase phase) {
+        return histograms.get(phase);
+    }
+
+    /**
+     * @return The number of requests
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of requests that failed with an exception
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return The number of requests that KAMAR responded to with an error message
+     */
+    public long getErrorMessages() {
+        return errorMessages.sum();
+    }
+
+    /**
+     * @return The total number of notices parsed
+     */
+    public long getNotices() {
+        return notices.sum();
+    }
+
+    /**
+     * @return The total number of response bytes received
+     */
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    /**
+     * @return The total number of response bytes after decompression (the same
+     * as {@link RequestMetrics#getResponseBytes()} without compression)
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append("requests=").append(getRequests())
+                .append(" failures=").append(getFailures())
+                .append(" errorMessages=").append(getErrorMessages())
+                .append(" notices=").append(getNotices())
+                .append(" responseBytes=").append(getResponseBytes())
+                .append(" decodedBytes=").append(getDecodedBytes());
+        for (Map.Entry<RequestTrace.Phase, Histogram> entry : histograms.entrySet()) {
+            builder.append('\n').append(entry.getKey()).append(' ').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A histogram of non-negative values with 4 buckets for every power of two,
+     * so each recorded value is within 25% of the bucket it was counted in
+     */
+    public static class Histogram {
+
+        private static final int SUB_BUCKETS = 4; // The number of buckets for each power of two
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int BUCKETS = SUB_BUCKETS + (62 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param value The value to record (negative values are recorded as 0)
+         */
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets[bucketOf(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * @return The number of recorded values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return The sum of the recorded values
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * @return The largest recorded value
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return The mean of the recorded values or 0 if there are none
+         */
+        public long getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : getSum() / count;
+        }
+
+        /**
+         * Gets a percentile of the recorded values, as values are only recorded
+         * by bucket this is the largest value that would fall in the bucket
+         *
+         * @param percentile The percentile to get (0 to 1)
+         * @return The value at the percentile or 0 if there are no values
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(upperBoundOf(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+            long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount() +
+                    " mean=" + format(getMean()) +
+                    " p50=" + format(getPercentile(0.5)) +
+                    " p99=" + format(getPercentile(0.99)) +
+                    " max=" + format(getMax());
+        }
+
+        private static String format(long nanos) {
+            return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+    }
+
+}
@@ -0,0 +1,201 @@
+package me.jacobtread.kni;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The timings and outcome of a single request to KAMAR, provided
+ * to the {@link RequestListener} once the request has finished
+ * <p>
+ * Phases that were not measured have a time of -1, requests sent through
+ * {@link KNI#retrieveAsync(String)} are unable to separate connecting and
+ * writing the request from waiting for the response so those are all
+ * included in {@link Phase#FIRST_BYTE}
+ */
+public class RequestTrace {
+
+    /**
+     * The phases of a request in the order they happen
+     */
+    public enum Phase {
+        QUEUE, // Waiting for the host limiter to allow the request (zero when there is no limiter)
+        CONNECT, // Opening the connection (zero when a kept alive connection is reused)
+        WRITE, // Sending the request body
+        FIRST_BYTE, // Waiting for the response headers after the request was sent
+        READ, // Time spent reading the response body from the connection
+        PARSE, // Time spent parsing the XML (excluding time spent waiting on reads)
+        TOTAL // The whole request from start to finish
+    }
+
+    private final String url; // The url the request was sent to
+    private final String date; // The raw date string the request was for
+    private final long startNanos; // The System.nanoTime() the request started at
+    private final long[] nanos = new long[Phase.values().length]; // The time of each phase
+    private long requestBytes = -1;
+    private long responseBytes = -1;
+    private long decodedBytes = -1;
+    private String contentEncoding;
+    private int noticeCount = -1;
+    private String errorMessage;
+    private Exception exception;
+
+    RequestTrace(String url, String date) {
+        this.url = url;
+        this.date = date;
+        this.startNanos = System.nanoTime();
+        Arrays.fill(nanos, -1);
+    }
+
+    void setNanos(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] = nanos;
+    }
+
+    /**
+     * Adds to the time spent reading and the number of bytes read
+     *
+     * @param nanos The time spent in a read
+     * @param bytes The number of bytes that were read
+     */
+    void addRead(long nanos, long bytes) {
+        int read = Phase.READ.ordinal();
+        this.nanos[read] = Math.max(this.nanos[read], 0) + nanos;
+        responseBytes = Math.max(responseBytes, 0) + bytes;
+    }
+
+    void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    void setResponseBytes(long responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
+    /**
+     * @param bytes The number of decoded bytes that were read from a compressed response
+     */
+    void addDecodedBytes(long bytes) {
+        decodedBytes = Math.max(decodedBytes, 0) + bytes;
+    }
+
+    void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    void setNoticeCount(int noticeCount) {
+        this.noticeCount = noticeCount;
+    }
+
+    void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    void setException(Exception exception) {
+        this.exception = exception;
+    }
+
+    /**
+     * @return The url the request was sent to
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The raw date string the request was for
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} the request started at
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @param phase The phase of the request
+     * @return The time the phase took in nanoseconds or -1 if it was not measured
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The size of the request body in bytes or -1 if it was not sent
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return The size of the response body as it was received in bytes or -1 if it was not read
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return The size of the response body after it was decompressed, the same as
+     * {@link RequestTrace#getResponseBytes()} if the response was not compressed
+     */
+    public long getDecodedBytes() {
+        return contentEncoding != null ? decodedBytes : responseBytes;
+    }
+
+    /**
+     * @return The content encoding the response was compressed with or null if it was not compressed
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return The number of notices parsed or -1 if the response was not parsed
+     */
+    public int getNoticeCount() {
+        return noticeCount;
+    }
+
+    /**
+     * @return The error message provided by KAMAR or null if there was none
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return The exception the request failed with or null if it did not fail
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * @return Whether or not the request failed with an exception
+     */
+    public boolean isFailed() {
+        return exception != null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RequestTrace{")
+                .append("url='").append(url).append('\'')
+                .append(", date='").append(date).append('\'');
+        for (Phase phase : Phase.values()) {
+            builder.append(", ").append(phase.name().toLowerCase(Locale.ROOT)).append('=').append(getNanos(phase));
+        }
+        return builder
+                .append(", requestBytes=").append(requestBytes)
+                .append(", responseBytes=").append(responseBytes)
+                .append(", decodedBytes=").append(getDecodedBytes())
+                .append(", contentEncoding=").append(contentEncoding)
+                .append(", noticeCount=").append(noticeCount)
+                .append(", errorMessage='").append(errorMessage).append('\'')
+                .append(", exception=").append(exception)
+                .append('}')
+                .toString();
+    }
+}
@@ -0,0 +1,202 @@
+package me.jacobtread.kni;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Records the decoded responses of a {@link KNI} instance to a directory as
+ * they are read (see {@link Recording} for the file format), set using
+ * {@link KNI#setRecorder(ResponseRecorder)}. Once there are more than
+ * the maximum number of recordings the oldest are deleted
+ * <p>
+ * Responses are copied to the file while the parser reads them so the
+ * body is never buffered in memory. Compressed responses are recorded
+ * after they are decompressed, so replaying a recording never depends
+ * on the encoding the portal happened to use. Failing to write a recording never
+ * fails the request, the partial recording is just discarded
+ */
+public class ResponseRecorder {
+
+    private final Path directory; // The directory recordings are written to
+    private final int maxRecordings; // The maximum number of recordings to keep
+    private final Deque<Path> recordings = new ArrayDeque<>(); // The kept recordings from oldest to newest
+    private final AtomicLong sequence = new AtomicLong(); // Orders recordings created in the same millisecond
+
+    /**
+     * @param directory     The directory to write recordings to (created if it does not exist)
+     * @param maxRecordings The maximum number of recordings to keep before deleting the oldest
+     * @throws IOException Thrown if the directory could not be created or listed
+     */
+    public ResponseRecorder(Path directory, int maxRecordings) throws IOException {
+        if (maxRecordings < 1) {
+            throw new IllegalArgumentException("Max recordings must be at least 1");
+        }
+        this.directory = directory;
+        this.maxRecordings = maxRecordings;
+        Files.createDirectories(directory);
+        // Recordings are named by time so name order is the order they were recorded
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(ResponseRecorder::isRecording)
+                    .sorted()
+                    .forEach(recordings::add);
+        }
+        rotate();
+    }
+
+    /**
+     * @param path The path of a file
+     * @return Whether or not the file is a recording
+     */
+    static boolean isRecording(Path path) {
+        return path.getFileName().toString().endsWith(Recording.EXTENSION);
+    }
+
+    /**
+     * Wraps a response so that it is recorded as it is read,
+     * the recording is finished once the stream is closed
+     *
+     * @param url         The url the response was retrieved from
+     * @param date        The raw date string the response was for
+     * @param inputStream The response body
+     * @return The response body to read instead
+     */
+    InputStream record(String url, String date, InputStream inputStream) {
+        // The rest of the response is read once closed so the whole response
+        // is recorded even if parsing stopped early
+        return new TeeInputStream(inputStream, new RecordingOutputStream(url, date), true);
+    }
+
+    /**
+     * @return The directory recordings are written to
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The number of recordings currently kept
+     */
+    public synchronized int size() {
+        return recordings.size();
+    }
+
+    /**
+     * Adds a finished recording and deletes the oldest recordings
+     *
+     * @param path The finished recording
+     */
+    private synchronized void add(Path path) {
+        recordings.addLast(path);
+        rotate();
+    }
+
+    private synchronized void rotate() {
+        while (recordings.size() > maxRecordings) {
+            try {
+                Files.deleteIfExists(recordings.removeFirst());
+            } catch (IOException ignored) {
+                // It will be left behind, but a later recording could still succeed
+            }
+        }
+    }
+
+    /**
+     * An output stream for a single recording which is written to a temporary
+     * file and moved into place once closed. Any failure to write is kept
+     * rather than thrown so the response being recorded is still read
+     */
+    private class RecordingOutputStream extends OutputStream {
+
+        private final String url;
+        private final String date;
+        private Path tempPath;
+        private OutputStream outputStream; // Created on the first write
+        private boolean isFailed;
+        private boolean isClosed;
+
+        private RecordingOutputStream(String url, String date) {
+            this.url = url;
+            this.date = date;
+        }
+
+        private OutputStream open() throws IOException {
+            if (outputStream == null) {
+                Instant now = Instant.now();
+                String name = String.format("%013d-%06d", now.toEpochMilli(), sequence.getAndIncrement() % 1_000_000);
+                tempPath = directory.resolve(name + ".tmp");
+                outputStream = new BufferedOutputStream(Files.newOutputStream(tempPath));
+                Recording.writeHeader(outputStream, url, date, now);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void write(int b) {
+            if (isFailed) {
+                return;
+            }
+            try {
+                open().write(b);
+            } catch (IOException e) {
+                isFailed = true;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (isFailed) {
+                return;
+            }
+            try {
+                open().write(b, off, len);
+            } catch (IOException e) {
+                isFailed = true;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (outputStream == null && !isFailed) {
+                // Empty responses are still recorded
+                write(new byte[0], 0, 0);
+            }
+            if (outputStream == null) {
+                return;
+            }
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                isFailed = true;
+            }
+            outputStream = null;
+            try {
+                if (isFailed) {
+                    Files.deleteIfExists(tempPath);
+                    return;
+                }
+                String fileName = tempPath.getFileName().toString();
+                Path path = tempPath.resolveSibling(fileName.substring(0, fileName.length() - 4) + Recording.EXTENSION);
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+                add(path);
+            } catch (IOException ignored) {
+                // The temporary file will be left behind but the request is unaffected
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package me.jacobtread.kni;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How failed requests to KAMAR are retried (see {@link KNI#setRetryPolicy(RetryPolicy)})
+ * <p>
+ * Only requests that failed with an {@link IOException} (connection failures,
+ * timeouts and HTTP errors) are retried. The backoff before each retry doubles
+ * up to the maximum backoff and is jittered between half and all of that so
+ * many clients retrying at once don't all arrive together
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts; // The maximum number of attempts including the first
+    private final long initialBackoffNanos; // The backoff before the first retry
+    private final long maxBackoffNanos; // The largest backoff before any retry
+
+    /**
+     * @param maxAttempts    The maximum number of attempts including the first
+     * @param initialBackoff The backoff before the first retry
+     * @param maxBackoff     The largest backoff before any retry
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = Math.max(maxBackoff.toNanos(), initialBackoffNanos);
+    }
+
+    /**
+     * @return The maximum number of attempts including the first
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt The attempt that failed (starting at 1)
+     * @param error   The error the attempt failed with
+     * @return Whether another attempt should be made
+     */
+    public boolean shouldRetry(int attempt, Throwable error) {
+        return attempt < maxAttempts && error instanceof IOException && !(error instanceof CircuitOpenException);
+    }
+
+    /**
+     * @param attempt The attempt that failed (starting at 1)
+     * @return The jittered time to wait before the next attempt in nanoseconds
+     */
+    public long getBackoffNanos(int attempt) {
+        long backoff = initialBackoffNanos;
+        for (int i = 1; i < attempt && backoff < maxBackoffNanos; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffNanos);
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+}
@@ -0,0 +1,82 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+
+import java.time.LocalDateTime;
+
+/**
+ * A meeting in a {@link MeetingCalendar} along with when it
+ * occurs and the portal and date it was retrieved for
+ */
+public class ScheduledMeeting {
+
+    private final long id; // The order this meeting was added to the calendar
+    private final String portal;
+    private final String date;
+    private final MeetingNotice meeting;
+    private final LocalDateTime start; // The start of the meeting (the start of the day if it has no time)
+    private final boolean isAllDay; // Whether the meeting has no clock time (e.g. "Lunch")
+
+    ScheduledMeeting(long id, String portal, String date, MeetingNotice meeting, LocalDateTime start, boolean isAllDay) {
+        this.id = id;
+        this.portal = portal;
+        this.date = date;
+        this.meeting = meeting;
+        this.start = start;
+        this.isAllDay = isAllDay;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return The portal the meeting was retrieved from
+     */
+    public String getPortal() {
+        return portal;
+    }
+
+    /**
+     * @return The raw date string the meeting was retrieved for
+     */
+    public String getDate() {
+        return date;
+    }
+
+    public MeetingNotice getMeeting() {
+        return meeting;
+    }
+
+    /**
+     * @return The start of the meeting or the start of its day if it has no clock time
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * @return The end of the meeting, meetings with a clock time have no duration and
+     * meetings without one (e.g. "Lunch") are treated as lasting the whole day
+     */
+    public LocalDateTime getEnd() {
+        return isAllDay ? start.plusDays(1) : start;
+    }
+
+    /**
+     * @return Whether the meeting has no clock time so could be at any time on its day
+     */
+    public boolean isAllDay() {
+        return isAllDay;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledMeeting{" +
+                "portal='" + portal + '\'' +
+                ", start=" + start +
+                ", isAllDay=" + isAllDay +
+                ", meeting=" + meeting +
+                '}';
+    }
+}
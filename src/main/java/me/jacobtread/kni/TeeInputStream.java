@@ -0,0 +1,102 @@
+package me.jacobtread.kni;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An input stream which writes every byte read from it to a branch
+ * output stream as it is read, so the bytes can be copied somewhere
+ * else without buffering or altering them
+ */
+class TeeInputStream extends FilterInputStream {
+
+    private final OutputStream branch; // The stream the read bytes are copied to
+    private final boolean isCopyAll; // Whether the rest of the stream is copied when closed
+    private boolean isClosed = false;
+
+    /**
+     * @param in        The stream to read from
+     * @param branch    The stream to copy the read bytes to
+     * @param isCopyAll Whether to read the rest of the stream when closed so the branch gets a copy
+     *                  of all of it, the branch is then closed as well (otherwise it is only flushed)
+     */
+    TeeInputStream(InputStream in, OutputStream branch, boolean isCopyAll) {
+        super(in);
+        this.branch = branch;
+        this.isCopyAll = isCopyAll;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            branch.write(value);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            branch.write(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes are still read so that they are copied to the branch
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 2048)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Reset would copy the same bytes twice
+        return false;
+    }
+
+    /**
+     * Closes the stream, this can be called more than once as
+     * parsers will often close the stream they were given
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            if (isCopyAll) {
+                // Read the rest so the branch gets all of it even if reading stopped early
+                skip(Long.MAX_VALUE);
+            }
+        } catch (IOException ignored) {
+            // The branch keeps whatever was read before the stream broke
+        } finally {
+            try {
+                super.close();
+            } finally {
+                if (isCopyAll) {
+                    branch.close();
+                } else {
+                    branch.flush();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package me.jacobtread.kni;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream which records the time spent waiting on reads
+ * and the number of bytes read into a {@link RequestTrace}
+ */
+class TimedInputStream extends FilterInputStream {
+
+    private final RequestTrace trace;
+
+    TimedInputStream(InputStream in, RequestTrace trace) {
+        super(in);
+        this.trace = trace;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int value = super.read();
+        trace.addRead(System.nanoTime() - start, value < 0 ? 0 : 1);
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(b, off, len);
+        trace.addRead(System.nanoTime() - start, Math.max(read, 0));
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        trace.addRead(System.nanoTime() - start, skipped);
+        return skipped;
+    }
+
+}
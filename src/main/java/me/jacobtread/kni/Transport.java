@@ -0,0 +1,24 @@
+package me.jacobtread.kni;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Sends the GetNotices requests of a {@link KNI} instance in place of the
+ * default HTTP connection, set using {@link KNI#setTransport(Transport)}
+ * (see {@link ReplayTransport} for replaying recorded responses)
+ */
+public interface Transport {
+
+    /**
+     * Sends a GetNotices request and opens the body of the response
+     *
+     * @param url  The url of the KAMAR api the request is for
+     * @param date The raw date string to retrieve notices for
+     * @return The input stream of the response body
+     * @throws IOException Thrown if the request could not be sent or has no response
+     */
+    InputStream open(URL url, String date) throws IOException;
+
+}
@@ -2,16 +2,24 @@ package me.jacobtread.kni.data;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.Date;
 import java.util.Objects;
 
 public class MeetingNotice extends Notice {
 
+    /**
+     * @deprecated {@link SimpleDateFormat} is not thread-safe and the dates have no year
+     * use {@link MeetingNotice#getLocalDate(LocalDate)} instead
+     */
+    @Deprecated
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("EE F MMM"); // The format used by the dates
 
     private final String place;
     private final String date;
     private final String time;
+    private volatile MeetingSchedule schedule; // The parsed date and time (parsed when first used)
 
     /**
      * @param index The order index in which KAMAR has store this notice
@@ -34,13 +42,54 @@ public class MeetingNotice extends Notice {
      * Attempts to parse the date with the expected format
      *
      * @return The Java date object
+     * @deprecated The date is parsed on every call and has no year
+     * use {@link MeetingNotice#getLocalDate(LocalDate)} instead
      */
+    @Deprecated
     public Date getDateParsed() {
-        try {
-            return DATE_FORMAT.parse(date);
-        } catch (ParseException e) {
-            return null;
+        // The shared format is not thread-safe so access to it must be serialized
+        synchronized (DATE_FORMAT) {
+            try {
+                return DATE_FORMAT.parse(getDate());
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Gets the date of the meeting, most dates don't include a year so the year
+     * is inferred from the date the notices were retrieved for (see {@link me.jacobtread.kni.Notices#getLocalDate()}).
+     * The date is only parsed the first time it is needed
+     *
+     * @param requestDate The date the notices were retrieved for (null if unknown)
+     * @return The date of the meeting or null if it could not be parsed
+     */
+    public LocalDate getLocalDate(LocalDate requestDate) {
+        return getSchedule().resolveDate(requestDate);
+    }
+
+    /**
+     * Gets the time of the meeting, times that aren't a clock
+     * time such as "Lunch" or "Interval" have no local time
+     *
+     * @return The time of the meeting or null if it could not be parsed
+     */
+    public LocalTime getLocalTime() {
+        return getSchedule().getTime();
+    }
+
+    /**
+     * @return The date and time of the meeting parsed once from the strings
+     */
+    private MeetingSchedule getSchedule() {
+        MeetingSchedule schedule = this.schedule;
+        if (schedule == null) {
+            // Parsing twice from concurrent calls is harmless as the result is the same
+            schedule = MeetingSchedule.parse(getDate(), getTime());
+            this.schedule = schedule;
         }
+        return schedule;
     }
 
     public String getPlace() {
@@ -63,23 +112,25 @@ public class MeetingNotice extends Notice {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof MeetingNotice)) return false;
         if (!super.equals(o)) return false;
         MeetingNotice that = (MeetingNotice) o;
-        return Objects.equals(place, that.place) && Objects.equals(date, that.date) && Objects.equals(time, that.time);
+        return Objects.equals(getPlace(), that.getPlace())
+                && Objects.equals(getDate(), that.getDate())
+                && Objects.equals(getTime(), that.getTime());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), place, date, time);
+        return Objects.hash(super.hashCode(), getPlace(), getDate(), getTime());
     }
 
     @Override
     public String toString() {
         return "MeetingNotice{" +
-                "place='" + place + '\'' +
-                ", date='" + date + '\'' +
-                ", time='" + time + '\'' +
+                "place='" + getPlace() + '\'' +
+                ", date='" + getDate() + '\'' +
+                ", time='" + getTime() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,185 @@
+package me.jacobtread.kni.data;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The date and time of a {@link MeetingNotice} parsed from the strings provided
+ * by KAMAR. Dates usually don't include a year ("Mon 3 Feb") so the year is
+ * inferred from the date the notices were retrieved for when resolving them
+ */
+final class MeetingSchedule {
+
+    // A clock time such as 12:30, 8.15am or 3pm (minutes or am/pm are required)
+    private static final Pattern TIME_PATTERN = Pattern.compile(
+            "(?<![\\d:.])(\\d{1,2})(?:[:.](\\d{2}))?\\s*([ap])?(?:\\.?m\\.?)?(?![\\d:])", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[a-z]+|\\d+");
+
+    private final int year; // The year of the date (0 if it must be inferred)
+    private final Month month; // The month of the date (null if the date could not be parsed)
+    private final int day;
+    private final DayOfWeek dayOfWeek; // The day of the week of the date (null if not provided)
+    private final LocalTime time; // The time of the meeting (null if it isn't a clock time e.g. "Lunch")
+
+    private MeetingSchedule(int year, Month month, int day, DayOfWeek dayOfWeek, LocalTime time) {
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.dayOfWeek = dayOfWeek;
+        this.time = time;
+    }
+
+    /**
+     * Parses the date and time of a meeting, dates can be ISO (2020-02-03), the same
+     * format as requests (03/02/2020) or text with the day and month in either order
+     * optionally with the day of the week and the year (Mon 3 Feb, February 3rd 2020)
+     *
+     * @param date The date of the meeting
+     * @param time The time of the meeting
+     * @return The parsed schedule, unparseable parts are left unknown
+     */
+    static MeetingSchedule parse(String date, String time) {
+        int year = 0;
+        Month month = null;
+        int day = 0;
+        DayOfWeek dayOfWeek = null;
+        if (date != null) {
+            String value = date.trim().toLowerCase(Locale.ROOT);
+            int[] numbers = new int[3];
+            int numberCount = 0;
+            boolean isIso = value.matches("\\d{4}-\\d{1,2}-\\d{1,2}.*");
+            Matcher matcher = TOKEN_PATTERN.matcher(value);
+            while (matcher.find()) {
+                String token = matcher.group();
+                if (Character.isDigit(token.charAt(0))) {
+                    if (numberCount < numbers.length) {
+                        numbers[numberCount++] = Integer.parseInt(token.length() > 9 ? "0" : token);
+                    }
+                } else if (token.length() >= 3) {
+                    // Names only need to match the start of the full name (Mon, Feb, Sept)
+                    for (DayOfWeek candidate : DayOfWeek.values()) {
+                        if (candidate.name().toLowerCase(Locale.ROOT).startsWith(token)) {
+                            dayOfWeek = candidate;
+                        }
+                    }
+                    for (Month candidate : Month.values()) {
+                        if (candidate.name().toLowerCase(Locale.ROOT).startsWith(token)) {
+                            month = candidate;
+                        }
+                    }
+                }
+            }
+            if (isIso && numberCount == 3) {
+                year = numbers[0];
+                month = toMonth(numbers[1]);
+                day = numbers[2];
+            } else if (month == null && numberCount >= 2) {
+                // Numeric dates are day first like the dates of requests
+                day = numbers[0];
+                month = toMonth(numbers[1]);
+                year = numberCount == 3 ? numbers[2] : 0;
+            } else if (month != null && numberCount >= 1) {
+                day = numbers[0];
+                year = numberCount >= 2 && numbers[1] >= 1000 ? numbers[1] : 0;
+            }
+            if (day < 1 || day > 31 || (year != 0 && year < 1000)) {
+                month = null;
+            }
+        }
+        return new MeetingSchedule(year, month, day, dayOfWeek, parseTime(time));
+    }
+
+    private static Month toMonth(int value) {
+        return value >= 1 && value <= 12 ? Month.of(value) : null;
+    }
+
+    /**
+     * @param value The time of a meeting
+     * @return The first clock time in the value or null if it doesn't contain one
+     */
+    private static LocalTime parseTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        Matcher matcher = TIME_PATTERN.matcher(value);
+        while (matcher.find()) {
+            String minutes = matcher.group(2);
+            String period = matcher.group(3);
+            if (minutes == null && period == null) {
+                continue;
+            }
+            int hour = Integer.parseInt(matcher.group(1));
+            int minute = minutes == null ? 0 : Integer.parseInt(minutes);
+            if (period != null) {
+                if (hour < 1 || hour > 12) {
+                    continue;
+                }
+                hour = hour % 12 + (Character.toLowerCase(period.charAt(0)) == 'p' ? 12 : 0);
+            }
+            if (hour < 24 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the date of the meeting, dates without a year are given the year that puts
+     * them closest to the reference date preferring years where the day of the week matches
+     *
+     * @param reference The date the notices were retrieved for (null if unknown)
+     * @return The date of the meeting or null if it could not be determined
+     */
+    LocalDate resolveDate(LocalDate reference) {
+        if (month == null) {
+            return null;
+        }
+        if (year != 0) {
+            return create(year);
+        }
+        if (reference == null) {
+            return null;
+        }
+        LocalDate best = null;
+        boolean isBestDayMatch = false;
+        long bestDistance = Long.MAX_VALUE;
+        for (int candidateYear = reference.getYear() - 1; candidateYear <= reference.getYear() + 1; candidateYear++) {
+            LocalDate candidate = create(candidateYear);
+            if (candidate == null) {
+                continue;
+            }
+            boolean isDayMatch = dayOfWeek != null && candidate.getDayOfWeek() == dayOfWeek;
+            long distance = Math.abs(ChronoUnit.DAYS.between(reference, candidate));
+            if (best == null || (isDayMatch && !isBestDayMatch)
+                    || (isDayMatch == isBestDayMatch && distance <= bestDistance)) {
+                best = candidate;
+                isBestDayMatch = isDayMatch;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private LocalDate create(int year) {
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The time of the meeting or null if it isn't a clock time
+     */
+    LocalTime getTime() {
+        return time;
+    }
+
+}
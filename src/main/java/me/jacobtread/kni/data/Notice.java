@@ -50,30 +50,36 @@ public class Notice {
         return false;
     }
 
+    /**
+     * Notices are equal to any other notice of the same kind with the same
+     * content, the content is compared through the getters so that notices
+     * which store their content differently can still be equal
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Notice)) return false;
         Notice notice = (Notice) o;
-        return index == notice.index && level == notice.level
-                && Objects.equals(subject, notice.subject)
-                && Objects.equals(body, notice.body)
-                && Objects.equals(teacher, notice.teacher);
+        return isMeeting() == notice.isMeeting()
+                && getIndex() == notice.getIndex() && getLevel() == notice.getLevel()
+                && Objects.equals(getSubject(), notice.getSubject())
+                && Objects.equals(getBody(), notice.getBody())
+                && Objects.equals(getTeacher(), notice.getTeacher());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(index, level, subject, body, teacher);
+        return Objects.hash(getIndex(), getLevel(), getSubject(), getBody(), getTeacher());
     }
 
     @Override
     public String toString() {
         return "Notice{" +
-                "index=" + index +
-                ", level=" + level +
-                ", subject='" + subject + '\'' +
-                ", body='" + body + '\'' +
-                ", teacher='" + teacher + '\'' +
+                "index=" + getIndex() +
+                ", level=" + getLevel() +
+                ", subject='" + getSubject() + '\'' +
+                ", body='" + getBody() + '\'' +
+                ", teacher='" + getTeacher() + '\'' +
                 '}';
     }
 
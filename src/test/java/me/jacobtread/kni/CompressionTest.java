@@ -0,0 +1,68 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class CompressionTest {
+
+    private static final String DATE = "01/01/2020";
+
+    @Test
+    void decompressesResponses() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(200, 50)) {
+            Notices expected = server.createKNI().retrieve(DATE);
+            for (String encoding : new String[]{"gzip", "deflate"}) {
+                server.setCompression(encoding);
+                KNI kni = server.createKNI();
+                kni.setCompression(true);
+                List<RequestTrace> traces = new ArrayList<>();
+                kni.setRequestListener(traces::add);
+                Assertions.assertEquals(expected.getNotices(), kni.retrieve(DATE).getNotices());
+                Assertions.assertEquals(expected.getNotices(), kni.retrieveAsync(DATE).get().getNotices());
+                Assertions.assertEquals(2, traces.size());
+                for (RequestTrace trace : traces) {
+                    Assertions.assertEquals(encoding, trace.getContentEncoding());
+                    Assertions.assertTrue(trace.getResponseBytes() * 3 < trace.getDecodedBytes(), trace.toString());
+                }
+                Assertions.assertEquals(traces.get(0).getDecodedBytes(), traces.get(1).getDecodedBytes());
+            }
+        }
+    }
+
+    @Test
+    void fallsBackWhenIgnored() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(20, 5)) {
+            KNI kni = server.createKNI();
+            kni.setCompression(true);
+            RequestMetrics metrics = new RequestMetrics();
+            kni.setRequestListener(metrics);
+            Assertions.assertEquals(25, kni.retrieve(DATE).getNotices().size());
+            Assertions.assertEquals(25, kni.retrieveAsync(DATE).get().getNotices().size());
+            Assertions.assertTrue(metrics.getResponseBytes() > 0);
+            Assertions.assertEquals(metrics.getResponseBytes(), metrics.getDecodedBytes());
+        }
+    }
+
+    @Test
+    void decodesRawDeflate() throws Exception {
+        byte[] response = NoticeFixtures.createResponse(10, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream outputStream = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            outputStream.write(response);
+        }
+        RequestTrace trace = new RequestTrace("url", DATE);
+        try (InputStream inputStream = ContentDecoding.decode(new ByteArrayInputStream(bytes.toByteArray()), "Deflate", trace)) {
+            Assertions.assertArrayEquals(response, inputStream.readAllBytes());
+        }
+        Assertions.assertEquals(response.length, trace.getDecodedBytes());
+    }
+
+}
@@ -0,0 +1,111 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class HostLimiterTest {
+
+    private static final HostLimiter.Limits UNLIMITED_RATE = new HostLimiter.Limits(2, 0, 1);
+
+    @Test
+    void limitsInFlightAndServesHostsInTurn() throws Exception {
+        HostLimiter limiter = new HostLimiter(1, UNLIMITED_RATE);
+        HostLimiter.Permit first = limiter.acquireAsync("a").get();
+        CompletableFuture<HostLimiter.Permit> a2 = limiter.acquireAsync("a");
+        CompletableFuture<HostLimiter.Permit> a3 = limiter.acquireAsync("a");
+        CompletableFuture<HostLimiter.Permit> b1 = limiter.acquireAsync("b");
+        CompletableFuture<HostLimiter.Permit> cancelled = limiter.acquireAsync("b");
+        cancelled.cancel(true);
+        Assertions.assertEquals(3, limiter.getQueueDepth());
+        Assertions.assertEquals(2, limiter.getQueueDepth("a"));
+        Assertions.assertEquals(1, limiter.getInFlight("a"));
+
+        // The total limit is shared with one request from each waiting host in turn
+        first.release();
+        first.release();
+        Assertions.assertTrue(a2.isDone());
+        Assertions.assertFalse(b1.isDone());
+        a2.get().release();
+        Assertions.assertTrue(b1.isDone());
+        Assertions.assertFalse(a3.isDone());
+        b1.get().release();
+        Assertions.assertTrue(a3.isDone());
+        a3.get().release();
+        Assertions.assertEquals(0, limiter.getQueueDepth());
+        Assertions.assertEquals(0, limiter.getInFlight());
+        Assertions.assertEquals(4, limiter.getWaitHistogram().getCount());
+        Assertions.assertEquals(1, limiter.getWaitHistogram("b").getCount());
+
+        // Each host has its own in flight limit
+        HostLimiter perHost = new HostLimiter(UNLIMITED_RATE);
+        perHost.setLimits("b", new HostLimiter.Limits(1, 0, 1));
+        Assertions.assertTrue(perHost.acquireAsync("a").isDone());
+        Assertions.assertTrue(perHost.acquireAsync("a").isDone());
+        Assertions.assertFalse(perHost.acquireAsync("a").isDone());
+        Assertions.assertTrue(perHost.acquireAsync("b").isDone());
+        Assertions.assertFalse(perHost.acquireAsync("b").isDone());
+    }
+
+    @Test
+    void limitsRate() throws Exception {
+        HostLimiter limiter = new HostLimiter(new HostLimiter.Limits(10, 20, 2));
+        long start = System.nanoTime();
+        List<CompletableFuture<HostLimiter.Permit>> permits = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            permits.add(limiter.acquireAsync("a"));
+        }
+        // The burst is sent at once and the rest at 20 per second
+        Assertions.assertTrue(permits.get(1).isDone());
+        Assertions.assertFalse(permits.get(2).isDone());
+        Assertions.assertEquals(4, limiter.getQueueDepth("a"));
+        for (CompletableFuture<HostLimiter.Permit> permit : permits) {
+            permit.get(2, TimeUnit.SECONDS).release();
+        }
+        long elapsed = System.nanoTime() - start;
+        Assertions.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(190), "Expected the rate to be limited " + elapsed);
+        Assertions.assertTrue(limiter.getWaitHistogram().getMax() >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    void limitsRetrievals() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setLatency(100, 0)) {
+            HostLimiter limiter = new HostLimiter(new HostLimiter.Limits(2, 0, 1));
+            KNI kni = server.createKNI();
+            kni.setHostLimiter(limiter);
+            RequestMetrics metrics = new RequestMetrics();
+            kni.setRequestListener(metrics);
+            List<CompletableFuture<Notices>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                // Different dates so the retrievals aren't shared
+                futures.add(kni.retrieveAsync(LocalDate.of(2020, 1, 1).plusDays(i)));
+            }
+            Thread.sleep(50);
+            Assertions.assertEquals(2, limiter.getInFlight(server.getHost()));
+            Assertions.assertEquals(4, limiter.getQueueDepth(server.getHost()));
+            for (CompletableFuture<Notices> future : futures) {
+                Assertions.assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+            }
+            Assertions.assertEquals(0, limiter.getInFlight());
+            Assertions.assertTrue(metrics.getHistogram(RequestTrace.Phase.QUEUE).getMax() >= TimeUnit.MILLISECONDS.toNanos(150));
+
+            // Blocking retrievals wait too but not past the request timeout
+            HostLimiter.Permit first = limiter.acquireAsync(server.getHost()).get();
+            HostLimiter.Permit second = limiter.acquireAsync(server.getHost()).get();
+            kni.setRequestTimeout(Duration.ofMillis(200));
+            Assertions.assertThrows(HttpTimeoutException.class, () -> kni.retrieve("01/02/2020"));
+            Assertions.assertEquals(0, limiter.getQueueDepth());
+            first.release();
+            second.release();
+            Assertions.assertTrue(kni.retrieve("01/02/2020").isSuccess());
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class KNITest {
+
+    private static final String DATE = "01/01/2020";
+
+    private StubKamarServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new StubKamarServer().setNoticeCounts(30, 10);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void retrievesFromStub() throws Exception {
+        KNI kni = server.createKNI();
+        Notices notices = kni.retrieve(DATE);
+        Assertions.assertNull(notices.getErrorMessage());
+        Assertions.assertEquals(40, notices.getNotices().size());
+        Assertions.assertEquals(10, notices.getMeetings().size());
+        Assertions.assertEquals(notices.getNotices(), kni.retrieveAsync(DATE).get().getNotices());
+    }
+
+    @Test
+    void reportsFailures() throws Exception {
+        KNI kni = server.createKNI();
+        server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+        Assertions.assertEquals("Stub failure", kni.retrieve(DATE).getErrorMessage());
+        server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+        Assertions.assertThrows(IOException.class, () -> kni.retrieve(DATE));
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> kni.retrieveAsync(DATE).get());
+        Assertions.assertTrue(exception.getCause() instanceof IOException);
+        server.setFailures(StubKamarServer.FailureMode.TRUNCATED, 1);
+        // Depending on where the connection breaks this is either a read or parse failure
+        Exception truncated = Assertions.assertThrows(Exception.class, () -> kni.retrieve(DATE));
+        Assertions.assertTrue(truncated instanceof IOException || truncated instanceof SAXException);
+        server.setFailures(StubKamarServer.FailureMode.MALFORMED, 1);
+        Assertions.assertThrows(SAXException.class, () -> kni.retrieve(DATE));
+    }
+
+    @Test
+    void coalescesConcurrentRetrievals() throws Exception {
+        KNI kni = server.createKNI();
+        server.setLatency(300, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Notices>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return kni.retrieve(DATE);
+                }));
+            }
+            start.countDown();
+            CompletableFuture<Notices> async = kni.retrieveAsync(DATE);
+            Notices first = results.get(0).get();
+            for (Future<Notices> result : results) {
+                Assertions.assertSame(first, result.get());
+            }
+            Assertions.assertSame(first, async.get());
+            Assertions.assertEquals(1, server.getRequests());
+
+            // Failures are shared as well
+            server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+            CompletableFuture<Notices> failed = kni.retrieveAsync(DATE);
+            Assertions.assertThrows(IOException.class, () -> kni.retrieve(DATE));
+            Assertions.assertTrue(Assertions.assertThrows(ExecutionException.class, failed::get).getCause() instanceof IOException);
+            Assertions.assertEquals(2, server.getRequests());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void releasesRefreshesThatFailToStore() throws Exception {
+        KNI kni = server.createKNI();
+        AtomicBoolean isBroken = new AtomicBoolean(true);
+        kni.setCache(new NoticesCache(8, Duration.ofMinutes(1)) {
+            @Override
+            public void put(String url, String date, Notices notices) {
+                if (isBroken.getAndSet(false)) {
+                    throw new IllegalStateException("Broken cache");
+                }
+                super.put(url, date, notices);
+            }
+        });
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> kni.refreshAsync(DATE).get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(failure.getCause() instanceof IllegalStateException);
+        // The failed request no longer blocks later retrievals of the date
+        Assertions.assertEquals(40, kni.refreshAsync(DATE).get(5, TimeUnit.SECONDS).getNotices().size());
+        Assertions.assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    void fallsBackWhenTheArchiveFails(@TempDir Path directory) throws Exception {
+        KNI kni = server.createKNI();
+        NoticeArchive archive = new NoticeArchive(directory);
+        kni.setArchive(archive, Duration.ofHours(1));
+        Assertions.assertEquals(40, kni.retrieve(DATE).getNotices().size());
+        // A closed archive can't be read or written but the portal is still asked
+        archive.close();
+        Assertions.assertEquals(40, kni.retrieve(DATE).getNotices().size());
+        Assertions.assertEquals(40, kni.retrieveAsync(DATE).get(5, TimeUnit.SECONDS).getNotices().size());
+        Assertions.assertEquals(3, server.getRequests());
+    }
+
+}
@@ -0,0 +1,96 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class LazyNoticeReaderTest {
+
+    private static final String DATE = "01/01/2020";
+
+    private static Notices parse(byte[] response, boolean isLazy) throws Exception {
+        KNI kni = new KNI("localhost");
+        kni.setLazy(isLazy);
+        return kni.parse(new ByteArrayInputStream(response), DATE);
+    }
+
+    private static void assertSameAsEager(String response) throws Exception {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        Assertions.assertNotNull(LazyNoticeReader.read(bytes), "Expected the response to be read lazily");
+        Notices eager = parse(bytes, false);
+        Notices lazy = parse(bytes, true);
+        Assertions.assertEquals(eager.getErrorMessage(), lazy.getErrorMessage());
+        Assertions.assertEquals(eager.getNotices(), lazy.getNotices());
+        Assertions.assertEquals(lazy.getNotices(), eager.getNotices());
+        if (eager.getErrorMessage() != null) {
+            return;
+        }
+        for (int i = 0; i < eager.getNotices().size(); i++) {
+            Assertions.assertEquals(eager.getNotices().get(i).hashCode(), lazy.getNotices().get(i).hashCode());
+        }
+    }
+
+    @Test
+    void matchesEagerParsing() throws Exception {
+        byte[] response = NoticeFixtures.createResponse(200, 50);
+        assertSameAsEager(new String(response, StandardCharsets.UTF_8));
+        List<Notice> notices = parse(response, true).getNotices();
+        Assertions.assertEquals(250, notices.size());
+        Assertions.assertTrue(notices.get(0) instanceof MeetingNotice);
+        Assertions.assertEquals(200, parse(response, true).getGeneral().size());
+    }
+
+    @Test
+    void decodesEscapedContent() throws Exception {
+        assertSameAsEager("\uFEFF<?xml version=\"1.0\" encoding=\"utf-8\"?>\r\n" +
+                "<!-- notices -->\r\n" +
+                "<NoticesResults>\r\n" +
+                "  <MeetingNotices>\r\n" +
+                "    <Meeting index='7'>\r\n" +
+                "      <Level>Seniors</Level>\r\n" +
+                "      <Subject><![CDATA[<Prefects> & friends]]></Subject>\r\n" +
+                "      <Body>Line one\r\nLine &#50;&#x33; &quot;t\u00E9&quot; <b>bold</b><!-- gone --> &apos;\u2603&apos;</Body>\r\n" +
+                "      <Teacher/>\r\n" +
+                "      <PlaceMeet>Room &lt;12&gt;</PlaceMeet>\r\n" +
+                "      <DateMeet>Mon 3 Feb</DateMeet>\r\n" +
+                "      <TimeMeet>Lunch</TimeMeet>\r\n" +
+                "    </Meeting>\r\n" +
+                "  </MeetingNotices>\r\n" +
+                "  <GeneralNotices>\r\n" +
+                "    <General index=\"2\"><Level>All</Level><Subject>Test</Subject><Body></Body><Teacher>SD</Teacher></General>\r\n" +
+                "    <General index=\"3\"><Level>All</Level><Subject>Missing fields</Subject></General>\r\n" +
+                "  </GeneralNotices>\r\n" +
+                "</NoticesResults>\r\n");
+    }
+
+    @Test
+    void readsErrors() throws Exception {
+        assertSameAsEager("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<NoticesResults><Error>Invalid &amp; unknown date</Error></NoticesResults>");
+        Assertions.assertEquals("Bad", parse("<NoticesResults><Error>Bad</Error></NoticesResults>".getBytes(StandardCharsets.UTF_8), true).getErrorMessage());
+    }
+
+    @Test
+    void rejectsMalformedResponses() throws Exception {
+        for (String response : new String[]{
+                "<NoticesResults><General index=\"1\"></NoticesResults>",
+                "<NoticesResults><General index=\"1\"><Body>&unknown;</Body></General></NoticesResults>",
+                "<NoticesResults>",
+                "text<NoticesResults/>"
+        }) {
+            Assertions.assertThrows(SAXException.class, () -> parse(response.getBytes(StandardCharsets.UTF_8), true), response);
+        }
+        // Other encodings are parsed normally
+        byte[] latin = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><NoticesResults><GeneralNotices><General index=\"1\"><Level>All</Level><Subject>Caf\u00E9</Subject><Body/><Teacher>SD</Teacher></General></GeneralNotices></NoticesResults>"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        Assertions.assertNull(LazyNoticeReader.read(latin));
+        Assertions.assertEquals("Caf\u00E9", parse(latin, true).getNotices().get(0).getSubject());
+    }
+
+}
@@ -0,0 +1,173 @@
+package me.jacobtread.kni;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives {@link KNI#retrieve(String)} at a fixed concurrency for a fixed
+ * duration and reports the throughput and latency percentiles
+ * <p>
+ * Without a host the requests are sent to an embedded {@link StubKamarServer}.
+ * Run through gradle with: ./gradlew loadTest -PloadTest.args="--concurrency 64 --latency 20"
+ * <pre>
+ * --host        The portal to send requests to (default: embedded stub)
+ * --replay      A directory of recorded responses to replay instead of sending requests
+ * --concurrency The number of requests in flight (default: 16)
+ * --duration    The number of seconds to run for (default: 10)
+ * --warmup      The number of seconds to run before measuring (default: 2)
+ * --notices     The number of notices in each stub response (default: 100)
+ * --latency     The latency of the stub in milliseconds (default: 0)
+ * --jitter      The random extra latency of the stub in milliseconds (default: 0)
+ * --failures    The fraction of stub requests that fail with a 500 status (default: 0)
+ * --compression The encoding to request compressed responses with, gzip or deflate (default: none)
+ * </pre>
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "10")));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "2")));
+        String host = options.get("host");
+        String replay = options.get("replay");
+
+        StubKamarServer stub = null;
+        KNI kni;
+        if (replay != null) {
+            ReplayTransport transport = new ReplayTransport(Path.of(replay));
+            // Every recording is replayed regardless of the date it was recorded for
+            transport.setMatchDate(false);
+            kni = new KNI("replay");
+            kni.setTransport(transport);
+        } else if (host == null) {
+            int notices = Integer.parseInt(options.getOrDefault("notices", "100"));
+            stub = new StubKamarServer()
+                    .setNoticeCounts(notices - notices / 4, notices / 4)
+                    .setLatency(Long.parseLong(options.getOrDefault("latency", "0")),
+                            Long.parseLong(options.getOrDefault("jitter", "0")))
+                    .setFailures(StubKamarServer.FailureMode.HTTP_ERROR,
+                            Double.parseDouble(options.getOrDefault("failures", "0")))
+                    .setCompression(options.get("compression"));
+            kni = stub.createKNI();
+        } else {
+            kni = new KNI(host);
+        }
+        kni.setCompression(options.containsKey("compression"));
+
+        try {
+            System.out.println("Warming up for " + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + "s");
+            run(kni, concurrency, warmupNanos);
+            RequestMetrics metrics = new RequestMetrics();
+            kni.setRequestListener(metrics);
+            System.out.println("Running " + concurrency + " concurrent requests for "
+                    + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s");
+            Result result = run(kni, concurrency, durationNanos);
+            result.print(durationNanos);
+            System.out.println(metrics);
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    /**
+     * Sends requests from concurrency threads until the duration has passed
+     *
+     * @param kni           The KNI instance to send requests with
+     * @param concurrency   The number of threads sending requests
+     * @param durationNanos How long to send requests for
+     * @return The latencies and failures of the requests
+     * @throws InterruptedException Thrown if interrupted while waiting for the threads
+     */
+    private static Result run(KNI kni, int concurrency, long durationNanos) throws InterruptedException {
+        Result result = new Result();
+        long end = System.nanoTime() + durationNanos;
+        List<Thread> threads = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            // Each thread requests its own date so concurrent requests aren't coalesced
+            String date = KNI.DATE_FORMATTER.format(LocalDate.of(2020, 1, 1).plusDays(i));
+            Thread thread = new Thread(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        Notices notices = kni.retrieve(date);
+                        if (notices.getErrorMessage() != null) {
+                            result.kamarErrors.increment();
+                        }
+                    } catch (Exception e) {
+                        result.failures.increment();
+                        continue;
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                result.add(Arrays.copyOf(latencies, count));
+            }, "KNI-LoadTest-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option but got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * The combined latencies and failures of every thread
+     */
+    private static class Result {
+
+        private final List<long[]> latencies = new ArrayList<>();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder kamarErrors = new LongAdder();
+
+        private synchronized void add(long[] threadLatencies) {
+            latencies.add(threadLatencies);
+        }
+
+        private void print(long durationNanos) {
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            double seconds = durationNanos / 1e9;
+            System.out.printf("Requests:    %d (%d failed, %d KAMAR errors)%n", all.length + failures.sum(), failures.sum(), kamarErrors.sum());
+            System.out.printf("Throughput:  %.1f req/s%n", all.length / seconds);
+            if (all.length == 0) {
+                return;
+            }
+            System.out.printf("Latency p50: %.2f ms%n", percentile(all, 0.50));
+            System.out.printf("Latency p99: %.2f ms%n", percentile(all, 0.99));
+            System.out.printf("Latency p999: %.2f ms%n", percentile(all, 0.999));
+            System.out.printf("Latency max: %.2f ms%n", all[all.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+public class MeetingCalendarTest {
+
+    private static final String PORTAL = "https://demo.school.kiwi/api/api.php";
+
+    private static MeetingNotice createMeeting(int index, String place, String date, String time) {
+        return new MeetingNotice(index, Notice.Level.ALL, "Meeting " + index, "", "SD", place, date, time);
+    }
+
+    private static Notices createNotices(String date, Notice... notices) {
+        Notices created = new Notices(date);
+        created.setNotices(List.of(notices));
+        return created;
+    }
+
+    @Test
+    void parsesDatesAndTimes() {
+        LocalDate february = LocalDate.of(2020, 2, 1);
+        Assertions.assertEquals(LocalDate.of(2020, 2, 3), createMeeting(1, "", "Mon 3 Feb", "").getLocalDate(february));
+        Assertions.assertEquals(LocalDate.of(2020, 2, 3), createMeeting(1, "", "February 3rd", "").getLocalDate(february));
+        Assertions.assertEquals(LocalDate.of(2019, 2, 3), createMeeting(1, "", "2019-02-03", "").getLocalDate(february));
+        Assertions.assertEquals(LocalDate.of(2020, 2, 3), createMeeting(1, "", "03/02/2020", "").getLocalDate(null));
+        Assertions.assertNull(createMeeting(1, "", "Someday", "").getLocalDate(february));
+        Assertions.assertNull(createMeeting(1, "", "Mon 3 Feb", "").getLocalDate(null));
+        // The year is inferred across the new year
+        Assertions.assertEquals(LocalDate.of(2021, 1, 4), createMeeting(1, "", "Mon 4 Jan", "").getLocalDate(LocalDate.of(2020, 12, 28)));
+        Assertions.assertEquals(LocalDate.of(2020, 12, 28), createMeeting(1, "", "Mon 28 Dec", "").getLocalDate(LocalDate.of(2021, 1, 2)));
+
+        Assertions.assertEquals(LocalTime.of(12, 30), createMeeting(1, "", "", "12:30").getLocalTime());
+        Assertions.assertEquals(LocalTime.of(15, 15), createMeeting(1, "", "", "3.15pm").getLocalTime());
+        Assertions.assertEquals(LocalTime.of(8, 0), createMeeting(1, "", "", "Before school 8 a.m.").getLocalTime());
+        Assertions.assertEquals(LocalTime.of(0, 5), createMeeting(1, "", "", "12:05 AM").getLocalTime());
+        Assertions.assertNull(createMeeting(1, "", "", "Lunch").getLocalTime());
+        Assertions.assertNull(createMeeting(1, "", "", "Room 12").getLocalTime());
+    }
+
+    @Test
+    void findsMeetingsByTimeAndPlace() {
+        Clock clock = Clock.fixed(LocalDateTime.of(2020, 2, 3, 9, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        MeetingCalendar calendar = new MeetingCalendar(clock);
+        MeetingNotice morning = createMeeting(1, "Library", "Mon 3 Feb", "8:00am");
+        MeetingNotice lunch = createMeeting(2, "Hall", "Mon 3 Feb", "Lunch");
+        MeetingNotice afternoon = createMeeting(3, " library ", "Mon 3 Feb", "3:15pm");
+        MeetingNotice tomorrow = createMeeting(4, "Gym", "Tue 4 Feb", "10:00");
+        MeetingNotice unknown = createMeeting(5, "Gym", "Sometime", "10:00");
+        calendar.add(PORTAL, createNotices("03/02/2020", morning, lunch, afternoon, tomorrow, unknown));
+        // The same meetings retrieved for the next day aren't repeated
+        calendar.add(PORTAL, createNotices("04/02/2020", afternoon, tomorrow));
+        Assertions.assertEquals(6, calendar.size());
+
+        List<ScheduledMeeting> upcoming = calendar.upcoming(Duration.ofHours(8));
+        Assertions.assertEquals(List.of(lunch, afternoon), upcoming.stream().map(ScheduledMeeting::getMeeting).toList());
+        Assertions.assertTrue(upcoming.get(0).isAllDay());
+        Assertions.assertEquals(LocalDateTime.of(2020, 2, 3, 15, 15), upcoming.get(1).getStart());
+        Assertions.assertEquals(List.of(lunch, afternoon, tomorrow),
+                calendar.upcoming(Duration.ofDays(2)).stream().map(ScheduledMeeting::getMeeting).toList());
+        Assertions.assertEquals(List.of(morning, afternoon),
+                calendar.atPlace("LIBRARY").stream().map(ScheduledMeeting::getMeeting).toList());
+        Assertions.assertEquals(List.of(afternoon), calendar.atPlace("Library",
+                LocalDateTime.of(2020, 2, 3, 12, 0), LocalDateTime.of(2020, 2, 4, 0, 0)).stream().map(ScheduledMeeting::getMeeting).toList());
+
+        // Replacing and removing snapshots updates the index
+        calendar.add(PORTAL, createNotices("03/02/2020", morning, afternoon));
+        Assertions.assertEquals(List.of(), calendar.atPlace("Hall"));
+        Assertions.assertEquals(1, calendar.removeBefore(LocalDateTime.of(2020, 2, 3, 9, 0)));
+        Assertions.assertEquals(List.of(afternoon), calendar.atPlace("Library").stream().map(ScheduledMeeting::getMeeting).toList());
+        calendar.remove(PORTAL, "03/02/2020");
+        calendar.remove(PORTAL, "04/02/2020");
+        Assertions.assertEquals(0, calendar.size());
+    }
+
+}
@@ -0,0 +1,66 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiKNITest {
+
+    private static final String DATE = "01/01/2020";
+
+    @Test
+    void retrievesEveryPortal() throws Exception {
+        List<StubKamarServer> servers = new ArrayList<>();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<String> hosts = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                StubKamarServer server = new StubKamarServer().setNoticeCounts(i + 1, 0).setLatency(50, 0);
+                servers.add(server);
+                hosts.add("http://" + server.getHost());
+            }
+            servers.get(2).setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+
+            // Counted from when a request is handed to the executor until it is reported,
+            // both of which happen while the request holds its permit
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            MultiKNI multi = new MultiKNI(hosts, 2, runnable -> executor.execute(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                runnable.run();
+            }));
+            multi.setRequestListener(trace -> inFlight.decrementAndGet());
+
+            List<PortalResult> results = multi.retrieve(DATE);
+            Assertions.assertEquals(6, results.size());
+            Assertions.assertEquals(2, maxInFlight.get());
+            for (int i = 0; i < results.size(); i++) {
+                PortalResult result = results.get(i);
+                Assertions.assertEquals(hosts.get(i), result.getHost());
+                if (i == 2) {
+                    // The failing portal doesn't stop the others
+                    Assertions.assertFalse(result.isSuccess());
+                    Assertions.assertTrue(result.getException() instanceof IOException, result.toString());
+                } else {
+                    Assertions.assertTrue(result.isSuccess(), result.toString());
+                    Assertions.assertEquals(i + 1, result.getNotices().getNotices().size());
+                }
+            }
+            for (StubKamarServer server : servers) {
+                Assertions.assertEquals(1, server.getRequests());
+            }
+        } finally {
+            executor.shutdownNow();
+            for (StubKamarServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+public class NoticeArchiveTest {
+
+    private static final String PORTAL = "https://demo.school.kiwi/api/api.php";
+
+    private static Notices createNotices(String date, String subject) {
+        Notices notices = new Notices(date);
+        notices.setNotices(List.of(
+                new Notice(1, Notice.Level.ALL, subject, "Body", "SD"),
+                new MeetingNotice(2, Notice.Level.SENIORS, "Meeting", "", "AB", "Library", "Mon 3 Feb", "")
+        ));
+        return notices;
+    }
+
+    @Test
+    void storesAndReopens(@TempDir Path directory) throws IOException {
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            archive.put(PORTAL, "01/01/2020", createNotices("01/01/2020", "First"));
+            archive.put(PORTAL, "01/01/2020", createNotices("01/01/2020", "Second"));
+            archive.put(PORTAL, "02/01/2020", createNotices("02/01/2020", "Other"));
+            Assertions.assertEquals(2, archive.size());
+        }
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Notices notices = archive.get(PORTAL, "01/01/2020");
+            Assertions.assertEquals(createNotices("01/01/2020", "Second").getNotices(), notices.getNotices());
+            Assertions.assertNull(archive.get(PORTAL, "03/01/2020"));
+            Assertions.assertNull(archive.get(PORTAL, "02/01/2020", Duration.ofMillis(-1)), "Expected stale notices to be ignored");
+        }
+    }
+
+    @Test
+    void rebuildsMissingIndex(@TempDir Path directory) throws IOException {
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            for (int i = 0; i < 1000; i++) {
+                archive.put(PORTAL + i, "01/01/2020", createNotices("01/01/2020", "Notice " + i));
+            }
+        }
+        Files.delete(directory.resolve("notices.idx"));
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Assertions.assertEquals(1000, archive.size());
+            Assertions.assertEquals("Notice 999", archive.get(PORTAL + 999, "01/01/2020").getNotices().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void dropsRecordsFromBeforeTheCodec(@TempDir Path directory) throws IOException {
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            archive.put(PORTAL, "02/01/2020", createNotices("02/01/2020", "Current"));
+        }
+        // A record of the old format holding no notices, written after the current one
+        byte[] portal = PORTAL.getBytes(StandardCharsets.UTF_8);
+        byte[] date = "01/01/2020".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 5 + Long.BYTES + portal.length + date.length);
+        record.putInt(record.capacity() - Integer.BYTES).putLong(System.currentTimeMillis());
+        record.putInt(portal.length).put(portal).putInt(date.length).put(date).putInt(0);
+        Files.write(directory.resolve("notices.log"), record.array(), StandardOpenOption.APPEND);
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Assertions.assertEquals(1, archive.size());
+            Assertions.assertNull(archive.get(PORTAL, "01/01/2020"));
+            Assertions.assertEquals("Current", archive.get(PORTAL, "02/01/2020").getNotices().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void keepsRecordsAfterCorruption(@TempDir Path directory) throws IOException {
+        Path log = directory.resolve("notices.log");
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            for (int i = 0; i < 3; i++) {
+                archive.put(PORTAL + i, "01/01/2020", createNotices("01/01/2020", "Notice " + i));
+            }
+        }
+        byte[] original = Files.readAllBytes(log);
+        byte[] bytes = original.clone();
+        long size = bytes.length;
+        // Corrupt the portal length of the second record
+        int second = Integer.BYTES + ByteBuffer.wrap(bytes).getInt(0);
+        ByteBuffer.wrap(bytes).putInt(second + Integer.BYTES + Long.BYTES, Integer.MAX_VALUE);
+        Files.write(log, bytes);
+        Files.delete(directory.resolve("notices.idx"));
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Assertions.assertEquals(1, archive.size());
+            Assertions.assertEquals("Notice 0", archive.get(PORTAL + 0, "01/01/2020").getNotices().get(0).getSubject());
+        }
+        Assertions.assertEquals(size, Files.size(log));
+
+        // A record cut short at the end of the log is dropped
+        Files.write(log, Arrays.copyOf(original, second + 20));
+        Files.delete(directory.resolve("notices.idx"));
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Assertions.assertEquals(1, archive.size());
+        }
+        Assertions.assertEquals(second, Files.size(log));
+    }
+
+    @Test
+    void compactsReplacedSnapshots(@TempDir Path directory) throws IOException {
+        Path log = directory.resolve("notices.log");
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            for (int i = 0; i < 10; i++) {
+                archive.put(PORTAL, "01/01/2020", createNotices("01/01/2020", "Version " + i));
+            }
+            long before = Files.size(log);
+            archive.compact();
+            Assertions.assertTrue(Files.size(log) < before);
+            Assertions.assertEquals("Version 9", archive.get(PORTAL, "01/01/2020").getNotices().get(0).getSubject());
+        }
+        try (NoticeArchive archive = new NoticeArchive(directory)) {
+            Assertions.assertEquals(1, archive.size());
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+public class NoticeExporterTest {
+
+    private static final String DATE = "01/01/2020";
+
+    private static Notices createEdgeNotices() {
+        Notices notices = new Notices(DATE);
+        notices.setNotices(List.of(
+                new Notice(-5, Notice.Level.OTHER, null, "Say \"hi\", then\r\nleave\\\t\u0001\u2028 \u00e9\u4e2d \ud83d\ude00", ""),
+                new MeetingNotice(3, Notice.Level.ALL, "Meeting", "Bring a pen", "SD", "Hall, Room 2", "Mon 3 Feb", "12:30")
+        ));
+        return notices;
+    }
+
+    private static String export(NoticeExporter.Format format, Notices... snapshots) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (NoticeExporter exporter = new NoticeExporter(output, format)) {
+            for (Notices notices : snapshots) {
+                exporter.write("school.example", notices);
+            }
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesJsonLines() throws Exception {
+        Notices error = new Notices(DATE);
+        error.setErrorMessage("Invalid Date");
+        String expected = "{\"portal\":\"school.example\",\"date\":\"01/01/2020\",\"index\":-5,\"level\":\"OTHER\",\"meeting\":false,"
+                + "\"subject\":null,\"body\":\"Say \\\"hi\\\", then\\r\\nleave\\\\\\t\\u0001\\u2028 \u00e9\u4e2d \ud83d\ude00\",\"teacher\":\"\","
+                + "\"place\":null,\"meetingDate\":null,\"meetingTime\":null}\n"
+                + "{\"portal\":\"school.example\",\"date\":\"01/01/2020\",\"index\":3,\"level\":\"ALL\",\"meeting\":true,"
+                + "\"subject\":\"Meeting\",\"body\":\"Bring a pen\",\"teacher\":\"SD\","
+                + "\"place\":\"Hall, Room 2\",\"meetingDate\":\"Mon 3 Feb\",\"meetingTime\":\"12:30\"}\n";
+        Assertions.assertEquals(expected, export(NoticeExporter.Format.JSON_LINES, createEdgeNotices(), error));
+    }
+
+    @Test
+    void writesCsv() throws Exception {
+        String expected = "portal,date,index,level,meeting,subject,body,teacher,place,meetingDate,meetingTime\r\n"
+                + "school.example,01/01/2020,-5,OTHER,false,,\"Say \"\"hi\"\", then\r\nleave\\\t\u0001\u2028 \u00e9\u4e2d \ud83d\ude00\",,,,\r\n"
+                + "school.example,01/01/2020,3,ALL,true,Meeting,Bring a pen,SD,\"Hall, Room 2\",Mon 3 Feb,12:30\r\n";
+        Assertions.assertEquals(expected, export(NoticeExporter.Format.CSV, createEdgeNotices()));
+    }
+
+    @Test
+    void streamsManySnapshots() throws Exception {
+        Notices notices = new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(40, 10)), DATE);
+        int snapshots = 2000;
+
+        // Channels and streams write the same bytes
+        ByteArrayOutputStream fromStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream fromChannel = new ByteArrayOutputStream();
+        try (NoticeExporter streamExporter = new NoticeExporter(fromStream, NoticeExporter.Format.JSON_LINES);
+             NoticeExporter channelExporter = new NoticeExporter(Channels.newChannel(fromChannel), NoticeExporter.Format.JSON_LINES, false)) {
+            for (int i = 0; i < 10; i++) {
+                streamExporter.write("portal", notices);
+                channelExporter.write("portal", notices);
+            }
+        }
+        Assertions.assertArrayEquals(fromStream.toByteArray(), fromChannel.toByteArray());
+
+        // Nothing is held on to between snapshots so only the compressed output grows
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        NoticeExporter exporter = new NoticeExporter(compressed, NoticeExporter.Format.CSV, true);
+        for (int i = 0; i < snapshots; i++) {
+            exporter.write("portal", notices);
+        }
+        exporter.close();
+        Assertions.assertEquals((long) snapshots * notices.getNotices().size(), exporter.getRecords());
+        Assertions.assertThrows(IOException.class, () -> exporter.write("portal", notices));
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), StandardCharsets.UTF_8))) {
+            String line;
+            long uncompressed = 0;
+            long records = -1; // The header line
+            while ((line = reader.readLine()) != null) {
+                uncompressed += line.length();
+                if (line.startsWith("portal,")) {
+                    records++;
+                }
+            }
+            Assertions.assertEquals(exporter.getRecords(), records);
+            Assertions.assertTrue(compressed.size() < uncompressed / 5, compressed.size() + " " + uncompressed);
+        }
+    }
+
+}
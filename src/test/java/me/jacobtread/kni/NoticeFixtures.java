@@ -0,0 +1,98 @@
+package me.jacobtread.kni;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates KAMAR GetNotices responses for tests and benchmarks so
+ * they can run without a connection to a real portal
+ */
+public class NoticeFixtures {
+
+    private static final String[] LEVELS = {"All", "Juniors", "Seniors", "Year 9"};
+    private static final String[] TEACHERS = {"SD", "AB", "JT", "MK", "RW"};
+    private static final String[] PLACES = {"Library", "Hall", "Gym", "Room 12"};
+    private static final String[] DATES = {"Mon 3 Feb", "Tue 4 Feb", "Wed 5 Feb"};
+    private static final String[] WORDS = {"trials", "meeting", "sports", "students", "bring", "lunch",
+            "library", "please", "notes", "assembly", "&", "<b>", "\"quote\""};
+
+    private NoticeFixtures() {
+    }
+
+    /**
+     * Creates a response containing the provided number of notices, the
+     * content is generated from a fixed seed so it is the same every time
+     *
+     * @param generalCount The number of general notices
+     * @param meetingCount The number of meeting notices
+     * @return The UTF-8 bytes of the response
+     */
+    public static byte[] createResponse(int generalCount, int meetingCount) {
+        Random random = new Random(generalCount * 31L + meetingCount);
+        StringBuilder builder = new StringBuilder(256 * (generalCount + meetingCount + 1));
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<NoticesResults>\n");
+        builder.append("  <NumberMeetingRecords>").append(meetingCount).append("</NumberMeetingRecords>\n");
+        builder.append("  <MeetingNotices>\n");
+        for (int i = 0; i < meetingCount; i++) {
+            builder.append("    <Meeting index=\"").append(i + 1).append("\">\n");
+            appendNotice(builder, random);
+            appendElement(builder, "PlaceMeet", pick(random, PLACES));
+            appendElement(builder, "DateMeet", pick(random, DATES));
+            appendElement(builder, "TimeMeet", random.nextBoolean() ? "Lunch" : "");
+            builder.append("    </Meeting>\n");
+        }
+        builder.append("  </MeetingNotices>\n");
+        builder.append("  <NumberGeneralRecords>").append(generalCount).append("</NumberGeneralRecords>\n");
+        builder.append("  <GeneralNotices>\n");
+        for (int i = 0; i < generalCount; i++) {
+            builder.append("    <General index=\"").append(i + 1).append("\">\n");
+            appendNotice(builder, random);
+            builder.append("    </General>\n");
+        }
+        builder.append("  </GeneralNotices>\n</NoticesResults>\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a KAMAR error response
+     *
+     * @param message The error message
+     * @return The UTF-8 bytes of the response
+     */
+    public static byte[] createErrorResponse(String message) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<NoticesResults>\n  <Error>" + escape(message)
+                + "</Error>\n</NoticesResults>\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendNotice(StringBuilder builder, Random random) {
+        appendElement(builder, "Level", pick(random, LEVELS));
+        appendElement(builder, "Subject", createText(random, 2 + random.nextInt(4)));
+        appendElement(builder, "Body", createText(random, random.nextInt(80)));
+        appendElement(builder, "Teacher", pick(random, TEACHERS));
+    }
+
+    private static void appendElement(StringBuilder builder, String name, String content) {
+        builder.append("      <").append(name).append('>').append(escape(content))
+                .append("</").append(name).append(">\n");
+    }
+
+    private static String createText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(pick(random, WORDS));
+        }
+        return text.toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+}
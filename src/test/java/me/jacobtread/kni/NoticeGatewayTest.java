@@ -0,0 +1,204 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NoticeGatewayTest {
+
+    private StubKamarServer server;
+    private NoticeGateway gateway;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new StubKamarServer();
+        KNI kni = server.createKNI();
+        // Cached notices must not hide the changes from the polls
+        kni.setCache(new NoticesCache(8, Duration.ofHours(1)));
+        // Polled by hand so the tests decide when the notices change
+        gateway = new NoticeGateway(kni, Duration.ofHours(1), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void stop() {
+        gateway.close();
+        server.close();
+    }
+
+    private HttpResponse<byte[]> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.getAddress().getPort() + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Opens an event stream and reads the response headers
+     */
+    private BufferedReader subscribe(List<Socket> sockets, String lastEventId) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateway.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+        String request = "GET /events HTTP/1.1\r\nHost: localhost\r\n" + (lastEventId == null ? "" : "Last-Event-ID: " + lastEventId + "\r\n") + "\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        Assertions.assertEquals("HTTP/1.1 200 OK", reader.readLine());
+        String line;
+        while (!(line = reader.readLine()).isEmpty()) {
+            if (line.startsWith("Content-Type:")) {
+                Assertions.assertEquals("Content-Type: text/event-stream", line);
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Reads the next event skipping heartbeats
+     */
+    private static Map<String, String> readEvent(BufferedReader reader) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (!fields.isEmpty()) {
+                    return fields;
+                }
+            } else if (!line.startsWith(":")) {
+                int separator = line.indexOf(": ");
+                fields.put(line.substring(0, separator), line.substring(separator + 2));
+            }
+        }
+        throw new IOException("Stream closed");
+    }
+
+    @Test
+    void servesNoticesWithETags() throws Exception {
+        gateway.start();
+        // Answered with 503 until the first poll completes
+        HttpResponse<byte[]> response = get("/notices", null);
+        while (response.statusCode() == 503) {
+            Thread.sleep(10);
+            response = get("/notices", null);
+        }
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(NoticeGateway.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(null));
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        Assertions.assertEquals(gateway.getETag(), etag);
+        Notices notices = NoticesCodec.decode(response.body());
+        Assertions.assertEquals(gateway.getNotices().getNotices(), notices.getNotices());
+
+        // Clients with the current notices are told nothing changed
+        Assertions.assertEquals(304, get("/notices", etag).statusCode());
+        Assertions.assertEquals(304, get("/notices", "\"other\", W/" + etag).statusCode());
+        Assertions.assertFalse(gateway.poll());
+        Assertions.assertEquals(304, get("/notices", etag).statusCode());
+        Assertions.assertEquals(3, gateway.getNotModified());
+
+        server.setNoticeCounts(5, 1);
+        Assertions.assertTrue(gateway.poll());
+        response = get("/notices", etag);
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertNotEquals(etag, response.headers().firstValue("ETag").orElseThrow());
+        Assertions.assertEquals(6, NoticesCodec.decode(response.body()).getNotices().size());
+
+        // KAMAR errors keep the previous notices being served
+        server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+        Assertions.assertFalse(gateway.poll());
+        Assertions.assertTrue(gateway.getLastError() instanceof KamarErrorException);
+        Assertions.assertEquals(6, gateway.getNotices().getNotices().size());
+
+        Assertions.assertEquals(404, get("/other", null).statusCode());
+        HttpRequest post = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.getAddress().getPort() + "/notices"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        Assertions.assertEquals(405, client.send(post, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void streamsChangesToSubscribers() throws Exception {
+        gateway.start();
+        while (gateway.getNotices() == null) {
+            Thread.sleep(10);
+        }
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            List<BufferedReader> readers = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                readers.add(subscribe(sockets, null));
+            }
+            String id = gateway.getETag().replace("\"", "");
+            for (BufferedReader reader : readers) {
+                // New subscribers are sent the current notices straight away
+                Map<String, String> event = readEvent(reader);
+                Assertions.assertEquals("notices", event.get("event"));
+                Assertions.assertEquals(id, event.get("id"));
+            }
+            Assertions.assertEquals(200, gateway.getSubscribers());
+
+            // Unless they already have them
+            BufferedReader resumed = subscribe(sockets, id);
+
+            server.setNoticeCounts(3, 0);
+            Assertions.assertTrue(gateway.poll());
+            readers.add(resumed);
+            for (BufferedReader reader : readers) {
+                Map<String, String> event = readEvent(reader);
+                Assertions.assertEquals(gateway.getETag().replace("\"", ""), event.get("id"));
+                Notices notices = NoticesCodec.decode(Base64.getDecoder().decode(event.get("data")));
+                Assertions.assertEquals(3, notices.getNotices().size());
+            }
+            // Every subscriber was served from the two polls
+            Assertions.assertEquals(2, server.getRequests());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        long start = System.nanoTime();
+        while (gateway.getSubscribers() > 0 && System.nanoTime() - start < 5_000_000_000L) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, gateway.getSubscribers());
+    }
+
+    @Test
+    void sendsHeartbeats() throws Exception {
+        gateway.setHeartbeatInterval(Duration.ofMillis(50));
+        gateway.start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            BufferedReader reader = subscribe(sockets, null);
+            String line;
+            while (!(line = reader.readLine()).startsWith(":")) {
+                // Skip the notices event
+            }
+            Assertions.assertEquals(": heartbeat", line);
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+}
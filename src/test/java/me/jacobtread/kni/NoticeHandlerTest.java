@@ -0,0 +1,70 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class NoticeHandlerTest {
+
+    private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<NoticesResults>\n" +
+            "  <MeetingNotices>\n" +
+            "    <Meeting index=\"1\">\n" +
+            "      <Level>Seniors</Level>\n" +
+            "      <Subject>Prefects</Subject>\n" +
+            "      <Body>Meet &amp; greet</Body>\n" +
+            "      <Teacher>AB</Teacher>\n" +
+            "      <PlaceMeet>Library</PlaceMeet>\n" +
+            "      <DateMeet>Mon 3 Feb</DateMeet>\n" +
+            "      <TimeMeet>Lunch</TimeMeet>\n" +
+            "    </Meeting>\n" +
+            "  </MeetingNotices>\n" +
+            "  <GeneralNotices>\n" +
+            "    <General index=\"2\">\n" +
+            "      <Level>All</Level>\n" +
+            "      <Subject>Test 1</Subject>\n" +
+            "      <Body></Body>\n" +
+            "      <Teacher>SD</Teacher>\n" +
+            "    </General>\n" +
+            "    <General index=\"bad\">\n" +
+            "      <Level>All</Level>\n" +
+            "      <Subject>Missing fields</Subject>\n" +
+            "    </General>\n" +
+            "  </GeneralNotices>\n" +
+            "</NoticesResults>";
+
+    private static NoticeHandler parse(String xml) throws ParserConfigurationException, SAXException, IOException {
+        NoticeHandler handler = new NoticeHandler();
+        SAXParserFactory.newDefaultInstance().newSAXParser()
+                .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), handler);
+        return handler;
+    }
+
+    @Test
+    void parsesInDocumentOrder() throws Exception {
+        NoticeHandler handler = parse(RESPONSE);
+        Assertions.assertNull(handler.getErrorMessage());
+        List<Notice> notices = handler.getNotices();
+        Assertions.assertEquals(2, notices.size(), "Expected invalid notices to be skipped");
+        Assertions.assertEquals(new MeetingNotice(1, Notice.Level.SENIORS, "Prefects", "Meet & greet", "AB",
+                "Library", "Mon 3 Feb", "Lunch"), notices.get(0));
+        Assertions.assertEquals(new Notice(2, Notice.Level.ALL, "Test 1", "", "SD"), notices.get(1));
+    }
+
+    @Test
+    void parsesErrorMessage() throws Exception {
+        NoticeHandler handler = parse("<NoticesResults><Error>Invalid Key</Error></NoticesResults>");
+        Assertions.assertEquals("Invalid Key", handler.getErrorMessage());
+        Assertions.assertTrue(handler.getNotices().isEmpty());
+    }
+
+}
@@ -0,0 +1,50 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class NoticeIndexTest {
+
+    private static final String PORTAL = "https://demo.school.kiwi/api/api.php";
+
+    private static Notices createNotices(String date, Notice... notices) {
+        Notices created = new Notices(date);
+        created.setNotices(List.of(notices));
+        return created;
+    }
+
+    @Test
+    void searchesTermsAndPrefixes() {
+        NoticeIndex index = new NoticeIndex();
+        Notice football = new Notice(1, Notice.Level.ALL, "Football trials", "Meet at the field", "SD");
+        Notice netball = new Notice(2, Notice.Level.JUNIORS, "Netball trials", "Bring your gear", "AB");
+        MeetingNotice prefects = new MeetingNotice(3, Notice.Level.SENIORS, "Prefects", "Field clean up", "SD", "Field", "Mon 3 Feb", "");
+        index.add(PORTAL, createNotices("01/01/2020", football, netball, prefects));
+
+        Assertions.assertEquals(2, index.search("trials").size());
+        Assertions.assertEquals(football, index.search("trials foot").get(0).getNotice());
+        Assertions.assertEquals(2, index.search("fie").size());
+        Assertions.assertEquals(List.of(), index.search("trials gym"));
+        Assertions.assertEquals(prefects, index.query().term("sd").meetings(true).search().get(0).getNotice());
+        Assertions.assertEquals(netball, index.query().prefix("tri").level(Notice.Level.JUNIORS).search().get(0).getNotice());
+    }
+
+    @Test
+    void replacesSnapshots() {
+        NoticeIndex index = new NoticeIndex();
+        Notice football = new Notice(1, Notice.Level.ALL, "Football trials", "", "SD");
+        Notice netball = new Notice(2, Notice.Level.ALL, "Netball trials", "", "AB");
+        index.add(PORTAL, createNotices("01/01/2020", football, netball));
+        index.add(PORTAL, createNotices("01/01/2020", netball));
+        Assertions.assertEquals(1, index.size());
+        Assertions.assertTrue(index.search("football").isEmpty());
+        index.remove(PORTAL, "01/01/2020");
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertTrue(index.search("trials").isEmpty());
+    }
+
+}
@@ -0,0 +1,81 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.List;
+
+public class NoticePoolTest {
+
+    private static final String DATE = "01/01/2020";
+
+    @Test
+    void deduplicatesParsedNotices() throws Exception {
+        NoticePool pool = new NoticePool();
+        KNI kni = new KNI("localhost");
+        kni.setNoticePool(pool);
+        byte[] response = NoticeFixtures.createResponse(40, 10);
+        Notices first = kni.parse(new ByteArrayInputStream(response), DATE);
+        Notices second = kni.parse(new ByteArrayInputStream(response), "02/01/2020");
+        Assertions.assertEquals(first.getNotices(), second.getNotices());
+        for (int i = 0; i < first.getNotices().size(); i++) {
+            Assertions.assertSame(first.getNotices().get(i), second.getNotices().get(i));
+        }
+        Notice notice = first.getNotices().get(0);
+        Assertions.assertSame(notice.getTeacher(), pool.intern(new String(notice.getTeacher())));
+        Assertions.assertTrue(pool.getNoticeCount() <= 50);
+    }
+
+    @Test
+    void packsNotices() throws Exception {
+        NoticePool pool = new NoticePool();
+        Notices notices = new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(40, 10)), DATE);
+        Notices packed = pool.pack(notices);
+        Assertions.assertEquals(DATE, packed.getDate());
+        Assertions.assertEquals(notices.getNotices(), packed.getNotices());
+        Assertions.assertEquals(notices.getNotices().hashCode(), packed.getNotices().hashCode());
+        Assertions.assertEquals(notices.getMeetings(), packed.getMeetings());
+        Assertions.assertEquals(notices.getGeneral(), packed.getGeneral());
+        Assertions.assertEquals(notices.getTeachers(), packed.getTeachers());
+        for (Notice.Level level : Notice.Level.values()) {
+            Assertions.assertEquals(notices.getNotices(level), packed.getNotices(level));
+        }
+        for (String teacher : notices.getTeachers()) {
+            Assertions.assertEquals(notices.getNoticesByTeacher(teacher), packed.getNoticesByTeacher(teacher));
+        }
+        Assertions.assertEquals(notices.query().meetings().level(Notice.Level.ALL).list(),
+                packed.query().meetings().level(Notice.Level.ALL).list());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> packed.getNotices().remove(0));
+
+        // Packed notices are equal to regular notices in both directions
+        MeetingNotice meeting = notices.getMeetings().get(0);
+        MeetingNotice packedMeeting = packed.getMeetings().get(0);
+        Assertions.assertEquals(meeting, packedMeeting);
+        Assertions.assertEquals(packedMeeting, meeting);
+        Assertions.assertEquals(meeting.getPlace(), packedMeeting.getPlace());
+        Assertions.assertNotEquals(notices.getGeneral().get(0), packedMeeting);
+        // Meeting notices are kept so their schedule is only parsed once
+        Assertions.assertSame(packedMeeting, packed.getMeetings().get(0));
+        Assertions.assertTrue(packed.getNotices().contains(packedMeeting));
+        Assertions.assertEquals(meeting.getLocalTime(), packedMeeting.getLocalTime());
+    }
+
+    @Test
+    void cachePacksNotices() {
+        NoticePool pool = new NoticePool();
+        NoticesCache cache = new NoticesCache(8, Duration.ofMinutes(1));
+        cache.setPool(pool);
+        Notices notices = new Notices(DATE);
+        notices.setNotices(List.of(new Notice(1, Notice.Level.ALL, "Test 1", "", "SD")));
+        cache.put("url", DATE, notices);
+        Notices cached = cache.get("url", DATE);
+        Assertions.assertNotSame(notices, cached);
+        Assertions.assertEquals(notices.getNotices(), cached.getNotices());
+        Assertions.assertEquals(3, pool.size());
+    }
+
+}
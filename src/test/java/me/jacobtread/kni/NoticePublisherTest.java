@@ -0,0 +1,146 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class NoticePublisherTest {
+
+    private static final String DATE = "01/01/2020";
+
+    private StubKamarServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new StubKamarServer().setNoticeCounts(200, 50);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    /**
+     * A subscriber which collects the notices and requests more only when told to
+     */
+    private static class TestSubscriber implements Flow.Subscriber<Notice> {
+
+        private final List<Notice> notices = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.complete(subscription);
+        }
+
+        @Override
+        public void onNext(Notice item) {
+            notices.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+
+        private Flow.Subscription getSubscription() throws Exception {
+            return subscription.get(1, TimeUnit.SECONDS);
+        }
+
+        private Throwable awaitError() {
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+            return exception.getCause();
+        }
+
+    }
+
+    @Test
+    void publishesWithBackpressure() throws Exception {
+        KNI kni = server.createKNI();
+        List<Notice> expected = kni.retrieve(DATE).getNotices();
+        RequestMetrics metrics = new RequestMetrics();
+        kni.setRequestListener(metrics);
+        TestSubscriber subscriber = new TestSubscriber();
+        kni.publish(DATE).subscribe(subscriber);
+        subscriber.getSubscription().request(2);
+        Thread.sleep(200);
+        // Reading the response waits for more demand
+        Assertions.assertEquals(2, subscriber.notices.size());
+        Assertions.assertFalse(subscriber.done.isDone());
+        subscriber.getSubscription().request(Long.MAX_VALUE);
+        subscriber.done.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(expected, subscriber.notices);
+        Assertions.assertEquals(1, metrics.getRequests());
+    }
+
+    @Test
+    void signalsErrors() throws Exception {
+        KNI kni = server.createKNI();
+        server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+        TestSubscriber subscriber = new TestSubscriber();
+        kni.publish(DATE).subscribe(subscriber);
+        subscriber.getSubscription().request(Long.MAX_VALUE);
+        Throwable error = subscriber.awaitError();
+        Assertions.assertTrue(error instanceof KamarErrorException, error.toString());
+        Assertions.assertEquals("Stub failure", ((KamarErrorException) error).getErrorMessage());
+
+        // Notices sent before the response broke off stay sent and the failure is signalled
+        kni.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        server.setFailures(StubKamarServer.FailureMode.TRUNCATED, 1);
+        long requests = server.getRequests();
+        subscriber = new TestSubscriber();
+        kni.publish(DATE).subscribe(subscriber);
+        subscriber.getSubscription().request(Long.MAX_VALUE);
+        Throwable truncated = subscriber.awaitError();
+        Assertions.assertTrue(truncated instanceof IOException || truncated instanceof SAXException, truncated.toString());
+        Assertions.assertFalse(subscriber.notices.isEmpty());
+        Assertions.assertEquals(requests + 1, server.getRequests());
+
+        server.setFailures(StubKamarServer.FailureMode.TRUNCATED, 0);
+        subscriber = new TestSubscriber();
+        kni.publish(DATE).subscribe(subscriber);
+        subscriber.getSubscription().request(0);
+        Assertions.assertTrue(subscriber.awaitError() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void stopsWhenCancelled() throws Exception {
+        KNI kni = server.createKNI();
+        RequestMetrics metrics = new RequestMetrics();
+        kni.setRequestListener(metrics);
+        TestSubscriber subscriber = new TestSubscriber();
+        kni.publish(DATE).subscribe(subscriber);
+        subscriber.getSubscription().request(1);
+        while (subscriber.notices.isEmpty()) {
+            Thread.sleep(5);
+        }
+        subscriber.getSubscription().cancel();
+        // The request ends once the parser sees the cancellation
+        long start = System.nanoTime();
+        while (metrics.getRequests() == 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(1, metrics.getRequests());
+        Assertions.assertEquals(1, subscriber.notices.size());
+        Assertions.assertFalse(subscriber.done.isDone());
+    }
+
+}
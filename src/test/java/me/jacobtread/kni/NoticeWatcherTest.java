@@ -0,0 +1,160 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class NoticeWatcherTest {
+
+    /**
+     * Records the events of a watcher
+     */
+    private static class RecordingListener implements NoticeListener {
+
+        private final List<Notice> added = new CopyOnWriteArrayList<>();
+        private final List<Notice> removed = new CopyOnWriteArrayList<>();
+        private final List<Notice> changed = new CopyOnWriteArrayList<>();
+        private final List<String> errorMessages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onAdded(Notice notice) {
+            added.add(notice);
+        }
+
+        @Override
+        public void onRemoved(Notice notice) {
+            removed.add(notice);
+        }
+
+        @Override
+        public void onChanged(Notice previous, Notice current) {
+            changed.add(current);
+        }
+
+        @Override
+        public void onErrorMessage(String errorMessage) {
+            errorMessages.add(errorMessage);
+        }
+
+        private void clear() {
+            added.clear();
+            removed.clear();
+            changed.clear();
+            errorMessages.clear();
+        }
+
+    }
+
+    @Test
+    void reportsChangesBetweenPolls() throws Exception {
+        LocalDate today = LocalDate.of(2020, 1, 1);
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(2, 1);
+             NoticeWatcher watcher = new NoticeWatcher(server.createKNI(), Duration.ofHours(1))) {
+            RecordingListener listener = new RecordingListener();
+            watcher.addListener(listener);
+
+            Assertions.assertTrue(watcher.poll(today));
+            Assertions.assertEquals(3, listener.added.size());
+            Assertions.assertTrue(listener.removed.isEmpty());
+            Assertions.assertTrue(listener.changed.isEmpty());
+
+            // The identical response is never parsed
+            listener.clear();
+            Assertions.assertFalse(watcher.poll(today));
+            Assertions.assertEquals(1, watcher.getSkipped());
+            Assertions.assertTrue(listener.added.isEmpty());
+
+            // The content of every notice is generated from the counts so the existing notices change
+            server.setNoticeCounts(3, 1);
+            Assertions.assertTrue(watcher.poll(today));
+            Assertions.assertEquals(1, listener.added.size());
+            Assertions.assertEquals(3, listener.added.get(0).getIndex());
+            Assertions.assertEquals(3, listener.changed.size());
+            Assertions.assertTrue(listener.removed.isEmpty());
+
+            listener.clear();
+            server.setNoticeCounts(2, 0);
+            Assertions.assertTrue(watcher.poll(today));
+            Assertions.assertEquals(2, listener.removed.size());
+            Assertions.assertEquals(2, listener.changed.size());
+            Assertions.assertTrue(listener.added.isEmpty());
+
+            listener.clear();
+            server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+            Assertions.assertTrue(watcher.poll(today));
+            Assertions.assertEquals(List.of("Stub failure"), listener.errorMessages);
+            Assertions.assertTrue(listener.removed.isEmpty());
+
+            // Recovering compares against the notices from before the error
+            listener.clear();
+            server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 0);
+            Assertions.assertTrue(watcher.poll(today));
+            Assertions.assertTrue(listener.added.isEmpty());
+            Assertions.assertTrue(listener.removed.isEmpty());
+            Assertions.assertTrue(listener.changed.isEmpty());
+            Assertions.assertEquals(6, watcher.getPolls());
+        }
+    }
+
+    @Test
+    void startsOverOnANewDay() throws Exception {
+        LocalDate today = LocalDate.of(2020, 1, 1);
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(2, 1);
+             NoticeWatcher watcher = new NoticeWatcher(server.createKNI(), Duration.ofHours(1))) {
+            RecordingListener listener = new RecordingListener();
+            watcher.addListener(listener);
+            Assertions.assertTrue(watcher.poll(today));
+
+            // The previous day is not reported as removed and the identical response is not skipped
+            listener.clear();
+            Assertions.assertTrue(watcher.poll(today.plusDays(1)));
+            Assertions.assertEquals(3, listener.added.size());
+            Assertions.assertTrue(listener.removed.isEmpty());
+            Assertions.assertEquals(0, watcher.getSkipped());
+        }
+    }
+
+    @Test
+    void isolatesBrokenListeners() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(2, 1);
+             NoticeWatcher watcher = new NoticeWatcher(server.createKNI(), Duration.ofHours(1))) {
+            watcher.addListener(new NoticeListener() {
+                @Override
+                public void onAdded(Notice notice) {
+                    throw new IllegalStateException("Broken listener");
+                }
+            });
+            RecordingListener listener = new RecordingListener();
+            watcher.addListener(listener);
+            Assertions.assertTrue(watcher.poll(LocalDate.of(2020, 1, 1)));
+            Assertions.assertEquals(3, listener.added.size());
+        }
+    }
+
+    @Test
+    void sharesTheCircuitBreaker() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1)) {
+            KNI kni = server.createKNI();
+            CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+            kni.setRetryPolicy(new RetryPolicy(2, Duration.ofMillis(10), Duration.ofMillis(50)));
+            kni.setCircuitBreaker(circuitBreaker);
+            try (NoticeWatcher watcher = new NoticeWatcher(kni, Duration.ofHours(1))) {
+                Assertions.assertThrows(IOException.class, watcher::poll);
+                Assertions.assertEquals(2, server.getRequests());
+                // The third failure opens the circuit before the second attempt
+                Assertions.assertThrows(CircuitOpenException.class, watcher::poll);
+                Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(server.getHost()));
+                Assertions.assertThrows(CircuitOpenException.class, watcher::poll);
+                Assertions.assertThrows(CircuitOpenException.class, () -> kni.retrieve("01/01/2020"));
+                Assertions.assertEquals(3, server.getRequests());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+public class NoticesCacheTest {
+
+    private static final String URL = "https://demo.school.kiwi/api/api.php";
+
+    private static Notices createNotices(String date) {
+        Notices notices = new Notices(date);
+        notices.setNotices(List.of());
+        return notices;
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        NoticesCache cache = new NoticesCache(2, Duration.ofMinutes(1));
+        Notices first = createNotices("01/01/2020");
+        cache.put(URL, "01/01/2020", first);
+        cache.put(URL, "02/01/2020", createNotices("02/01/2020"));
+        // Use the first entry so the second becomes the least recently used
+        Assertions.assertSame(first, cache.get(URL, "01/01/2020"));
+        cache.put(URL, "03/01/2020", createNotices("03/01/2020"));
+        Assertions.assertNull(cache.get(URL, "02/01/2020"));
+        Assertions.assertNotNull(cache.get(URL, "03/01/2020"));
+        Assertions.assertEquals(2, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void expiresEntries() {
+        NoticesCache cache = new NoticesCache(8, Duration.ZERO);
+        cache.setPastTtl(Duration.ofMinutes(1));
+        String today = KNI.DATE_FORMATTER.format(LocalDate.now());
+        String past = KNI.DATE_FORMATTER.format(LocalDate.now().minusDays(7));
+        cache.put(URL, today, createNotices(today));
+        cache.put(URL, past, createNotices(past));
+        Assertions.assertNull(cache.get(URL, today), "Expected today to use the zero time to live");
+        Assertions.assertNotNull(cache.get(URL, past), "Expected past dates to use the past time to live");
+        Assertions.assertEquals(1, cache.getExpirations());
+    }
+
+    @Test
+    void ignoresErrors() {
+        NoticesCache cache = new NoticesCache(8, Duration.ofMinutes(1));
+        Notices notices = new Notices("01/01/2020");
+        notices.setErrorMessage("Invalid Key");
+        cache.put(URL, "01/01/2020", notices);
+        Assertions.assertEquals(0, cache.size());
+    }
+
+}
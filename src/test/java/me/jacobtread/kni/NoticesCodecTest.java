@@ -0,0 +1,101 @@
+package me.jacobtread.kni;
+
+import me.jacobtread.kni.data.MeetingNotice;
+import me.jacobtread.kni.data.Notice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+public class NoticesCodecTest {
+
+    private static final String DATE = "01/01/2020";
+
+    private static void assertNoticesEqual(Notices expected, Notices actual) {
+        Assertions.assertEquals(expected.getDate(), actual.getDate());
+        Assertions.assertEquals(expected.getErrorMessage(), actual.getErrorMessage());
+        Assertions.assertEquals(expected.getNotices(), actual.getNotices());
+    }
+
+    @Test
+    void roundTrips() throws Exception {
+        Notices parsed = new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(40, 10)), DATE);
+        Notices edge = new Notices(DATE);
+        edge.setNotices(List.of(
+                new Notice(-5, Notice.Level.OTHER, null, "\u00e9\u4e2d \ud83d\ude00", ""),
+                new MeetingNotice(Integer.MAX_VALUE, Notice.Level.ALL, "Meeting", null, "SD", "Hall", null, "")
+        ));
+        Notices error = new Notices(DATE);
+        error.setErrorMessage("Invalid Date");
+        for (Notices notices : List.of(parsed, edge, error)) {
+            byte[] bytes = NoticesCodec.encode(notices);
+            Assertions.assertEquals(NoticesCodec.encodedLength(notices), bytes.length);
+            assertNoticesEqual(notices, NoticesCodec.decode(bytes));
+            // Direct buffers are decoded without an array
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            NoticesCodec.encode(notices, direct);
+            direct.flip();
+            assertNoticesEqual(notices, NoticesCodec.decode(direct));
+            Assertions.assertFalse(direct.hasRemaining());
+        }
+        Assertions.assertTrue(NoticesCodec.decode(NoticesCodec.encode(parsed)).getMeetings().size() > 0);
+    }
+
+    @Test
+    void streamsThroughChannels() throws Exception {
+        NoticePool pool = new NoticePool();
+        List<Notices> snapshots = List.of(
+                new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(2000, 200)), DATE),
+                new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(3, 1)), "02/01/2020")
+        );
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        WritableByteChannel writeChannel = Channels.newChannel(output);
+        for (Notices notices : snapshots) {
+            NoticesCodec.encode(notices, writeChannel);
+        }
+        ReadableByteChannel readChannel = Channels.newChannel(new ByteArrayInputStream(output.toByteArray()));
+        for (Notices notices : snapshots) {
+            assertNoticesEqual(notices, NoticesCodec.decode(readChannel, pool));
+        }
+        Assertions.assertNull(NoticesCodec.decode(readChannel, pool));
+        Notice notice = snapshots.get(0).getNotices().get(0);
+        Assertions.assertSame(pool.intern(new String(notice.getTeacher())), pool.intern(notice.getTeacher()));
+    }
+
+    @Test
+    void rejectsInvalidEncodings() throws Exception {
+        Notices notices = new KNI("localhost").parse(new ByteArrayInputStream(NoticeFixtures.createResponse(10, 2)), DATE);
+        byte[] bytes = NoticesCodec.encode(notices);
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Arrays.copyOf(bytes, 3)));
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Channels.newChannel(
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2))), null));
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = 99;
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(badVersion));
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 0;
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(badMagic));
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Channels.newChannel(new ByteArrayInputStream(badMagic)), null));
+        Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Channels.newChannel(new ByteArrayInputStream(badVersion)), null));
+        // Negative and implausible lengths are rejected before anything is allocated for them
+        for (byte[] length : new byte[][]{{-1, -1, -1, -1, 0x0F}, {-1, -1, -1, -1, 0x07}}) {
+            byte[] badLength = Arrays.copyOf(bytes, 5 + length.length);
+            System.arraycopy(length, 0, badLength, 5, length.length);
+            Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(badLength));
+            Assertions.assertThrows(IOException.class, () -> NoticesCodec.decode(Channels.newChannel(new ByteArrayInputStream(badLength)), null));
+        }
+        Assertions.assertThrows(BufferOverflowException.class,
+                () -> NoticesCodec.encode(notices, ByteBuffer.allocate(bytes.length - 1)));
+    }
+
+}
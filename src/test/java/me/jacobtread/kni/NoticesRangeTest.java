@@ -0,0 +1,77 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+public class NoticesRangeTest {
+
+    private static final LocalDate FROM = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void mergesTheDaysOfTheRange() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(3, 1)) {
+            NoticesRange range = server.createKNI().retrieveRange(FROM, FROM.plusDays(4));
+            Assertions.assertTrue(range.isComplete(), range.toString());
+            Assertions.assertEquals(5, range.getDays().size());
+            Assertions.assertEquals(FROM, range.getDays().keySet().iterator().next());
+            // The stub sends the same notices for every day so they only appear once
+            Assertions.assertEquals(4, range.getNotices().size());
+            Assertions.assertEquals(5, server.getRequests());
+        }
+    }
+
+    @Test
+    void reportsFailedDays() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1)) {
+            NoticesRange range = server.createKNI().retrieveRange(FROM, FROM.plusDays(2));
+            Assertions.assertFalse(range.isComplete());
+            Assertions.assertEquals(3, range.getFailures().size());
+            Assertions.assertTrue(range.getFailures().get(FROM) instanceof IOException, range.getFailures().toString());
+            Assertions.assertTrue(range.getDays().isEmpty());
+            Assertions.assertTrue(range.getNotices().isEmpty());
+
+            // Every day ends up in exactly one of the two
+            server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 0.5);
+            range = server.createKNI().retrieveRange(FROM, FROM.plusDays(19));
+            Assertions.assertEquals(20, range.getDays().size() + range.getFailures().size());
+        }
+    }
+
+    @Test
+    void boundsTheRequestsInFlight() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setLatency(50, 0)) {
+            KNI kni = server.createKNI();
+            NoticesRange range = kni.retrieveRangeAsync(FROM, FROM.plusDays(11), 3).get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(range.isComplete(), range.toString());
+            Assertions.assertEquals(12, server.getRequests());
+            Assertions.assertEquals(3, server.getMaxConcurrentRequests());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> kni.retrieveRangeAsync(FROM, FROM, 0));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> kni.retrieveRangeAsync(FROM, FROM.minusDays(1)));
+        }
+    }
+
+    @Test
+    void completesCachedDaysWithoutRecursing() throws Exception {
+        try (StubKamarServer server = new StubKamarServer()) {
+            KNI kni = server.createKNI();
+            NoticesCache cache = new NoticesCache(20000, Duration.ofHours(1));
+            kni.setCache(cache);
+            Notices notices = kni.parse(new ByteArrayInputStream(NoticeFixtures.createResponse(1, 0)), "01/01/2020");
+            LocalDate to = FROM.plusDays(9999);
+            for (LocalDate date = FROM; !date.isAfter(to); date = date.plusDays(1)) {
+                cache.put("http://" + server.getHost() + "/api/api.php", KNI.DATE_FORMATTER.format(date), notices);
+            }
+            // Every day completes straight away, each one used to send the next from its own callback
+            NoticesRange range = kni.retrieveRangeAsync(FROM, to, 1).get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(10000, range.getDays().size());
+            Assertions.assertEquals(0, server.getRequests());
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package me.jacobtread.kni;
 
+import me.jacobtread.kni.data.MeetingNotice;
 import me.jacobtread.kni.data.Notice;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -40,4 +41,21 @@ public class NoticesTest {
         }
     }
 
+    @Test
+    void checkViews() {
+        Notice first = new Notice(1, Notice.Level.ALL, "Test 1", "", "SD");
+        Notice second = new Notice(2, Notice.Level.SENIORS, "Test 2", "", "AB");
+        MeetingNotice meeting = new MeetingNotice(3, Notice.Level.SENIORS, "Meeting", "", "SD", "Library", "Mon 3 Feb", "");
+        Notices notices = new Notices(DATE);
+        notices.setNotices(List.of(first, second, meeting));
+        Assertions.assertEquals(List.of(meeting), notices.getMeetings());
+        Assertions.assertEquals(List.of(first, second), notices.getGeneral());
+        Assertions.assertEquals(List.of(second, meeting), notices.getNotices(Notice.Level.SENIORS));
+        Assertions.assertEquals(List.of(first, meeting), notices.getNoticesByTeacher("SD"));
+        Assertions.assertEquals(List.of(meeting), notices.query().level(Notice.Level.SENIORS).teacher("SD").list());
+        Assertions.assertEquals(List.of(second), notices.query().level(Notice.Level.SENIORS).general().list());
+        Assertions.assertSame(notices.getMeetings(), notices.query().meetings().list());
+        Assertions.assertEquals(List.of(first), notices.getNotices(notice -> notice.getSubject().equals("Test 1")));
+    }
+
 }
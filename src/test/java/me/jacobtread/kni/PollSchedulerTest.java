@@ -0,0 +1,312 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class PollSchedulerTest {
+
+    private static final Duration MIN_INTERVAL = Duration.ofMillis(20);
+    private static final Duration MAX_INTERVAL = Duration.ofMillis(320);
+    private static final Instant START = LocalDateTime.of(2020, 1, 1, 9, 0).toInstant(ZoneOffset.UTC);
+
+    /**
+     * A clock which only moves when the scheduler runs a task
+     */
+    private static class ManualClock extends Clock {
+
+        private volatile Instant now = START;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+    }
+
+    /**
+     * A scheduler whose tasks are only run by the test, each run moves the clock to
+     * the time the task was due. The polls themselves still complete on other threads
+     * so the test waits for the portals to schedule their next poll before running one
+     */
+    private static class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final ManualClock clock;
+        private final List<ManualTask> tasks = new ArrayList<>();
+
+        private ManualScheduler(ManualClock clock) {
+            this.clock = clock;
+        }
+
+        private class ManualTask extends FutureTask<Object> implements ScheduledFuture<Object> {
+
+            private final Instant due;
+            private final long delayNanos;
+
+            private ManualTask(Runnable runnable, long delayNanos) {
+                super(runnable, null);
+                this.delayNanos = delayNanos;
+                this.due = clock.now.plusNanos(delayNanos);
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(delayNanos, other.getDelay(TimeUnit.NANOSECONDS));
+            }
+
+        }
+
+        /**
+         * Waits for the number of scheduled tasks and runs the one due first
+         *
+         * @param count The number of tasks to wait for
+         * @return The delay the task was scheduled with
+         */
+        private Duration runNext(int count) throws InterruptedException {
+            ManualTask next;
+            synchronized (this) {
+                awaitTasks(count);
+                next = tasks.get(0);
+                for (ManualTask task : tasks) {
+                    if (task.due.isBefore(next.due)) {
+                        next = task;
+                    }
+                }
+                tasks.remove(next);
+                if (next.due.isAfter(clock.now)) {
+                    clock.now = next.due;
+                }
+            }
+            next.run();
+            return Duration.ofNanos(next.delayNanos);
+        }
+
+        /**
+         * Waits for the polls in flight to complete and schedule their next poll
+         *
+         * @param count The number of tasks to wait for
+         */
+        private synchronized void awaitTasks(int count) throws InterruptedException {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            tasks.removeIf(ManualTask::isCancelled);
+            while (tasks.size() < count) {
+                long remaining = end - System.nanoTime();
+                Assertions.assertTrue(remaining > 0, "Expected " + count + " scheduled tasks but there were " + tasks.size());
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                tasks.removeIf(ManualTask::isCancelled);
+            }
+        }
+
+        @Override
+        public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            ManualTask task = new ManualTask(command, unit.toNanos(delay));
+            tasks.add(task);
+            notifyAll();
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+    }
+
+    @Test
+    void learnsEachPortalsInterval() throws Exception {
+        ManualClock clock = new ManualClock();
+        ManualScheduler executor = new ManualScheduler(clock);
+        try (StubKamarServer quiet = new StubKamarServer();
+             StubKamarServer busy = new StubKamarServer();
+             PollScheduler scheduler = new PollScheduler(MIN_INTERVAL, MAX_INTERVAL, executor, clock)) {
+            scheduler.setJitter(0);
+            scheduler.setPrefetchTime(null);
+            KNI busyKNI = busy.createKNI();
+            // Cached snapshots must not hide the changes
+            busyKNI.setCache(new NoticesCache(10, Duration.ofHours(1)));
+            scheduler.addPortal("quiet", quiet.createKNI());
+            scheduler.addPortal("busy", busyKNI);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> scheduler.addPortal("busy", busy.createKNI()));
+            for (int i = 0; i < 60; i++) {
+                // Changes the notices of the busy portal before every poll
+                busy.setNoticeCounts(1 + i % 4, 0);
+                executor.runNext(2);
+            }
+            executor.awaitTasks(2);
+
+            PortalStatus quietStatus = scheduler.getStatus("quiet");
+            PortalStatus busyStatus = scheduler.getStatus("busy");
+            Assertions.assertEquals(MAX_INTERVAL, quietStatus.getInterval(), quietStatus.toString());
+            Assertions.assertEquals(0, quietStatus.getChangesPerHour());
+            Assertions.assertEquals(1, quietStatus.getChanges());
+            Assertions.assertEquals(MIN_INTERVAL, busyStatus.getInterval(), busyStatus.toString());
+            Assertions.assertTrue(busyStatus.getChangesPerHour() > 0);
+            Assertions.assertTrue(busyStatus.getPolls() > quietStatus.getPolls() * 3, busyStatus + " " + quietStatus);
+            Assertions.assertFalse(quietStatus.getNextPoll().isAfter(clock.instant().plus(MAX_INTERVAL)));
+            Assertions.assertEquals(2, scheduler.getStatuses().size());
+
+            // Removed portals are no longer polled
+            Assertions.assertTrue(scheduler.removePortal("quiet"));
+            long requests = quiet.getRequests();
+            for (int i = 0; i < 10; i++) {
+                executor.runNext(1);
+            }
+            executor.awaitTasks(1);
+            Assertions.assertEquals(requests, quiet.getRequests());
+            Assertions.assertNull(scheduler.getStatus("quiet"));
+        }
+    }
+
+    @Test
+    void prefetchesTheNextSchoolDay() throws Exception {
+        // A Friday evening so the next school day is the Tuesday after the Monday holiday
+        ManualClock clock = new ManualClock();
+        clock.now = LocalDateTime.of(2020, 1, 3, 18, 0).toInstant(ZoneOffset.UTC);
+        LocalDate monday = LocalDate.of(2020, 1, 6);
+        ManualScheduler executor = new ManualScheduler(clock);
+        try (StubKamarServer server = new StubKamarServer();
+             PollScheduler scheduler = new PollScheduler(MIN_INTERVAL, MAX_INTERVAL, executor, clock)) {
+            scheduler.setPrefetchTime(LocalTime.of(17, 0));
+            scheduler.setSchoolDays(date -> date.getDayOfWeek().getValue() <= 5 && !date.equals(monday));
+            CompletableFuture<Notices> prefetched = new CompletableFuture<>();
+            List<String> polledDates = new CopyOnWriteArrayList<>();
+            scheduler.addListener(new PollListener() {
+                @Override
+                public void onPolled(String portal, Notices notices, boolean isChanged) {
+                    polledDates.add(notices.getDate());
+                }
+
+                @Override
+                public void onPrefetched(String portal, Notices notices) {
+                    prefetched.complete(notices);
+                }
+            });
+            scheduler.addPortal("portal", server.createKNI());
+            executor.runNext(1);
+            Assertions.assertEquals("07/01/2020", prefetched.get(5, TimeUnit.SECONDS).getDate());
+            for (int i = 0; i < 4; i++) {
+                executor.runNext(1);
+            }
+            executor.awaitTasks(1);
+            PortalStatus status = scheduler.getStatus("portal");
+            Assertions.assertEquals(LocalDate.of(2020, 1, 7), status.getPrefetchedDate());
+            Assertions.assertNotNull(status.getNextPoll());
+            // Prefetched once and then only the current date is polled
+            Assertions.assertEquals(5, status.getPolls());
+            Assertions.assertEquals(6, server.getRequests());
+            Assertions.assertEquals(List.of("03/01/2020", "03/01/2020", "03/01/2020", "03/01/2020", "03/01/2020"), polledDates);
+        }
+    }
+
+    @Test
+    void backsOffFailingPortals() throws Exception {
+        ManualClock clock = new ManualClock();
+        ManualScheduler executor = new ManualScheduler(clock);
+        try (StubKamarServer server = new StubKamarServer().setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+             PollScheduler scheduler = new PollScheduler(MIN_INTERVAL, MAX_INTERVAL, executor, clock)) {
+            scheduler.setJitter(0);
+            scheduler.setPrefetchTime(null);
+            List<Exception> errors = new CopyOnWriteArrayList<>();
+            scheduler.addListener(new PollListener() {
+                @Override
+                public void onError(String portal, Exception exception) {
+                    errors.add(exception);
+                }
+            });
+            scheduler.addPortal("portal", server.createKNI());
+            executor.runNext(1);
+            List<Duration> delays = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                delays.add(executor.runNext(1));
+            }
+            executor.awaitTasks(1);
+            // Each consecutive failure doubles the delay up to the maximum interval
+            Assertions.assertEquals(List.of(Duration.ofMillis(40), Duration.ofMillis(80), Duration.ofMillis(160),
+                    Duration.ofMillis(320), Duration.ofMillis(320)), delays);
+            PortalStatus status = scheduler.getStatus("portal");
+            Assertions.assertEquals(6, status.getFailures(), status.toString());
+            Assertions.assertEquals(6, errors.size());
+            Assertions.assertTrue(status.getLastError() instanceof IOException, status.toString());
+
+            server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+            executor.runNext(1);
+            executor.awaitTasks(1);
+            Assertions.assertTrue(scheduler.getStatus("portal").getLastError() instanceof KamarErrorException);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.SAXException;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ReplayTransportTest {
+
+    private static final String DATE = "01/01/2020";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAndReplays() throws Exception {
+        Notices retrieved;
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(30, 10)) {
+            KNI kni = server.createKNI();
+            ResponseRecorder recorder = new ResponseRecorder(directory, 8);
+            kni.setRecorder(recorder);
+            retrieved = kni.retrieve(DATE);
+            kni.retrieveAsync("02/01/2020").get();
+            Assertions.assertEquals(2, recorder.size());
+        }
+
+        ReplayTransport transport = new ReplayTransport(directory);
+        List<Recording> recordings = transport.getRecordings();
+        Assertions.assertEquals(2, recordings.size());
+        Assertions.assertEquals(DATE, recordings.get(0).getDate());
+        // The recorded body must be exactly what the portal sent
+        Assertions.assertArrayEquals(NoticeFixtures.createResponse(30, 10), recordings.get(0).getBody());
+
+        KNI replay = new KNI("replay.example");
+        replay.setTransport(transport);
+        Assertions.assertEquals(retrieved.getNotices(), replay.retrieve(DATE).getNotices());
+        Assertions.assertEquals(retrieved.getNotices(), replay.retrieveAsync(DATE).get().getNotices());
+        Assertions.assertThrows(FileNotFoundException.class, () -> replay.retrieve("03/01/2020"));
+        transport.setMatchDate(false);
+        Assertions.assertNull(replay.retrieve("03/01/2020").getErrorMessage());
+    }
+
+    @Test
+    void recordsWholeResponseWhenParsingFails() throws Exception {
+        try (StubKamarServer server = new StubKamarServer()) {
+            KNI kni = server.createKNI();
+            ResponseRecorder recorder = new ResponseRecorder(directory, 2);
+            kni.setRecorder(recorder);
+            server.setFailures(StubKamarServer.FailureMode.MALFORMED, 1);
+            Assertions.assertThrows(SAXException.class, () -> kni.retrieve(DATE));
+            ReplayTransport transport = new ReplayTransport(directory);
+            Assertions.assertEquals("<NoticesResults><GeneralNotices>",
+                    new String(transport.getRecordings().get(0).getBody(), StandardCharsets.UTF_8));
+
+            // Only the newest recordings are kept
+            server.setFailures(StubKamarServer.FailureMode.MALFORMED, 0);
+            kni.retrieve(DATE);
+            kni.retrieve(DATE);
+            Assertions.assertEquals(2, recorder.size());
+            Assertions.assertEquals(2, new ReplayTransport(directory).getRecordings().size());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class RequestMetricsTest {
+
+    private static final String DATE = "01/01/2020";
+
+    @Test
+    void tracesRequests() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(30, 10)) {
+            KNI kni = server.createKNI();
+            List<RequestTrace> traces = new ArrayList<>();
+            kni.setRequestListener(traces::add);
+            kni.retrieve(DATE);
+            kni.retrieveAsync(DATE).get();
+            server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+            kni.retrieve(DATE);
+            server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+            Assertions.assertThrows(IOException.class, () -> kni.retrieve(DATE));
+            Assertions.assertThrows(ExecutionException.class, () -> kni.retrieveAsync(DATE).get());
+
+            Assertions.assertEquals(5, traces.size());
+            RequestTrace blocking = traces.get(0);
+            for (RequestTrace.Phase phase : RequestTrace.Phase.values()) {
+                Assertions.assertTrue(blocking.getNanos(phase) >= 0, phase.name());
+            }
+            Assertions.assertEquals(40, blocking.getNoticeCount());
+            Assertions.assertTrue(blocking.getResponseBytes() > 0);
+            Assertions.assertEquals(DATE, blocking.getDate());
+
+            RequestTrace async = traces.get(1);
+            Assertions.assertEquals(-1, async.getNanos(RequestTrace.Phase.CONNECT));
+            Assertions.assertTrue(async.getNanos(RequestTrace.Phase.PARSE) >= 0);
+            Assertions.assertEquals(blocking.getResponseBytes(), async.getResponseBytes());
+
+            Assertions.assertEquals("Stub failure", traces.get(2).getErrorMessage());
+            Assertions.assertTrue(traces.get(3).getException() instanceof IOException);
+            Assertions.assertTrue(traces.get(4).getException() instanceof IOException);
+        }
+    }
+
+    @Test
+    void aggregatesMetrics() throws Exception {
+        try (StubKamarServer server = new StubKamarServer().setNoticeCounts(5, 5)) {
+            KNI kni = server.createKNI();
+            RequestMetrics metrics = new RequestMetrics();
+            kni.setRequestListener(metrics);
+            for (int i = 0; i < 3; i++) {
+                kni.retrieve(DATE);
+            }
+            server.setFailures(StubKamarServer.FailureMode.KAMAR_ERROR, 1);
+            kni.retrieve(DATE);
+            Assertions.assertEquals(4, metrics.getRequests());
+            Assertions.assertEquals(0, metrics.getFailures());
+            Assertions.assertEquals(1, metrics.getErrorMessages());
+            Assertions.assertEquals(30, metrics.getNotices());
+            Assertions.assertEquals(4, metrics.getHistogram(RequestTrace.Phase.TOTAL).getCount());
+            Assertions.assertEquals(4, metrics.getHistogram(RequestTrace.Phase.PARSE).getCount());
+        }
+    }
+
+    @Test
+    void histogramPercentiles() {
+        RequestMetrics.Histogram histogram = new RequestMetrics.Histogram();
+        Assertions.assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(1_000_000, histogram.getMax());
+        Assertions.assertEquals(500_500, histogram.getMean());
+        // Buckets are within 25% of the recorded values
+        long p50 = histogram.getPercentile(0.5);
+        Assertions.assertTrue(p50 >= 500_000 && p50 <= 625_000, Long.toString(p50));
+        long p99 = histogram.getPercentile(0.99);
+        Assertions.assertTrue(p99 >= 990_000 && p99 <= 1_000_000, Long.toString(p99));
+        Assertions.assertEquals(1_000_000, histogram.getPercentile(1));
+    }
+
+}
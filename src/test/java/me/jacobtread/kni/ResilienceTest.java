@@ -0,0 +1,97 @@
+package me.jacobtread.kni;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ResilienceTest {
+
+    private static final String DATE = "01/01/2020";
+
+    private StubKamarServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new StubKamarServer().setNoticeCounts(10, 2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void timesOut() {
+        server.setLatency(2000, 0);
+        KNI kni = server.createKNI();
+        kni.setReadTimeout(Duration.ofMillis(200));
+        long start = System.nanoTime();
+        Assertions.assertThrows(IOException.class, () -> kni.retrieve(DATE));
+
+        kni.setReadTimeout(null);
+        kni.setRequestTimeout(Duration.ofMillis(300));
+        Assertions.assertThrows(HttpTimeoutException.class, () -> kni.retrieve(DATE));
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> kni.retrieveAsync(DATE).get());
+        Assertions.assertTrue(exception.getCause() instanceof HttpTimeoutException);
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1800), "Expected requests to be aborted");
+    }
+
+    @Test
+    void retriesAndBreaksCircuit() throws Exception {
+        KNI kni = server.createKNI();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(5, Duration.ofMillis(300));
+        kni.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        kni.setCircuitBreaker(circuitBreaker);
+        server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 1);
+        Assertions.assertThrows(IOException.class, () -> kni.retrieve(DATE));
+        Assertions.assertEquals(3, server.getRequests());
+
+        // The fifth failure opens the circuit before the third attempt
+        Assertions.assertThrows(CircuitOpenException.class, () -> kni.retrieve(DATE));
+        Assertions.assertEquals(5, server.getRequests());
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(server.getHost()));
+        Assertions.assertThrows(CircuitOpenException.class, () -> kni.retrieve(DATE));
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> kni.retrieveAsync(DATE).get());
+        Assertions.assertTrue(exception.getCause() instanceof CircuitOpenException);
+        Assertions.assertEquals(5, server.getRequests());
+
+        // After the open duration a trial request closes the circuit
+        server.setFailures(StubKamarServer.FailureMode.HTTP_ERROR, 0);
+        Thread.sleep(350);
+        Assertions.assertTrue(kni.retrieve(DATE).isSuccess());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(server.getHost()));
+    }
+
+    @Test
+    void hedgesSlowRequests() throws Exception {
+        KNI kni = server.createKNI();
+        HedgePolicy hedgePolicy = new HedgePolicy(0.95, Duration.ofMillis(100), Duration.ofMillis(100));
+        kni.setHedgePolicy(hedgePolicy);
+        server.setFailures(StubKamarServer.FailureMode.STALLED, 1);
+        long start = System.nanoTime();
+        CompletableFuture<Notices> future = kni.retrieveAsync(DATE);
+        while (server.getRequests() == 0) {
+            Thread.sleep(5);
+        }
+        // Only the first request stalls
+        Thread.sleep(20);
+        server.setFailures(StubKamarServer.FailureMode.STALLED, 0);
+        Assertions.assertTrue(future.get(StubKamarServer.STALL_MILLIS - 500, TimeUnit.MILLISECONDS).isSuccess());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(StubKamarServer.STALL_MILLIS));
+        Assertions.assertEquals(1, hedgePolicy.getHedgeCount());
+        Assertions.assertEquals(2, server.getRequests());
+
+        // Fast requests aren't hedged
+        Assertions.assertTrue(kni.retrieve(DATE).isSuccess());
+        Assertions.assertEquals(1, hedgePolicy.getHedgeCount());
+    }
+
+}
@@ -0,0 +1,282 @@
+package me.jacobtread.kni;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the KAMAR api/api.php endpoint which answers
+ * GetNotices requests with generated notices (see {@link NoticeFixtures})
+ * <p>
+ * The size of the responses, the latency and a rate of failures can be
+ * changed at any time while the server is running
+ */
+public class StubKamarServer implements Closeable {
+
+    /**
+     * The ways a request to the stub can fail
+     */
+    public enum FailureMode {
+        KAMAR_ERROR, // Respond with a KAMAR <Error> body
+        HTTP_ERROR, // Respond with a 500 status code
+        TRUNCATED, // Send half the response and then close the connection
+        MALFORMED, // Respond with invalid XML
+        STALLED // Wait for STALL_MILLIS before responding normally
+    }
+
+    static {
+        // The server writes the headers and body separately which without this
+        // waits on delayed acknowledgements and adds ~40ms to every request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public static final long STALL_MILLIS = 3000; // How long STALLED requests wait before responding
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder requests = new LongAdder();
+    private final AtomicInteger concurrentRequests = new AtomicInteger(); // The requests being handled right now
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger(); // The most requests handled at once
+    private final Map<Long, byte[]> responses = new HashMap<>(); // Generated responses by notice counts
+    private final Map<byte[], byte[]> compressed = new IdentityHashMap<>(); // Compressed responses by response
+
+    private volatile int generalCount = 10;
+    private volatile int meetingCount = 2;
+    private volatile long latencyMillis = 0;
+    private volatile long latencyJitterMillis = 0;
+    private volatile FailureMode failureMode = FailureMode.HTTP_ERROR;
+    private volatile double failureRate = 0;
+    private volatile String compression; // The encoding to compress with when accepted (null to ignore Accept-Encoding)
+
+    /**
+     * Starts a stub server on a free local port
+     *
+     * @throws IOException Thrown if the server could not be started
+     */
+    public StubKamarServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts a stub server on the provided local port
+     *
+     * @param port The port to listen on (0 for any free port)
+     * @throws IOException Thrown if the server could not be started
+     */
+    public StubKamarServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "KNI-StubKamarServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/api.php", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return The host to provide to {@link KNI#KNI(String, boolean)} (with isHTTPS set to false)
+     */
+    public String getHost() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return A KNI instance which sends its requests to this stub
+     */
+    public KNI createKNI() {
+        return new KNI(getHost(), false);
+    }
+
+    public StubKamarServer setNoticeCounts(int generalCount, int meetingCount) {
+        this.generalCount = generalCount;
+        this.meetingCount = meetingCount;
+        return this;
+    }
+
+    public StubKamarServer setLatency(long latencyMillis, long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        return this;
+    }
+
+    /**
+     * @param failureMode How failed requests should fail
+     * @param failureRate The fraction of requests that should fail (0 to 1)
+     * @return This server
+     */
+    public StubKamarServer setFailures(FailureMode failureMode, double failureRate) {
+        this.failureMode = failureMode;
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param compression The content encoding to compress responses with when the request accepts it
+     *                    ("gzip" or "deflate") or null to always respond uncompressed
+     * @return This server
+     */
+    public synchronized StubKamarServer setCompression(String compression) {
+        this.compression = compression;
+        compressed.clear();
+        return this;
+    }
+
+    /**
+     * @return The number of requests received
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Only counted while the requests wait out the latency, so a client sending its next
+     * request as soon as a response arrives is never counted twice
+     *
+     * @return The most requests that were being handled at the same time
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+            try {
+                sleep();
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+            if (!"POST".equals(exchange.getRequestMethod()) || !"GetNotices".equals(form.get("Command"))) {
+                send(exchange, 200, NoticeFixtures.createErrorResponse("Unknown Command"));
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (failureRate > 0 && random.nextDouble() < failureRate) {
+                fail(exchange);
+                return;
+            }
+            send(exchange, 200, getResponse(generalCount, meetingCount));
+        }
+    }
+
+    private void fail(HttpExchange exchange) throws IOException {
+        switch (failureMode) {
+            case KAMAR_ERROR:
+                send(exchange, 200, NoticeFixtures.createErrorResponse("Stub failure"));
+                break;
+            case HTTP_ERROR:
+                exchange.sendResponseHeaders(500, -1);
+                break;
+            case TRUNCATED:
+                byte[] response = getResponse(generalCount, meetingCount);
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(response, 0, response.length / 2);
+                outputStream.flush();
+                // Closing the exchange without the rest of the body breaks the connection
+                break;
+            case MALFORMED:
+                send(exchange, 200, "<NoticesResults><GeneralNotices>".getBytes(StandardCharsets.UTF_8));
+                break;
+            case STALLED:
+                try {
+                    TimeUnit.MILLISECONDS.sleep(STALL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                send(exchange, 200, getResponse(generalCount, meetingCount));
+                break;
+        }
+    }
+
+    private synchronized byte[] getResponse(int generalCount, int meetingCount) {
+        return responses.computeIfAbsent(((long) generalCount << 32) | meetingCount,
+                key -> NoticeFixtures.createResponse(generalCount, meetingCount));
+    }
+
+    private void sleep() {
+        long delay = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+        }
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        String compression = this.compression;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression != null && acceptEncoding != null && acceptEncoding.contains(compression)) {
+            exchange.getResponseHeaders().set("Content-Encoding", compression);
+            body = compress(body, compression);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private synchronized byte[] compress(byte[] body, String compression) throws IOException {
+        byte[] result = compressed.get(body);
+        if (result == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream outputStream = compression.equals("gzip")
+                    ? new GZIPOutputStream(bytes)
+                    : new DeflaterOutputStream(bytes)) {
+                outputStream.write(body);
+            }
+            result = bytes.toByteArray();
+            // Only the cached responses are kept so the map doesn't grow
+            if (responses.containsValue(body)) {
+                compressed.put(body, result);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}